@@ -0,0 +1,64 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap retained by the resolved poms of a generated reactor with and without compaction. Each pom's full
+ * model is used once, as a share action would, before the retained heap is measured
+ */
+public class PomHeapComparison {
+	public static void main(String[] args) throws IOException {
+		int modules = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int plugins = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		File dir = Files.createTempDirectory("reactor").toFile();
+		List<File> pomFiles = new ReactorGenerator(modules, 3, 50, 50).setPlugins(plugins).generate(dir);
+
+		long baseline = usedHeap();
+		List<ResolvedPom> poms = resolve(pomFiles, false);
+		long full = usedHeap() - baseline;
+		poms = null;
+
+		baseline = usedHeap();
+		poms = resolve(pomFiles, true);
+		long compacted = usedHeap() - baseline;
+
+		System.out.println(String.format("%s modules with %s plugins", poms.size(), plugins));
+		System.out.println(String.format("full:      %,d bytes", full));
+		System.out.println(String.format("compacted: %,d bytes (%.1f%%)", compacted, 100.0 * compacted / full));
+	}
+
+	private static List<ResolvedPom> resolve(List<File> pomFiles, boolean compact) {
+		PomResolver resolver = new PomResolver();
+		resolver.setCompact(compact);
+		PomResolveCache cache = new PomResolveCache();
+		List<ResolvedPom> poms = new ArrayList<>(pomFiles.size());
+		for (File pomFile : pomFiles) {
+			ResolvedPom pom = resolver.resolvePom(pomFile, cache);
+			pom.getDependencies();
+			pom.getModel().getBuild();
+			poms.add(pom);
+		}
+		if (compact) {
+			for (ResolvedPom pom : poms) {
+				for (ResolvedPom current = pom; current != null; current = current.getParent()) {
+					current.compact();
+				}
+			}
+		}
+		return poms;
+	}
+
+	private static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
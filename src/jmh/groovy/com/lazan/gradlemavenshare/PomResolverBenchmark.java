@@ -0,0 +1,141 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks pom resolution against a reactor written by {@link ReactorGenerator}. The gc profiler configured in
+ * build.gradle reports the bytes allocated per operation as gc.alloc.rate.norm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PomResolverBenchmark {
+	@Param("100")
+	public int modules;
+
+	@Param("3")
+	public int depth;
+
+	@Param("50")
+	public int properties;
+
+	@Param("50")
+	public int managed;
+
+	private File reactorDir;
+	private List<File> pomFiles;
+	private ResolvedPom leaf;
+	private List<String> values;
+	private List<Map<String, String>> excludes;
+	private DependencyShareAction shareAction;
+	private DependencyRuleIndex<Boolean> excludeIndex;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		reactorDir = Files.createTempDirectory("reactor").toFile();
+		pomFiles = new ReactorGenerator(modules, depth, properties, managed).generate(reactorDir);
+		leaf = new PomResolver().resolvePom(pomFiles.get(pomFiles.size() - 1), new PomResolveCache());
+
+		values = new ArrayList<>();
+		values.add("plain value");
+		values.add("${project.version}");
+		values.add("${module.name}/${project.artifactId}-${project.version}.jar");
+		for (int i = 0; i < properties; ++i) {
+			values.add("${prop-" + (depth - 1) + "-" + i + "}");
+		}
+
+		excludes = new ArrayList<>();
+		for (int i = 0; i < 10; ++i) {
+			Map<String, String> attributes = new LinkedHashMap<>();
+			attributes.put("groupId", "com.example.external");
+			attributes.put("artifactId", "lib-" + (i * 7));
+			excludes.add(attributes);
+		}
+		Map<String, String> attributes = new LinkedHashMap<>();
+		attributes.put("scope", "test");
+		excludes.add(attributes);
+		shareAction = new DependencyShareAction();
+		excludeIndex = new DependencyRuleIndex<>();
+		for (Map<String, String> exclude : excludes) {
+			excludeIndex.add(exclude, Boolean.TRUE);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(reactorDir);
+	}
+
+	@Benchmark
+	public void resolvePoms(Blackhole blackhole) {
+		PomResolver pomResolver = new PomResolver();
+		PomResolveCache cache = new PomResolveCache();
+		for (File pomFile : pomFiles) {
+			blackhole.consume(pomResolver.resolvePom(pomFile, cache));
+		}
+	}
+
+	@Benchmark
+	public Map<String, String> resolveProperties() {
+		return leaf.resolveProperties();
+	}
+
+	@Benchmark
+	public List<Dependency> getDependencies() {
+		// getDependencies() is memoized
+		return leaf.resolveDependencies();
+	}
+
+	@Benchmark
+	public void substituteProperties(Blackhole blackhole) {
+		for (String value : values) {
+			blackhole.consume(leaf.substituteProperties(value));
+		}
+	}
+
+	@Benchmark
+	public int dependencyMatches() {
+		int excluded = 0;
+		for (Dependency dep : leaf.getDependencies()) {
+			for (Map<String, String> attributes : excludes) {
+				if (shareAction.dependencyMatches(dep, attributes)) {
+					++excluded;
+					break;
+				}
+			}
+		}
+		return excluded;
+	}
+
+	@Benchmark
+	public int dependencyRuleIndex() {
+		int excluded = 0;
+		for (Dependency dep : leaf.getDependencies()) {
+			if (excludeIndex.matches(dep)) {
+				++excluded;
+			}
+		}
+		return excluded;
+	}
+}
@@ -0,0 +1,55 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the heap retained by the resolved poms of a generated reactor where every module inherits the properties
+ * of a large parent, and the heap a flat copy of each module's properties would need
+ */
+public class PropertyHeapComparison {
+	public static void main(String[] args) throws IOException {
+		int modules = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int properties = args.length > 1 ? Integer.parseInt(args[1]) : 1500;
+		File dir = Files.createTempDirectory("reactor").toFile();
+		List<File> pomFiles = new ReactorGenerator(modules, 1, properties, 0).generate(dir);
+
+		long baseline = usedHeap();
+		PomResolver resolver = new PomResolver();
+		PomResolveCache cache = new PomResolveCache();
+		List<ResolvedPom> poms = new ArrayList<>(pomFiles.size());
+		long entries = 0;
+		for (File pomFile : pomFiles) {
+			ResolvedPom pom = resolver.resolvePom(pomFile, cache);
+			entries += pom.getProperties().size();
+			poms.add(pom);
+		}
+		long resolved = usedHeap() - baseline;
+
+		baseline = usedHeap();
+		List<Map<String, String>> copies = new ArrayList<>(poms.size());
+		for (ResolvedPom pom : poms) {
+			copies.add(new LinkedHashMap<>(pom.getProperties()));
+		}
+		long flat = usedHeap() - baseline;
+
+		// the lists are used after measuring so that they're reachable while measuring
+		System.out.println(String.format("%s modules, %s properties per parent, %,d property entries visible", copies.size(), properties, entries));
+		System.out.println(String.format("resolved poms:           %,d bytes", resolved));
+		System.out.println(String.format("flat copies of the maps: %,d bytes", flat));
+		System.out.println(String.format("%s poms", poms.size()));
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
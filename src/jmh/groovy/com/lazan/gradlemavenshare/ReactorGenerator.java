@@ -0,0 +1,208 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a synthetic maven reactor for benchmarking. The reactor has a chain of parent poms where each parent defines
+ * properties which reference the properties of its own parent, the top parent manages the external dependencies and
+ * each module depends on every managed dependency and on the previous module. Modules may also have a build section
+ * with plugins which is not used for resolution
+ *
+ * <pre>
+ * dir/pom.xml                   aggregator listing the modules
+ * dir/parent-0/pom.xml          top parent with the dependency management
+ * dir/parent-[1..depth-1]/pom.xml
+ * dir/module-[0..modules-1]/pom.xml
+ * </pre>
+ */
+public class ReactorGenerator {
+	private static final String GROUP_ID = "com.example.reactor";
+	private static final String VERSION = "1.0-SNAPSHOT";
+
+	private final int modules;
+	private final int depth;
+	private final int properties;
+	private final int managed;
+	private int plugins;
+
+	/**
+	 * @param modules Number of modules
+	 * @param depth Number of parent poms above each module
+	 * @param properties Number of properties defined by each parent pom
+	 * @param managed Number of managed dependencies
+	 */
+	public ReactorGenerator(int modules, int depth, int properties, int managed) {
+		if (modules < 1 || depth < 1 || properties < 0 || managed < 0) {
+			throw new IllegalArgumentException(String.format("Illegal reactor modules=%s, depth=%s, properties=%s, managed=%s", modules, depth, properties, managed));
+		}
+		this.modules = modules;
+		this.depth = depth;
+		this.properties = properties;
+		this.managed = managed;
+	}
+
+	/**
+	 * @param plugins Number of build plugins declared by each module
+	 */
+	public ReactorGenerator setPlugins(int plugins) {
+		if (plugins < 0) {
+			throw new IllegalArgumentException("Illegal plugins " + plugins);
+		}
+		this.plugins = plugins;
+		return this;
+	}
+
+	/**
+	 * @return The module pom files
+	 */
+	public List<File> generate(File dir) throws IOException {
+		StringBuilder moduleNames = new StringBuilder();
+		for (int i = 0; i < depth; ++i) {
+			write(new File(dir, "parent-" + i + "/pom.xml"), createParent(i));
+			moduleNames.append("\t\t<module>parent-").append(i).append("</module>\n");
+		}
+		List<File> pomFiles = new ArrayList<>(modules);
+		for (int i = 0; i < modules; ++i) {
+			File pomFile = new File(dir, "module-" + i + "/pom.xml");
+			write(pomFile, createModule(i));
+			pomFiles.add(pomFile);
+			moduleNames.append("\t\t<module>module-").append(i).append("</module>\n");
+		}
+		StringBuilder xml = startProject("reactor", null);
+		xml.append("\t<packaging>pom</packaging>\n");
+		xml.append("\t<modules>\n").append(moduleNames).append("\t</modules>\n");
+		write(new File(dir, "pom.xml"), endProject(xml));
+		return pomFiles;
+	}
+
+	protected String createParent(int level) {
+		StringBuilder xml = startProject("parent-" + level, level == 0 ? null : "parent-" + (level - 1));
+		xml.append("\t<packaging>pom</packaging>\n");
+		xml.append("\t<properties>\n");
+		for (int i = 0; i < properties; ++i) {
+			String value = level == 0 ? "value-" + i : "${prop-" + (level - 1) + "-" + i + "}-" + level;
+			appendElement(xml, "\t\t", "prop-" + level + "-" + i, value);
+		}
+		if (level == 0) {
+			for (int i = 0; i < managed; ++i) {
+				appendElement(xml, "\t\t", "lib-" + i + ".version", "1." + i);
+			}
+		}
+		xml.append("\t</properties>\n");
+		if (level == 0 && managed > 0) {
+			xml.append("\t<dependencyManagement>\n\t\t<dependencies>\n");
+			for (int i = 0; i < managed; ++i) {
+				xml.append("\t\t\t<dependency>\n");
+				appendElement(xml, "\t\t\t\t", "groupId", "com.example.external");
+				appendElement(xml, "\t\t\t\t", "artifactId", "lib-" + i);
+				appendElement(xml, "\t\t\t\t", "version", "${lib-" + i + ".version}");
+				if (i % 4 == 0) {
+					appendElement(xml, "\t\t\t\t", "scope", "test");
+				}
+				xml.append("\t\t\t</dependency>\n");
+			}
+			xml.append("\t\t</dependencies>\n\t</dependencyManagement>\n");
+		}
+		return endProject(xml);
+	}
+
+	protected String createModule(int index) {
+		StringBuilder xml = startProject("module-" + index, "parent-" + (depth - 1));
+		xml.append("\t<properties>\n");
+		appendElement(xml, "\t\t", "module.name", properties == 0 ? "module-" + index : "${prop-" + (depth - 1) + "-0}-module-" + index);
+		xml.append("\t</properties>\n");
+		xml.append("\t<dependencies>\n");
+		if (index > 0) {
+			xml.append("\t\t<dependency>\n");
+			appendElement(xml, "\t\t\t", "groupId", "${project.groupId}");
+			appendElement(xml, "\t\t\t", "artifactId", "module-" + (index - 1));
+			appendElement(xml, "\t\t\t", "version", "${project.version}");
+			xml.append("\t\t</dependency>\n");
+		}
+		for (int i = 0; i < managed; ++i) {
+			xml.append("\t\t<dependency>\n");
+			appendElement(xml, "\t\t\t", "groupId", "com.example.external");
+			appendElement(xml, "\t\t\t", "artifactId", "lib-" + i);
+			xml.append("\t\t</dependency>\n");
+		}
+		xml.append("\t</dependencies>\n");
+		if (plugins > 0) {
+			xml.append("\t<build>\n\t\t<plugins>\n");
+			for (int i = 0; i < plugins; ++i) {
+				xml.append("\t\t\t<plugin>\n");
+				appendElement(xml, "\t\t\t\t", "groupId", "com.example.plugins");
+				appendElement(xml, "\t\t\t\t", "artifactId", "plugin-" + i);
+				appendElement(xml, "\t\t\t\t", "version", "2." + i);
+				xml.append("\t\t\t\t<executions>\n\t\t\t\t\t<execution>\n");
+				appendElement(xml, "\t\t\t\t\t\t", "id", "execution-" + i);
+				appendElement(xml, "\t\t\t\t\t\t", "phase", "generate-sources");
+				xml.append("\t\t\t\t\t\t<goals>\n");
+				appendElement(xml, "\t\t\t\t\t\t\t", "goal", "generate");
+				xml.append("\t\t\t\t\t\t</goals>\n\t\t\t\t\t</execution>\n\t\t\t\t</executions>\n");
+				xml.append("\t\t\t\t<configuration>\n");
+				appendElement(xml, "\t\t\t\t\t", "outputDirectory", "${project.build.directory}/generated-" + i);
+				appendElement(xml, "\t\t\t\t\t", "sourceDirectory", "src/main/resources/plugin-" + i);
+				appendElement(xml, "\t\t\t\t\t", "description", "Configuration of plugin " + i + " for module " + index);
+				xml.append("\t\t\t\t</configuration>\n");
+				xml.append("\t\t\t</plugin>\n");
+			}
+			xml.append("\t\t</plugins>\n\t</build>\n");
+		}
+		return endProject(xml);
+	}
+
+	protected StringBuilder startProject(String artifactId, String parentArtifactId) {
+		StringBuilder xml = new StringBuilder("<project>\n");
+		appendElement(xml, "\t", "modelVersion", "4.0.0");
+		if (parentArtifactId != null) {
+			xml.append("\t<parent>\n");
+			appendElement(xml, "\t\t", "groupId", GROUP_ID);
+			appendElement(xml, "\t\t", "artifactId", parentArtifactId);
+			appendElement(xml, "\t\t", "version", VERSION);
+			appendElement(xml, "\t\t", "relativePath", "../" + parentArtifactId + "/pom.xml");
+			xml.append("\t</parent>\n");
+		} else {
+			appendElement(xml, "\t", "groupId", GROUP_ID);
+			appendElement(xml, "\t", "version", VERSION);
+		}
+		appendElement(xml, "\t", "artifactId", artifactId);
+		return xml;
+	}
+
+	protected String endProject(StringBuilder xml) {
+		return xml.append("</project>\n").toString();
+	}
+
+	protected void appendElement(StringBuilder xml, String indent, String name, String value) {
+		xml.append(indent).append('<').append(name).append('>').append(value).append("</").append(name).append(">\n");
+	}
+
+	protected void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a reactor to disk, eg to try the plugin against a large build
+	 *
+	 * @param args dir [modules] [depth] [properties] [managed] [plugins]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ReactorGenerator dir [modules] [depth] [properties] [managed] [plugins]");
+			System.exit(1);
+		}
+		int modules = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		int properties = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+		int managed = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+		int plugins = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+		List<File> pomFiles = new ReactorGenerator(modules, depth, properties, managed).setPlugins(plugins).generate(new File(args[0]));
+		System.out.println(String.format("Generated %s modules in %s", pomFiles.size(), args[0]));
+	}
+}
@@ -0,0 +1,15 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link PomSource} which can fetch many poms concurrently
+ */
+public interface AsyncPomSource extends PomSource {
+	/**
+	 * @return The pom content for each of the gavs, keyed by gav
+	 */
+	Map<Gav, CompletableFuture<byte[]>> getPomsAsync(Collection<Gav> gavs);
+}
\ No newline at end of file
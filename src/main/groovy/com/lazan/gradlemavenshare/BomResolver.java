@@ -0,0 +1,8 @@
+package com.lazan.gradlemavenshare;
+
+/**
+ * Resolves the poms imported into dependency management with {@code <scope>import</scope>}
+ */
+interface BomResolver {
+	ResolvedPom resolveBom(Gav gav);
+}
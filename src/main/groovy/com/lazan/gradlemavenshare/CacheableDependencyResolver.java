@@ -0,0 +1,9 @@
+package com.lazan.gradlemavenshare;
+
+/**
+ * A {@link DependencyResolver} whose notation only depends on the maven dependency's coordinates (groupId,
+ * artifactId, version, classifier and type), scope and system path and not on the project it is added to. The notation is created once per
+ * build and shared by every module with the same dependency, so it must not be modified
+ */
+public interface CacheableDependencyResolver extends DependencyResolver {
+}
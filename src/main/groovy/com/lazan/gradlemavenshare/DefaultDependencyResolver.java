@@ -1,12 +1,9 @@
 package com.lazan.gradlemavenshare;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 import org.apache.maven.model.Dependency;
 import org.gradle.api.Project;
 
-public class DefaultDependencyResolver implements DependencyResolver {
+public class DefaultDependencyResolver implements CacheableDependencyResolver {
 	@Override
 	public Object resolve(Project project, Dependency dep, ProjectResolver resolver) {
 		MavenShareRootModel rootModel = project.getRootProject().getExtensions().getByType(MavenShareRootModel.class);
@@ -18,51 +15,23 @@ public class DefaultDependencyResolver implements DependencyResolver {
 		} else {
 			// external dependency
 			validateExternalDependency(rootModel, dep);
-			Map<String, String> depNotation = new LinkedHashMap<>();
-			depNotation.put("group", dep.getGroupId());
-			depNotation.put("name", dep.getArtifactId());
-			depNotation.put("version", dep.getVersion());
-			if (dep.getClassifier() != null) {
-			    depNotation.put("classifier", dep.getClassifier());
-			}
-			return depNotation;
+			return DependencyMapping.createNotation(dep);
 		}
 	}
 
-	private static final String VALIDATE_MSG_TEMPLATE = "%s='%s' not supported for %s. Please exclude the dependency or provide a custom DependencyResolver";
-
 	protected void validateExternalDependency(MavenShareRootModel rootModel, Dependency dep) {
 		if (!rootModel.isAllowUnsupportedDependencyProperties()) {
-			String type = "jar".equals(dep.getType()) ? null : dep.getType();
-			if (type != null) {
-				throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "type", type, createGav(dep)));
-			}
-			if (dep.getSystemPath() != null) {
-				throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "systemPath", dep.getSystemPath(), createGav(dep)));
-			}
+			DependencyMapping.validateExternalDependency(dep);
 		}
 	}
 
 	protected void validateProjectDependency(MavenShareRootModel rootModel, Dependency dep, Project depProject) {
 		if (!rootModel.isAllowUnsupportedDependencyProperties()) {
-			String type = "jar".equals(dep.getType()) ? null : dep.getType();
-			if (type != null) {
-				throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "type", type, createGav(dep)));
-			}
-			if (dep.getSystemPath() != null) {
-				throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "systemPath", dep.getSystemPath(), createGav(dep)));
-			}
-			if (dep.getClassifier() != null) {
-				throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "classifier", dep.getClassifier(), createGav(dep)));
-			}
+			DependencyMapping.validateProjectDependency(dep);
 		}
 	}
 
-	protected String createGav(Dependency dep) {
-		String gav = String.format("%s:%s:%s", dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
-		if (dep.getGroupId() == null || dep.getArtifactId() == null || dep.getVersion() == null) {
-			throw new RuntimeException("Illegal GAV " + gav);
-		}
-		return gav;
+	protected Gav createGav(Dependency dep) {
+		return Gav.of(dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
 	}
 }
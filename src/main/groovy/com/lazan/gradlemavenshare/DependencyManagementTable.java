@@ -0,0 +1,91 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+
+/**
+ * Effective dependency management of a {@link ResolvedPom}. A pom's table holds the entries declared by the pom
+ * (resolved against the pom's properties) layered over the parent's table. The parent's entries are only shared if
+ * none of the properties they reference resolve to a different value in the child, otherwise the child's table is
+ * flattened with every entry of the hierarchy resolved against the child's properties.
+ * <p>
+ * Imported BOMs are held as the BOM's own table. As in maven, an entry declared anywhere in the hierarchy wins over an
+ * imported entry, imports are searched nearest pom first and then in declaration order
+ */
+class DependencyManagementTable {
+	static final DependencyManagementTable EMPTY = new DependencyManagementTable(
+			Collections.<Gav, Dependency> emptyMap(), null, Collections.<DependencyManagementTable> emptyList(), Collections.<String> emptySet());
+
+	private final Map<Gav, Dependency> entries;
+	private final DependencyManagementTable parent;
+	private final List<DependencyManagementTable> imports;
+	private final Set<String> propertyNames;
+
+	/**
+	 * @param entries Entries keyed by groupId and artifactId
+	 * @param parent Inherited table, null if entries and imports contain the whole hierarchy
+	 * @param imports Tables of the imported BOMs in declaration order
+	 * @param propertyNames Properties referenced by the coordinates, version or scope of any entry in the hierarchy
+	 */
+	DependencyManagementTable(Map<Gav, Dependency> entries, DependencyManagementTable parent, List<DependencyManagementTable> imports, Set<String> propertyNames) {
+		this.entries = entries;
+		this.parent = parent;
+		this.imports = imports;
+		this.propertyNames = propertyNames;
+	}
+
+	Dependency get(Gav key) {
+		DependencyManagementTable current = this;
+		while (current != null) {
+			Dependency dep = current.entries.get(key);
+			if (dep != null) {
+				return dep;
+			}
+			current = current.parent;
+		}
+		for (current = this; current != null; current = current.parent) {
+			for (DependencyManagementTable imported : current.imports) {
+				Dependency dep = imported.get(key);
+				if (dep != null) {
+					return dep;
+				}
+			}
+		}
+		return null;
+	}
+
+	List<DependencyManagementTable> getImports() {
+		return imports;
+	}
+
+	Set<String> getPropertyNames() {
+		return propertyNames;
+	}
+
+	/**
+	 * @return true if this table (resolved against the owner's properties) resolves identically against the child's properties
+	 */
+	boolean isInheritable(Map<String, String> ownerProperties, Map<String, String> childProperties) {
+		for (String name : propertyNames) {
+			String ownerValue = ownerProperties.get(name);
+			String childValue = childProperties.get(name);
+			if (ownerValue == null ? childValue != null : !ownerValue.equals(childValue)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static Set<String> union(Set<String> names, Set<String> parentNames) {
+		if (parentNames.isEmpty()) return names;
+		if (names.isEmpty()) return parentNames;
+		Set<String> union = new HashSet<>(parentNames);
+		union.addAll(names);
+		return union;
+	}
+}
@@ -0,0 +1,103 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+
+/**
+ * The mapping of maven dependencies to Gradle configuration names, notations and exclude specs used by the
+ * {@link DefaultConfigurationResolver} and {@link DefaultDependencyResolver}. Doesn't depend on the Gradle API so it
+ * can be used by the {@link HeadlessResolver}
+ */
+public final class DependencyMapping {
+	public static final Map<String, String> DEFAULT_CONFIGURATIONS = Collections.unmodifiableMap(initConfigurations());
+
+	private static final String VALIDATE_MSG_TEMPLATE = "%s='%s' not supported for %s. Please exclude the dependency or provide a custom DependencyResolver";
+
+	private DependencyMapping() {
+	}
+
+	private static Map<String, String> initConfigurations() {
+		Map<String, String> mappings = new HashMap<>();
+		mappings.put("test",  "testCompile");
+		mappings.put("compile", "compile");
+		mappings.put("provided", "compileOnly");
+		mappings.put("runtime", "runtime");
+		return mappings;
+	}
+
+	/**
+	 * @return The configuration for the dependency's scope, scopes without a mapping use a configuration of the
+	 *         same name
+	 */
+	public static String getConfigurationName(Dependency dependency, Map<String, String> mappings) {
+		String mavenScope = dependency.getScope() == null ? "compile" : dependency.getScope();
+		return mappings.containsKey(mavenScope) ? mappings.get(mavenScope) : mavenScope;
+	}
+
+	/**
+	 * @return The group, name, version and classifier notation for an external dependency
+	 */
+	public static Map<String, String> createNotation(Dependency dep) {
+		Map<String, String> depNotation = new LinkedHashMap<>();
+		depNotation.put("group", dep.getGroupId());
+		depNotation.put("name", dep.getArtifactId());
+		depNotation.put("version", dep.getVersion());
+		if (dep.getClassifier() != null) {
+			depNotation.put("classifier", dep.getClassifier());
+		}
+		return depNotation;
+	}
+
+	/**
+	 * @return The exclude specs (maps with group and/or module) for the exclusions
+	 */
+	public static List<Map<String, String>> createExcludes(List<Exclusion> exclusions) {
+		List<Map<String, String>> result = new ArrayList<>(exclusions.size());
+		for (Exclusion exclusion : exclusions) {
+			Map<String, String> exclude = new LinkedHashMap<>();
+			if (exclusion.getGroupId() != null && !exclusion.getGroupId().isEmpty()) {
+				exclude.put("group", exclusion.getGroupId());
+			}
+			if (exclusion.getArtifactId() != null && !exclusion.getArtifactId().isEmpty()) {
+				exclude.put("module", exclusion.getArtifactId());
+			}
+			result.add(Collections.unmodifiableMap(exclude));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * @throws RuntimeException if the dependency has a type or system path which can't be mapped to a notation
+	 */
+	public static void validateExternalDependency(Dependency dep) {
+		String type = "jar".equals(dep.getType()) ? null : dep.getType();
+		if (type != null) {
+			throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "type", type, createGav(dep)));
+		}
+		if (dep.getSystemPath() != null) {
+			throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "systemPath", dep.getSystemPath(), createGav(dep)));
+		}
+	}
+
+	/**
+	 * @throws RuntimeException if the dependency has a type, system path or classifier which can't be mapped to a
+	 *         project dependency
+	 */
+	public static void validateProjectDependency(Dependency dep) {
+		validateExternalDependency(dep);
+		if (dep.getClassifier() != null) {
+			throw new RuntimeException(String.format(VALIDATE_MSG_TEMPLATE, "classifier", dep.getClassifier(), createGav(dep)));
+		}
+	}
+
+	private static Gav createGav(Dependency dep) {
+		return Gav.of(dep.getGroupId(), dep.getArtifactId(), dep.getVersion());
+	}
+}
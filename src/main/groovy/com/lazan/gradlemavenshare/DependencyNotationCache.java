@@ -0,0 +1,102 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.gradle.api.Project;
+
+/**
+ * Flyweight cache of the Gradle dependency notations and exclude specs created for the modules in a build. The same
+ * external dependency is usually declared by many modules, a {@link CacheableDependencyResolver} is called once per
+ * distinct dependency and the resulting notation is shared. Thread safe for parallel share actions
+ */
+public class DependencyNotationCache {
+	private final ConcurrentMap<List<Object>, Object> notations = new ConcurrentHashMap<>();
+	private final ConcurrentMap<List<String>, List<Map<String, String>>> excludes = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile ShareMetrics metrics = ShareMetrics.DISABLED;
+
+	/**
+	 * @param metrics Counts the notations which were reused and created
+	 */
+	public void setMetrics(ShareMetrics metrics) {
+		this.metrics = metrics == null ? ShareMetrics.DISABLED : metrics;
+	}
+
+	/**
+	 * @return The notation from the dependency resolver, cached by resolver, coordinates, scope and system path if the
+	 *         resolver is a {@link CacheableDependencyResolver}. The scope and system path are part of the key since a
+	 *         resolver may reject them, eg the {@link DefaultDependencyResolver} validates the system path
+	 */
+	public Object getNotation(Project project, Dependency dep, DependencyResolver dependencyResolver, ProjectResolver resolver) {
+		if (!(dependencyResolver instanceof CacheableDependencyResolver)) {
+			return dependencyResolver.resolve(project, dep, resolver);
+		}
+		List<Object> key = Arrays.<Object>asList(dependencyResolver, dep.getGroupId(), dep.getArtifactId(), dep.getVersion(),
+				dep.getClassifier(), dep.getType(), dep.getScope(), dep.getSystemPath());
+		Object notation = notations.get(key);
+		if (notation != null) {
+			hits.incrementAndGet();
+			metrics.increment("notationCache.hits");
+			return notation;
+		}
+		misses.incrementAndGet();
+		metrics.increment("notationCache.misses");
+		notation = dependencyResolver.resolve(project, dep, resolver);
+		if (notation == null) {
+			return null;
+		}
+		if (notation instanceof Map) {
+			notation = Collections.unmodifiableMap((Map<?, ?>) notation);
+		}
+		Object previous = notations.putIfAbsent(key, notation);
+		return previous == null ? notation : previous;
+	}
+
+	/**
+	 * @return The exclude specs (maps with group and/or module) for the dependency's exclusions, an empty list if
+	 *         there are no exclusions
+	 */
+	public List<Map<String, String>> getExcludes(Dependency dep) {
+		if (dep.getExclusions() == null || dep.getExclusions().isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> key = new ArrayList<>(dep.getExclusions().size() * 2);
+		for (Exclusion exclusion : dep.getExclusions()) {
+			key.add(exclusion.getGroupId());
+			key.add(exclusion.getArtifactId());
+		}
+		List<Map<String, String>> result = excludes.get(key);
+		if (result == null) {
+			result = createExcludes(dep.getExclusions());
+			List<Map<String, String>> previous = excludes.putIfAbsent(key, result);
+			result = previous == null ? result : previous;
+		}
+		return result;
+	}
+
+	protected List<Map<String, String>> createExcludes(List<Exclusion> exclusions) {
+		return DependencyMapping.createExcludes(exclusions);
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int size() {
+		return notations.size();
+	}
+}
@@ -0,0 +1,173 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+
+/**
+ * Rules keyed by maven dependency attributes (see {@link MavenShareModel#exclude(Map)}) indexed by groupId and
+ * artifactId so that finding the first matching rule doesn't test every rule. Rules without a groupId or artifactId
+ * are tested against every dependency
+ */
+class DependencyRuleIndex<T> {
+	private static final String[] ATTRIBUTE_NAMES = { "groupId", "artifactId", "version", "type", "scope", "classifier", "systemPath" };
+
+	private static class Rule<T> {
+		final int order;
+		final String[] names;
+		final Object[] values;
+		final T value;
+
+		Rule(int order, String[] names, Object[] values, T value) {
+			this.order = order;
+			this.names = names;
+			this.values = values;
+			this.value = value;
+		}
+	}
+
+	private final Map<Gav, List<Rule<T>>> byGroupAndArtifact = new HashMap<>();
+	private final Map<String, List<Rule<T>>> byGroup = new HashMap<>();
+	private final Map<String, List<Rule<T>>> byArtifact = new HashMap<>();
+	private final List<Rule<T>> unindexed = new ArrayList<>();
+	private int size;
+
+	/**
+	 * Adds a rule, rules added first take precedence
+	 */
+	public void add(Map<String, ?> attributes, T value) {
+		int order = size++;
+		String[] names = new String[attributes.size()];
+		Object[] values = new Object[attributes.size()];
+		int i = 0;
+		for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+			if (!isAttributeName(entry.getKey())) {
+				// can never match, same as comparing the attribute maps
+				return;
+			}
+			names[i] = entry.getKey();
+			values[i] = entry.getValue();
+			++i;
+		}
+		Rule<T> rule = new Rule<>(order, names, values, value);
+		Object groupId = attributes.get("groupId");
+		Object artifactId = attributes.get("artifactId");
+		if (groupId instanceof String && artifactId instanceof String) {
+			getRules(byGroupAndArtifact, Gav.ofGroupArtifact((String) groupId, (String) artifactId)).add(rule);
+		} else if (groupId instanceof String) {
+			getRules(byGroup, (String) groupId).add(rule);
+		} else if (artifactId instanceof String) {
+			getRules(byArtifact, (String) artifactId).add(rule);
+		} else {
+			unindexed.add(rule);
+		}
+	}
+
+	private <K> List<Rule<T>> getRules(Map<K, List<Rule<T>>> index, K key) {
+		List<Rule<T>> rules = index.get(key);
+		if (rules == null) {
+			rules = new ArrayList<>();
+			index.put(key, rules);
+		}
+		return rules;
+	}
+
+	/**
+	 * @return true if any rule matches the dependency
+	 */
+	public boolean matches(Dependency dep) {
+		return findFirst(dep) != null;
+	}
+
+	/**
+	 * @return The value of the first matching rule or null if no rule matches
+	 */
+	public T getValue(Dependency dep) {
+		Rule<T> rule = findFirst(dep);
+		return rule == null ? null : rule.value;
+	}
+
+	protected Rule<T> findFirst(Dependency dep) {
+		Rule<T> first = findFirst(unindexed, dep, null);
+		if (dep.getGroupId() != null) {
+			first = findFirst(byGroup.get(dep.getGroupId()), dep, first);
+			if (dep.getArtifactId() != null) {
+				first = findFirst(byGroupAndArtifact.get(Gav.ofGroupArtifact(dep.getGroupId(), dep.getArtifactId())), dep, first);
+			}
+		}
+		if (dep.getArtifactId() != null) {
+			first = findFirst(byArtifact.get(dep.getArtifactId()), dep, first);
+		}
+		return first;
+	}
+
+	/**
+	 * @return The earliest of first and the first rule in the list to match the dependency
+	 */
+	private Rule<T> findFirst(List<Rule<T>> rules, Dependency dep, Rule<T> first) {
+		if (rules == null) {
+			return first;
+		}
+		for (Rule<T> rule : rules) {
+			if (first != null && rule.order > first.order) {
+				break;
+			}
+			if (matches(dep, rule.names, rule.values)) {
+				return rule;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @return true if the dependency has all of the attribute values, type defaults to jar and scope to compile
+	 */
+	public static boolean matches(Dependency dep, Map<String, ?> attributes) {
+		for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+			if (!isAttributeName(entry.getKey()) || !matches(dep, entry.getKey(), entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(Dependency dep, String[] names, Object[] values) {
+		for (int i = 0; i < names.length; ++i) {
+			if (!matches(dep, names[i], values[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(Dependency dep, String name, Object expected) {
+		String actual = getAttribute(dep, name);
+		return actual == null ? expected == null : actual.equals(expected);
+	}
+
+	static String getAttribute(Dependency dep, String name) {
+		switch (name) {
+			case "groupId": return dep.getGroupId();
+			case "artifactId": return dep.getArtifactId();
+			case "version": return dep.getVersion();
+			case "classifier": return dep.getClassifier();
+			case "systemPath": return dep.getSystemPath();
+			case "type": return dep.getType() == null || dep.getType().isEmpty() ? "jar" : dep.getType();
+			case "scope": return dep.getScope() == null || dep.getScope().isEmpty() ? "compile" : dep.getScope();
+			default: throw new IllegalArgumentException(name);
+		}
+	}
+
+	static boolean isAttributeName(String name) {
+		for (String attributeName : ATTRIBUTE_NAMES) {
+			if (attributeName.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -1,51 +1,103 @@
 package com.lazan.gradlemavenshare
 
-import java.util.HashMap
-import java.util.Iterator
+import java.util.LinkedHashMap
+import java.util.List
 import java.util.Map
 
 import org.apache.maven.model.Dependency
 import org.apache.maven.model.Exclusion
 import org.gradle.api.Project
 import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.ModuleDependency
 import org.gradle.api.publish.maven.MavenDependency
 
-public class DependencyShareAction implements ShareAction {
-	private final DependencyResolver DEFAULT_DEPENDENCY_RESOLVER = new DefaultDependencyResolver()
+/**
+ * When share actions are executed in parallel the excludes and dependency resolvers are applied concurrently, the
+ * dependency resolvers must be thread safe. Configurations are resolved and the dependencies added on the configuring
+ * thread
+ */
+public class DependencyShareAction implements ParallelShareAction {
+	// shared by every project so that its notations are cached across modules
+	private static final DependencyResolver DEFAULT_DEPENDENCY_RESOLVER = new DefaultDependencyResolver()
 	
 	@Override
 	public void execute(ResolvedPom pom, Project project, ProjectResolver resolver) {
+		prepare(pom, project, resolver).run()
+	}
+
+	@Override
+	public Runnable prepare(ResolvedPom pom, Project project, ProjectResolver resolver) {
 		MavenShareRootModel rootModel = project.getRootProject().getExtensions().getByType(MavenShareRootModel.class)
-		MavenShareModel msm = project.getExtensions().getByType(MavenShareModel.class)
-		ConfigurationResolver configResolver = msm.getConfigurationResolver()
-		for (Dependency dep : pom.getDependencies()) {
-			if (msm.excludes.find { Map attributes -> dependencyMatches(dep, attributes) }) {
-				continue
-			}
-			Configuration config = configResolver.getConfiguration(project, dep)
-			Map resolveConfig = msm.resolvers.find { dependencyMatches(dep, it.attributes) }
-			DependencyResolver dependencyResolver = resolveConfig?.resolver ?: DEFAULT_DEPENDENCY_RESOLVER
-			Object depNotation = dependencyResolver.resolve(project, dep, resolver)
-			Object gradleDep = project.dependencies.create(depNotation, createExclusionClosure(dep))
-			config.dependencies.add(gradleDep)
+		if (!rootModel.lazyDependencies) {
+			Map<Dependency, Object> notations = getNotations(pom.getDependencies(), project, resolver)
+			return { addDependencies(pom.getDependencies(), notations, project) } as Runnable
 		}
+		// project dependencies are added straight away since they contribute task dependencies
+		List<Dependency> projectDeps = pom.getDependencies().findAll { resolver.isProject(it) }
+		List<Dependency> externalDeps = pom.getDependencies().findAll { !resolver.isProject(it) }
+		Map<Dependency, Object> projectNotations = getNotations(projectDeps, project, resolver)
+		return {
+			addDependencies(projectDeps, projectNotations, project)
+			LazyDependencies lazyDependencies = project.getRootProject().getPlugins().getPlugin(MavenShareRootPlugin.class).getLazyDependencies()
+			lazyDependencies.register(project, {
+				addDependencies(externalDeps, getNotations(externalDeps, project, resolver), project)
+				for (Dependency dep : projectDeps) {
+					lazyDependencies.wire(resolver.getProject(dep))
+				}
+			} as Runnable)
+		} as Runnable
 	}
-	
-	protected boolean dependencyMatches(Dependency dep, Map<String, String> attributes) {
-		Map<String, String> depMap = [:]
-		if (attributes.containsKey('groupId')) depMap['groupId'] = dep.groupId
-		if (attributes.containsKey('artifactId')) depMap['artifactId'] = dep.artifactId
-		if (attributes.containsKey('version')) depMap['version'] = dep.version
-		if (attributes.containsKey('classifier')) depMap['classifier'] = dep.classifier
-		if (attributes.containsKey('systemPath')) depMap['systemPath'] = dep.systemPath
-		if (attributes.containsKey('type')) depMap['type'] = dep.type ?: 'jar'
-		if (attributes.containsKey('scope')) depMap['scope'] = dep.scope ?: 'compile'
-		return depMap.equals(attributes)
+
+	/**
+	 * Dependencies are added to each configuration in one batch
+	 *
+	 * @param deps The dependencies before the excludes were applied
+	 */
+	protected void addDependencies(List<Dependency> deps, Map<Dependency, Object> notations, Project project) {
+		MavenShareRootPlugin rootPlugin = project.getRootProject().getPlugins().getPlugin(MavenShareRootPlugin.class)
+		ShareMetrics metrics = rootPlugin.getMetrics()
+		DependencyNotationCache notationCache = rootPlugin.getNotationCache()
+		List<SharedDependency> sharedDeps = shareDependencies(notations, project)
+		if (sharedDeps.size() < deps.size()) {
+			metrics.add('dependencies.excluded', deps.size() - sharedDeps.size())
+		}
+		boolean customExclusions = isOverridden('createExclusionClosure', Dependency)
+		Map<Configuration, List<org.gradle.api.artifacts.Dependency>> batches = new LinkedHashMap<>()
+		for (SharedDependency sharedDep : sharedDeps) {
+			org.gradle.api.artifacts.Dependency gradleDep
+			if (customExclusions) {
+				gradleDep = project.dependencies.create(sharedDep.notation, createExclusionClosure(sharedDep.mavenDependency))
+			} else {
+				gradleDep = project.dependencies.create(sharedDep.notation)
+				// exclusions only apply to module dependencies, eg not to files(...)
+				if (gradleDep instanceof ModuleDependency) {
+					for (Map<String, String> exclude : notationCache.getExcludes(sharedDep.mavenDependency)) {
+						((ModuleDependency) gradleDep).exclude(exclude)
+					}
+				}
+			}
+			List<org.gradle.api.artifacts.Dependency> batch = batches.get(sharedDep.configuration)
+			if (batch == null) {
+				batch = []
+				batches.put(sharedDep.configuration, batch)
+			}
+			batch << gradleDep
+		}
+		for (Map.Entry<Configuration, List<org.gradle.api.artifacts.Dependency>> entry : batches.entrySet()) {
+			entry.key.dependencies.addAll(entry.value)
+			metrics.add('dependencies.added', entry.value.size())
+		}
 	}
-	
+
+	/**
+	 * Exclusions are added from the specs cached by the {@link DependencyNotationCache} unless a subclass overrides
+	 * this method, in which case the closure configures each dependency as it is created
+	 *
+	 * @return A closure which excludes the maven dependency's exclusions, null if there are none
+	 */
 	protected Closure createExclusionClosure(Dependency mavenDep) {
 		if (!mavenDep.exclusions) return null
-		return { 
+		return {
 			for (Exclusion exclusion : mavenDep.exclusions) {
 				Map exMap = [:]
 				if (exclusion.groupId) {
@@ -55,7 +107,87 @@ public class DependencyShareAction implements ShareAction {
 					exMap['module'] = exclusion.artifactId
 				}
 				exclude exMap
-			}    
+			}
+		}
+	}
+
+	/**
+	 * Applies the excludes, configuration resolver and dependency resolvers without adding the dependencies
+	 */
+	public List<SharedDependency> shareDependencies(List<Dependency> deps, Project project, ProjectResolver resolver) {
+		return shareDependencies(getNotations(deps, project, resolver), project)
+	}
+
+	/**
+	 * Applies the configuration resolver, which may create configurations so it is only called on the configuring
+	 * thread
+	 */
+	protected List<SharedDependency> shareDependencies(Map<Dependency, Object> notations, Project project) {
+		ConfigurationResolver configResolver = project.getExtensions().getByType(MavenShareModel.class).getConfigurationResolver()
+		List<SharedDependency> sharedDeps = []
+		for (Map.Entry<Dependency, Object> entry : notations.entrySet()) {
+			sharedDeps << new SharedDependency(entry.key, configResolver.getConfiguration(project, entry.key), entry.value)
+		}
+		return sharedDeps
+	}
+
+	/**
+	 * Applies the excludes and dependency resolvers, which only read the project so they are thread safe
+	 *
+	 * @return The notations of the dependencies which aren't excluded, in the order of the dependencies
+	 */
+	protected Map<Dependency, Object> getNotations(List<Dependency> deps, Project project, ProjectResolver resolver) {
+		MavenShareModel msm = project.getExtensions().getByType(MavenShareModel.class)
+		// an overridden dependencyMatches can't be indexed so the rules are scanned in order
+		boolean scanRules = isOverridden('dependencyMatches', Dependency, Map)
+		DependencyRuleIndex<Boolean> excludes = new DependencyRuleIndex<>()
+		DependencyRuleIndex<DependencyResolver> resolvers = new DependencyRuleIndex<>()
+		if (!scanRules) {
+			for (Map attributes : msm.excludes) {
+				excludes.add(attributes, Boolean.TRUE)
+			}
+			for (Map resolveConfig : msm.resolvers) {
+				resolvers.add(resolveConfig.attributes, resolveConfig.resolver)
+			}
+		}
+		DependencyNotationCache notationCache = project.getRootProject().getPlugins().getPlugin(MavenShareRootPlugin.class).getNotationCache()
+		// maven dependencies have identity equality
+		Map<Dependency, Object> notations = new LinkedHashMap<>()
+		for (Dependency dep : deps) {
+			if (scanRules ? msm.excludes.find { Map attributes -> dependencyMatches(dep, attributes) } : excludes.matches(dep)) {
+				continue
+			}
+			DependencyResolver dependencyResolver = scanRules
+					? msm.resolvers.find { dependencyMatches(dep, it.attributes) }?.resolver
+					: resolvers.getValue(dep)
+			dependencyResolver = dependencyResolver ?: DEFAULT_DEPENDENCY_RESOLVER
+			notations.put(dep, notationCache.getNotation(project, dep, dependencyResolver, resolver))
+			// the excludes are cached for when the dependency is added
+			notationCache.getExcludes(dep)
+		}
+		return notations
+	}
+	
+	/**
+	 * The excludes and resolvers are matched through a {@link DependencyRuleIndex} unless a subclass overrides this
+	 * method, in which case each dependency is matched against the rules one at a time in the order they were declared
+	 */
+	protected boolean dependencyMatches(Dependency dep, Map<String, String> attributes) {
+		return DependencyRuleIndex.matches(dep, attributes)
+	}
+
+	/**
+	 * @return true if a subclass overrides the method
+	 */
+	protected boolean isOverridden(String name, Class<?>... parameterTypes) {
+		for (Class<?> type = getClass(); type != DependencyShareAction.class; type = type.getSuperclass()) {
+			try {
+				type.getDeclaredMethod(name, parameterTypes)
+				return true
+			} catch (NoSuchMethodException e) {
+				// not declared by this class
+			}
 		}
+		return false
 	}
 }
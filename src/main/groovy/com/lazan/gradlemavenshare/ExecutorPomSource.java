@@ -0,0 +1,57 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Adapts a synchronous {@link PomSource} to an {@link AsyncPomSource} by fetching each pom on an {@link Executor}
+ */
+public class ExecutorPomSource implements AsyncPomSource {
+	private final PomSource delegate;
+	private final Executor executor;
+
+	public ExecutorPomSource(PomSource delegate, Executor executor) {
+		this.delegate = delegate;
+		this.executor = executor;
+	}
+
+	@Override
+	public InputStream getPom(String group, String artifact, String version) {
+		return delegate.getPom(group, artifact, version);
+	}
+
+	@Override
+	public Map<Gav, CompletableFuture<byte[]>> getPomsAsync(Collection<Gav> gavs) {
+		Map<Gav, CompletableFuture<byte[]>> futures = new LinkedHashMap<>();
+		for (final Gav gav : gavs) {
+			futures.put(gav, CompletableFuture.supplyAsync(new Supplier<byte[]>() {
+				@Override
+				public byte[] get() {
+					try (InputStream in = delegate.getPom(gav.getGroupId(), gav.getArtifactId(), gav.getVersion())) {
+						return readFully(in);
+					} catch (IOException e) {
+						throw new RuntimeException("Error reading pom for " + gav, e);
+					}
+				}
+			}, executor));
+		}
+		return futures;
+	}
+
+	protected byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+}
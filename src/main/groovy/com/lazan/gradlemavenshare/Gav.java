@@ -0,0 +1,118 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable maven coordinates used as the key of pom caches and project lookups. Group and artifact ids are interned
+ * in a symbol table so that equal coordinates share their strings, the hash code is computed once
+ */
+public final class Gav {
+	private static final int MAX_SYMBOLS = 65536;
+	private static final ConcurrentMap<String, String> SYMBOLS = new ConcurrentHashMap<>();
+
+	private final String groupId;
+	private final String artifactId;
+	private final String version;
+	private final int hash;
+
+	private Gav(String groupId, String artifactId, String version) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		int hash = groupId == null ? 0 : groupId.hashCode();
+		hash = 31 * hash + (artifactId == null ? 0 : artifactId.hashCode());
+		hash = 31 * hash + (version == null ? 0 : version.hashCode());
+		this.hash = hash;
+	}
+
+	/**
+	 * @throws RuntimeException if any of the coordinates are null
+	 */
+	public static Gav of(String groupId, String artifactId, String version) {
+		if (groupId == null || artifactId == null || version == null) {
+			throw new RuntimeException(String.format("Illegal gav %s:%s:%s", groupId, artifactId, version));
+		}
+		return new Gav(symbol(groupId), symbol(artifactId), version);
+	}
+
+	/**
+	 * @return Coordinates without a version, eg for dependency management lookups. The ids may be null
+	 */
+	public static Gav ofGroupArtifact(String groupId, String artifactId) {
+		return new Gav(symbol(groupId), symbol(artifactId), null);
+	}
+
+	/**
+	 * @param gav Coordinates in groupId:artifactId:version format
+	 */
+	public static Gav parse(String gav) {
+		String[] parts = gav.split(":");
+		if (parts.length != 3) {
+			throw new RuntimeException("Illegal gav " + gav);
+		}
+		return of(parts[0], parts[1], parts[2]);
+	}
+
+	private static String symbol(String value) {
+		if (value == null) {
+			return null;
+		}
+		String symbol = SYMBOLS.get(value);
+		if (symbol == null) {
+			if (SYMBOLS.size() >= MAX_SYMBOLS) {
+				// equality doesn't depend on interning so the table can be dropped at any time
+				SYMBOLS.clear();
+			}
+			symbol = SYMBOLS.putIfAbsent(value, value);
+			if (symbol == null) {
+				symbol = value;
+			}
+		}
+		return symbol;
+	}
+
+	public String getGroupId() {
+		return groupId;
+	}
+
+	public String getArtifactId() {
+		return artifactId;
+	}
+
+	/**
+	 * @return The version or null for group and artifact coordinates
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Gav)) {
+			return false;
+		}
+		Gav other = (Gav) obj;
+		return hash == other.hash
+				&& equals(groupId, other.groupId)
+				&& equals(artifactId, other.artifactId)
+				&& equals(version, other.version);
+	}
+
+	private static boolean equals(String value1, String value2) {
+		return value1 == value2 || (value1 != null && value1.equals(value2));
+	}
+
+	@Override
+	public String toString() {
+		return version == null ? groupId + ":" + artifactId : groupId + ":" + artifactId + ":" + version;
+	}
+}
@@ -0,0 +1,406 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.maven.model.Dependency;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+/**
+ * Resolves every pom under a root directory and writes the dependencies each module would share as JSON, without
+ * configuring a Gradle build. Applies the same excludes, scope to configuration mappings and validation as the
+ * {@link DependencyShareAction} with the {@link DefaultConfigurationResolver} and {@link DefaultDependencyResolver}.
+ * Since a {@link DependencyResolver} is code, resolve rules map matching dependencies to a notation template instead.
+ * Modules are the root pom and the {@code <modules>} it aggregates, recursively, or an explicit list of module
+ * directories. They are named by their directory in the same way as Gradle project paths (eg {@code :services:web}).
+ * Doesn't depend on the Gradle API
+ */
+public class HeadlessResolver {
+	private static final Set<String> RULE_NAMES = new HashSet<>(Arrays.asList("excludes", "resolvers", "configurations",
+			"allowUnsupportedDependencyProperties", "localRepository", "repositoryUrl", "repositoryCache", "skippedDirectories", "modules"));
+
+	private final File rootDir;
+	private final DependencyRuleIndex<Boolean> excludes = new DependencyRuleIndex<>();
+	private final DependencyRuleIndex<Object> resolvers = new DependencyRuleIndex<>();
+	private final Map<String, String> configurations = new HashMap<>(DependencyMapping.DEFAULT_CONFIGURATIONS);
+	private Set<String> skippedDirectories = PomIndex.DEFAULT_SKIPPED_DIRECTORIES;
+	private List<String> moduleDirs;
+	private boolean allowUnsupportedDependencyProperties;
+	private PomSource pomSource;
+	private int moduleCount;
+	private int errorCount;
+
+	public HeadlessResolver(File rootDir) {
+		this.rootDir = rootDir;
+	}
+
+	/**
+	 * Excludes the dependencies matching the attributes, see {@link MavenShareModel#exclude(Map)}
+	 */
+	public void exclude(Map<String, ?> attributes) {
+		validateAttributes(attributes);
+		excludes.add(attributes, Boolean.TRUE);
+	}
+
+	/**
+	 * @param notation A String or Map notation for the dependencies matching the attributes. ${groupId},
+	 *        ${artifactId}, ${version}, ${type}, ${scope}, ${classifier} and ${systemPath} are replaced by the
+	 *        dependency's values
+	 */
+	public void resolve(Map<String, ?> attributes, Object notation) {
+		validateAttributes(attributes);
+		if (!(notation instanceof String || notation instanceof Map)) {
+			throw new RuntimeException("Unsupported notation " + notation + " for " + attributes);
+		}
+		resolvers.add(attributes, notation);
+	}
+
+	/**
+	 * Maps a maven scope to a configuration, replacing the default mapping for the scope
+	 */
+	public void setConfiguration(String scope, String configuration) {
+		configurations.put(scope, configuration);
+	}
+
+	public void setAllowUnsupportedDependencyProperties(boolean allowUnsupportedDependencyProperties) {
+		this.allowUnsupportedDependencyProperties = allowUnsupportedDependencyProperties;
+	}
+
+	/**
+	 * @param pomSource Provides the parents and BOMs which aren't in the root directory
+	 */
+	public void setPomSource(PomSource pomSource) {
+		this.pomSource = pomSource;
+	}
+
+	public void setSkippedDirectories(Set<String> skippedDirectories) {
+		this.skippedDirectories = skippedDirectories;
+	}
+
+	/**
+	 * @param moduleDirs Module directories relative to the root directory ("" for the root pom) to resolve instead of
+	 *        the reactor of the root pom, null for the reactor
+	 */
+	public void setModules(List<String> moduleDirs) {
+		this.moduleDirs = moduleDirs;
+	}
+
+	/**
+	 * Applies the rules from a JSON file, eg
+	 *
+	 * <pre>
+	 * {
+	 *   "excludes": [{"groupId": "com.sun"}],
+	 *   "resolvers": [{"attributes": {"type": "test-jar"}, "notation": "${groupId}:${artifactId}:${version}:tests"}],
+	 *   "configurations": {"test": "testImplementation"},
+	 *   "localRepository": "/home/me/.m2/repository"
+	 * }
+	 * </pre>
+	 */
+	@SuppressWarnings("unchecked")
+	public void applyRules(File rulesFile) {
+		Object parsed = new JsonSlurper().parse(rulesFile);
+		if (!(parsed instanceof Map)) {
+			throw new RuntimeException("Expected an object in " + rulesFile);
+		}
+		Map<String, Object> rules = (Map<String, Object>) parsed;
+		for (String name : rules.keySet()) {
+			if (!RULE_NAMES.contains(name)) {
+				throw new RuntimeException("Unsupported rule " + name + " " + RULE_NAMES);
+			}
+		}
+		if (rules.containsKey("excludes")) {
+			for (Map<String, ?> attributes : (List<Map<String, ?>>) rules.get("excludes")) {
+				exclude(attributes);
+			}
+		}
+		if (rules.containsKey("resolvers")) {
+			for (Map<String, Object> resolver : (List<Map<String, Object>>) rules.get("resolvers")) {
+				resolve((Map<String, ?>) resolver.get("attributes"), resolver.get("notation"));
+			}
+		}
+		if (rules.containsKey("configurations")) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) rules.get("configurations")).entrySet()) {
+				setConfiguration(entry.getKey(), String.valueOf(entry.getValue()));
+			}
+		}
+		if (rules.containsKey("allowUnsupportedDependencyProperties")) {
+			setAllowUnsupportedDependencyProperties(Boolean.TRUE.equals(rules.get("allowUnsupportedDependencyProperties")));
+		}
+		if (rules.containsKey("skippedDirectories")) {
+			setSkippedDirectories(new HashSet<>((Collection<String>) rules.get("skippedDirectories")));
+		}
+		if (rules.containsKey("modules")) {
+			setModules(new ArrayList<>((Collection<String>) rules.get("modules")));
+		}
+		if (rules.containsKey("repositoryUrl")) {
+			Object cacheDir = rules.get("repositoryCache");
+			if (cacheDir == null) {
+				throw new RuntimeException("repositoryCache is required with repositoryUrl");
+			}
+			setPomSource(new HttpRepositoryPomSource(String.valueOf(rules.get("repositoryUrl")), new File(String.valueOf(cacheDir))));
+		} else if (rules.containsKey("localRepository")) {
+			Object repositoryDir = rules.get("localRepository");
+			setPomSource(repositoryDir == null ? new LocalRepositoryPomSource() : new LocalRepositoryPomSource(new File(String.valueOf(repositoryDir))));
+		}
+	}
+
+	/**
+	 * Resolves the poms and writes a JSON array with an object per module, ordered by module path. Each module is
+	 * written as soon as its dependencies are mapped. A module or dependency which can't be resolved or mapped is
+	 * written with an error rather than failing
+	 *
+	 * @return The number of errors
+	 */
+	public int write(Writer out) throws IOException {
+		moduleCount = 0;
+		errorCount = 0;
+		PomIndex index = PomIndex.scan(rootDir, skippedDirectories);
+		PomResolveCache cache = new PomResolveCache();
+		cache.setPomIndex(index);
+		PomResolver pomResolver = new PomResolver();
+		pomResolver.setStreaming(true);
+		pomResolver.setPomIndex(index);
+		Path rootPath = rootDir.getCanonicalFile().toPath();
+
+		Map<String, File> pomFiles = new TreeMap<>();
+		if (moduleDirs != null) {
+			for (String moduleDir : moduleDirs) {
+				File pomFile = getModulePomFile(new File(rootDir, moduleDir));
+				pomFiles.put(getModulePath(rootPath, pomFile), pomFile);
+			}
+		} else {
+			addReactorPoms(getModulePomFile(rootDir), rootPath, pomResolver, cache, pomFiles);
+		}
+		pomResolver.setModulePoms(pomFiles.values());
+
+		// every pom is resolved before any dependencies are mapped since a dependency may be on any module
+		Map<String, Object> modules = new LinkedHashMap<>();
+		Map<Gav, String> modulesByGav = new HashMap<>();
+		for (Map.Entry<String, File> entry : pomFiles.entrySet()) {
+			String module = entry.getKey();
+			try {
+				ResolvedPom pom = pomResolver.resolvePom(entry.getValue(), cache, pomSource);
+				Gav gav = Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+				if (modulesByGav.containsKey(gav)) {
+					throw new RuntimeException("Duplicate GAV " + gav + " in " + modulesByGav.get(gav));
+				}
+				modulesByGav.put(gav, module);
+				modules.put(module, pom);
+			} catch (RuntimeException e) {
+				modules.put(module, e);
+			}
+		}
+
+		out.write("[");
+		String separator = "\n";
+		for (Map.Entry<String, Object> entry : modules.entrySet()) {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("module", entry.getKey());
+			if (entry.getValue() instanceof ResolvedPom) {
+				ResolvedPom pom = (ResolvedPom) entry.getValue();
+				json.put("pomFile", rootPath.relativize(pom.getPomFile().toPath()).toString().replace(File.separatorChar, '/'));
+				json.put("groupId", pom.getGroupId());
+				json.put("artifactId", pom.getArtifactId());
+				json.put("version", pom.getVersion());
+				json.put("dependencies", shareDependencies(pom, modulesByGav));
+			} else {
+				json.put("error", getMessage((RuntimeException) entry.getValue()));
+				++errorCount;
+			}
+			out.write(separator);
+			out.write(JsonOutput.toJson(json));
+			out.flush();
+			separator = ",\n";
+			++moduleCount;
+		}
+		out.write("\n]\n");
+		out.flush();
+		return errorCount;
+	}
+
+	/**
+	 * Adds the pom and the {@code <modules>} it aggregates, recursively. A pom which can't be resolved is added without
+	 * its modules so that its error is written
+	 */
+	protected void addReactorPoms(File pomFile, Path rootPath, PomResolver pomResolver, PomResolveCache cache, Map<String, File> pomFiles) throws IOException {
+		String module = getModulePath(rootPath, pomFile);
+		if (pomFiles.containsKey(module)) {
+			return;
+		}
+		pomFiles.put(module, pomFile);
+		List<String> modules;
+		try {
+			modules = pomResolver.resolvePom(pomFile, cache, pomSource).getModel().getModules();
+		} catch (RuntimeException e) {
+			return;
+		}
+		for (String childModule : modules) {
+			addReactorPoms(getModulePomFile(new File(pomFile.getParentFile(), childModule)), rootPath, pomResolver, cache, pomFiles);
+		}
+	}
+
+	/**
+	 * @param file A module directory or pom file
+	 */
+	protected File getModulePomFile(File file) throws IOException {
+		File pomFile = file.isFile() ? file : new File(file, "pom.xml");
+		return pomFile.getCanonicalFile();
+	}
+
+	/**
+	 * Applies the excludes, configuration mappings and resolve rules in the same order as the
+	 * {@link DependencyShareAction}
+	 */
+	protected List<Map<String, Object>> shareDependencies(ResolvedPom pom, Map<Gav, String> modulesByGav) {
+		List<Map<String, Object>> shared = new ArrayList<>();
+		List<Dependency> deps;
+		try {
+			deps = pom.getDependencies();
+		} catch (RuntimeException e) {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("error", getMessage(e));
+			shared.add(json);
+			++errorCount;
+			return shared;
+		}
+		for (Dependency dep : deps) {
+			if (excludes.matches(dep)) {
+				continue;
+			}
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("configuration", DependencyMapping.getConfigurationName(dep, configurations));
+			json.put("dependency", dep.getGroupId() + ":" + dep.getArtifactId() + ":" + dep.getVersion());
+			try {
+				Object template = resolvers.getValue(dep);
+				String module = modulesByGav.get(Gav.of(dep.getGroupId(), dep.getArtifactId(), dep.getVersion()));
+				if (template != null) {
+					json.put("notation", expand(template, dep));
+				} else if (module != null) {
+					if (!allowUnsupportedDependencyProperties) {
+						DependencyMapping.validateProjectDependency(dep);
+					}
+					json.put("project", module);
+				} else {
+					if (!allowUnsupportedDependencyProperties) {
+						DependencyMapping.validateExternalDependency(dep);
+					}
+					json.put("notation", DependencyMapping.createNotation(dep));
+				}
+				if (!dep.getExclusions().isEmpty()) {
+					json.put("excludes", DependencyMapping.createExcludes(dep.getExclusions()));
+				}
+			} catch (RuntimeException e) {
+				json.put("error", getMessage(e));
+				++errorCount;
+			}
+			shared.add(json);
+		}
+		return shared;
+	}
+
+	/**
+	 * @return Number of modules written by the last {@link #write(Writer)}
+	 */
+	public int getModuleCount() {
+		return moduleCount;
+	}
+
+	protected Object expand(Object template, Dependency dep) {
+		if (template instanceof String) {
+			return expand((String) template, dep);
+		}
+		Map<String, String> notation = new LinkedHashMap<>();
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) template).entrySet()) {
+			notation.put(String.valueOf(entry.getKey()), expand(String.valueOf(entry.getValue()), dep));
+		}
+		return notation;
+	}
+
+	protected String expand(String template, Dependency dep) {
+		StringBuilder result = new StringBuilder();
+		int start = 0;
+		int open;
+		while ((open = template.indexOf("${", start)) >= 0) {
+			int close = template.indexOf('}', open);
+			if (close < 0) {
+				break;
+			}
+			String name = template.substring(open + 2, close);
+			if (!DependencyRuleIndex.isAttributeName(name)) {
+				throw new RuntimeException("Unsupported attribute " + name + " in notation " + template);
+			}
+			String value = DependencyRuleIndex.getAttribute(dep, name);
+			result.append(template, start, open).append(value == null ? "" : value);
+			start = close + 1;
+		}
+		return result.append(template.substring(start)).toString();
+	}
+
+	protected String getModulePath(Path rootPath, File pomFile) {
+		Path dir = rootPath.relativize(pomFile.toPath().getParent());
+		StringBuilder path = new StringBuilder();
+		for (Path name : dir) {
+			if (!name.toString().isEmpty()) {
+				path.append(':').append(name.toString());
+			}
+		}
+		return path.length() == 0 ? ":" : path.toString();
+	}
+
+	private void validateAttributes(Map<String, ?> attributes) {
+		if (attributes == null || attributes.isEmpty()) {
+			throw new RuntimeException("Rule attributes are required");
+		}
+		for (String key : attributes.keySet()) {
+			if (!DependencyRuleIndex.isAttributeName(key)) {
+				throw new RuntimeException("Unsupported attribute " + key);
+			}
+		}
+	}
+
+	private static String getMessage(RuntimeException e) {
+		Throwable cause = e;
+		while (cause.getMessage() == null && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+	}
+
+	/**
+	 * Usage: {@code HeadlessResolver <rootDir> [rulesFile]}. Writes the JSON to stdout and a summary to stderr, exits
+	 * with 1 if any module or dependency has an error
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: " + HeadlessResolver.class.getName() + " <rootDir> [rulesFile]");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		HeadlessResolver resolver = new HeadlessResolver(new File(args[0]));
+		if (args.length > 1) {
+			resolver.applyRules(new File(args[1]));
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+		int errors = resolver.write(out);
+		System.err.println(String.format("Resolved %s modules in %.1f ms, %s errors", resolver.getModuleCount(), (System.nanoTime() - start) / 1000000.0, errors));
+		System.exit(errors == 0 ? 0 : 1);
+	}
+}
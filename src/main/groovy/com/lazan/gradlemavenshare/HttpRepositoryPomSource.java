@@ -0,0 +1,375 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PomSource} which fetches poms from a Maven layout HTTP repository (eg Maven Central or a Nexus group).
+ * <ul>
+ * <li>Connections are kept alive and reused, every response body is read to the end before the stream is closed</li>
+ * <li>The number of concurrent requests is limited so that a parallel build doesn't flood the repository</li>
+ * <li>Fetched poms are written to a cache directory together with their SHA-1, a cached pom is only used if its
+ * content matches the checksum. SNAPSHOT poms may be redeployed under the same version so they aren't cached</li>
+ * <li>Connection errors, timeouts and 5xx or 429 responses are retried with exponential backoff, other 4xx responses
+ * except 404 and 410 fail without a retry</li>
+ * </ul>
+ * Request latency and throughput are available from the getters and are recorded in the {@link ShareMetrics}
+ */
+public class HttpRepositoryPomSource implements PomSource {
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/**
+	 * An HTTP status which may succeed if the request is retried
+	 */
+	private static class TransientException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		TransientException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * A client error other than not found, the request is not retried
+	 */
+	private static class ClientErrorException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ClientErrorException(String message) {
+			super(message);
+		}
+	}
+
+	private final String repositoryUrl;
+	private final File cacheDir;
+	private final Semaphore permits;
+	private final int maxConcurrentRequests;
+	private final Set<Gav> missing = Collections.newSetFromMap(new ConcurrentHashMap<Gav, Boolean>());
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long retryDelayMillis = 200;
+	private int connectTimeoutMillis = 10000;
+	private int readTimeoutMillis = 30000;
+	private volatile ShareMetrics metrics = ShareMetrics.DISABLED;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong requestNanos = new AtomicLong();
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private final AtomicInteger peakRequests = new AtomicInteger();
+
+	public HttpRepositoryPomSource(String repositoryUrl, File cacheDir) {
+		this(repositoryUrl, cacheDir, DEFAULT_MAX_CONCURRENT_REQUESTS);
+	}
+
+	/**
+	 * @param repositoryUrl Root of the repository
+	 * @param cacheDir Directory for fetched poms, in the repository layout
+	 * @param maxConcurrentRequests Maximum number of requests in flight
+	 */
+	public HttpRepositoryPomSource(String repositoryUrl, File cacheDir, int maxConcurrentRequests) {
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("Illegal maxConcurrentRequests " + maxConcurrentRequests);
+		}
+		this.repositoryUrl = repositoryUrl.endsWith("/") ? repositoryUrl : repositoryUrl + "/";
+		this.cacheDir = cacheDir;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.permits = new Semaphore(maxConcurrentRequests, true);
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @param retryDelayMillis Delay before the first retry, doubled for each further retry
+	 */
+	public void setRetryDelayMillis(long retryDelayMillis) {
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public void setReadTimeoutMillis(int readTimeoutMillis) {
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * @param metrics Records the time spent on requests and counts requests, cache hits, retries and bytes
+	 */
+	public void setMetrics(ShareMetrics metrics) {
+		this.metrics = metrics == null ? ShareMetrics.DISABLED : metrics;
+	}
+
+	@Override
+	public InputStream getPom(String group, String artifact, String version) {
+		Gav gav = Gav.of(group, artifact, version);
+		if (missing.contains(gav)) {
+			throw createNotFoundException(gav);
+		}
+		String path = getPomPath(group, artifact, version);
+		if (isSnapshot(version)) {
+			return new ByteArrayInputStream(fetchPom(gav, path));
+		}
+		byte[] content = readCachedPom(path);
+		if (content != null) {
+			cacheHits.incrementAndGet();
+			metrics.increment("http.cacheHits");
+			return new ByteArrayInputStream(content);
+		}
+		content = fetchPom(gav, path);
+		writeCachedPom(path, content);
+		return new ByteArrayInputStream(content);
+	}
+
+	protected boolean isSnapshot(String version) {
+		return version != null && version.endsWith("-SNAPSHOT");
+	}
+
+	public String getPomPath(String group, String artifact, String version) {
+		return String.format("%s/%s/%s/%s-%s.pom", group.replace('.', '/'), artifact, version, artifact, version);
+	}
+
+	/**
+	 * @return The content of the cached pom or null if it's not cached or doesn't match its checksum
+	 */
+	protected byte[] readCachedPom(String path) {
+		File pomFile = new File(cacheDir, path);
+		File sha1File = new File(cacheDir, path + ".sha1");
+		if (!pomFile.isFile() || !sha1File.isFile()) {
+			return null;
+		}
+		try {
+			byte[] content = Files.readAllBytes(pomFile.toPath());
+			String checksum = parseChecksum(Files.readAllBytes(sha1File.toPath()));
+			return PersistentPomCache.hash(content).equals(checksum) ? content : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The pom and checksum are each written to a temporary file which is then moved into place so that concurrent
+	 * builds never read a partially written file
+	 */
+	protected void writeCachedPom(String path, byte[] content) {
+		File pomFile = new File(cacheDir, path);
+		try {
+			pomFile.getParentFile().mkdirs();
+			write(pomFile, content);
+			write(new File(cacheDir, path + ".sha1"), PersistentPomCache.hash(content).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			// the cache is an optimisation, the pom will be fetched again
+		}
+	}
+
+	private void write(File file, byte[] content) throws IOException {
+		File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		try {
+			Files.write(tempFile.toPath(), content);
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Fetches the pom and its checksum, a checksum mismatch is retried like a transient failure
+	 */
+	protected byte[] fetchPom(Gav gav, String path) {
+		IOException lastError = null;
+		int attempts = 0;
+		for (int attempt = 0; attempt <= maxRetries; ++attempt) {
+			attempts = attempt + 1;
+			if (attempt > 0) {
+				retries.incrementAndGet();
+				metrics.increment("http.retries");
+				sleep(retryDelayMillis << (attempt - 1));
+			}
+			try {
+				byte[] content = fetch(path);
+				if (content == null) {
+					missing.add(gav);
+					throw createNotFoundException(gav);
+				}
+				byte[] checksum = fetch(path + ".sha1");
+				if (checksum == null || PersistentPomCache.hash(content).equals(parseChecksum(checksum))) {
+					return content;
+				}
+				lastError = new IOException("Checksum mismatch for " + repositoryUrl + path);
+			} catch (ClientErrorException e) {
+				lastError = e;
+				break;
+			} catch (IOException e) {
+				lastError = e;
+			}
+		}
+		failures.incrementAndGet();
+		metrics.increment("http.failures");
+		throw new RuntimeException(String.format("Error fetching pom for %s after %s attempts", gav, attempts), lastError);
+	}
+
+	/**
+	 * @return The response body or null if the resource does not exist
+	 * @throws TransientException if the response status may succeed on retry
+	 * @throws ClientErrorException if the response is a client error other than not found
+	 */
+	protected byte[] fetch(String path) throws IOException {
+		permits.acquireUninterruptibly();
+		int active = activeRequests.incrementAndGet();
+		int peak = peakRequests.get();
+		while (active > peak && !peakRequests.compareAndSet(peak, active)) {
+			peak = peakRequests.get();
+		}
+		long start = System.nanoTime();
+		long metricsStart = metrics.start();
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(repositoryUrl + path).openConnection();
+			connection.setConnectTimeout(connectTimeoutMillis);
+			connection.setReadTimeout(readTimeoutMillis);
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_OK) {
+				byte[] content;
+				try (InputStream in = connection.getInputStream()) {
+					content = readFully(in);
+				}
+				bytes.addAndGet(content.length);
+				metrics.add("http.bytes", content.length);
+				return content;
+			}
+			// the error body is drained so that the connection can be reused
+			try (InputStream in = connection.getErrorStream()) {
+				if (in != null) {
+					readFully(in);
+				}
+			}
+			if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+				return null;
+			}
+			if (status >= 500 || status == 429) {
+				throw new TransientException(String.format("HTTP %s from %s%s", status, repositoryUrl, path));
+			}
+			throw new ClientErrorException(String.format("HTTP %s from %s%s", status, repositoryUrl, path));
+		} finally {
+			requests.incrementAndGet();
+			requestNanos.addAndGet(System.nanoTime() - start);
+			metrics.increment("http.requests");
+			metrics.record("http", metricsStart);
+			activeRequests.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	/**
+	 * @return The hex digest, checksum files may be followed by a file name
+	 */
+	private static String parseChecksum(byte[] content) {
+		String checksum = new String(content, StandardCharsets.UTF_8).trim();
+		int space = checksum.indexOf(' ');
+		return (space < 0 ? checksum : checksum.substring(0, space)).toLowerCase();
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected RuntimeException createNotFoundException(Gav gav) {
+		return new RuntimeException(String.format("Pom not found for %s in %s", gav, repositoryUrl));
+	}
+
+	public String getRepositoryUrl() {
+		return repositoryUrl;
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * @return The number of HTTP requests including checksums and retries
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getCacheHitCount() {
+		return cacheHits.get();
+	}
+
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public long getBytesFetched() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return The highest number of requests which were in flight at the same time
+	 */
+	public int getPeakConcurrentRequests() {
+		return peakRequests.get();
+	}
+
+	public double getAverageLatencyMillis() {
+		long count = requests.get();
+		return count == 0 ? 0 : requestNanos.get() / 1000000.0 / count;
+	}
+
+	/**
+	 * @return Bytes fetched per second of request time
+	 */
+	public double getThroughputBytesPerSecond() {
+		long nanos = requestNanos.get();
+		return nanos == 0 ? 0 : bytes.get() * 1000000000.0 / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s requests, %s cache hits, %s retries, %s failures, %.1fms average latency, %.0f bytes/s]",
+				repositoryUrl, getRequestCount(), getCacheHitCount(), getRetryCount(), getFailureCount(),
+				getAverageLatencyMillis(), getThroughputBytesPerSecond());
+	}
+}
@@ -0,0 +1,179 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the {@link ResolvedPom}s of a build in memory so that the next build in the same Gradle daemon (eg with
+ * {@code --continuous}) only resolves the poms which changed. Each pom file has a {@link PomFingerprint} and each
+ * parent pom file is indexed to the pom files which inherit from it, each BOM pom file to the pom files which import
+ * it. When a pom changes it is removed from the cache along with all of its descendants and importers, every other
+ * pom is reused as is
+ */
+public class IncrementalPomCache {
+	private static final int MAX_CACHES = 16;
+	private static final Map<String, IncrementalPomCache> CACHES = new HashMap<>();
+
+	private final PomResolveCache cache = new PomResolveCache();
+	private final PersistentPomCache persistentCache;
+	private final Map<File, PomFingerprint> fingerprints = new HashMap<>();
+	private final Map<File, Set<File>> descendants = new HashMap<>();
+
+	public IncrementalPomCache(PersistentPomCache persistentCache) {
+		this.persistentCache = persistentCache;
+	}
+
+	/**
+	 * @param rootDir Root directory of the build
+	 * @param pomCacheFile Persistent cache file or null if there is no persistent cache
+	 * @return The cache used by the previous build of the root directory in this JVM or a new cache
+	 */
+	public static IncrementalPomCache forBuild(File rootDir, File pomCacheFile) {
+		String key = canonicalFile(rootDir) + "|" + (pomCacheFile == null ? "" : canonicalFile(pomCacheFile));
+		synchronized (CACHES) {
+			IncrementalPomCache incremental = CACHES.get(key);
+			if (incremental == null) {
+				if (CACHES.size() >= MAX_CACHES) {
+					CACHES.clear();
+				}
+				incremental = new IncrementalPomCache(pomCacheFile == null ? null : PersistentPomCache.load(pomCacheFile));
+				CACHES.put(key, incremental);
+			}
+			return incremental;
+		}
+	}
+
+	public PomResolveCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return The persistent cache which is kept alongside the resolved poms, null if there is no persistent cache
+	 */
+	public PersistentPomCache getPersistentCache() {
+		return persistentCache;
+	}
+
+	/**
+	 * Removes the poms whose file has changed or been deleted, and their descendants, from the cache
+	 *
+	 * @return The removed pom files
+	 */
+	public synchronized Set<File> refresh() {
+		Deque<File> queue = new ArrayDeque<>();
+		for (Map.Entry<File, PomFingerprint> entry : fingerprints.entrySet()) {
+			File pomFile = entry.getKey();
+			PomFingerprint fingerprint = entry.getValue();
+			if (fingerprint.isUnchanged(pomFile)) {
+				continue;
+			}
+			PomFingerprint current = pomFile.isFile() ? PomFingerprint.of(pomFile) : null;
+			if (current != null && current.hasSameContent(fingerprint)) {
+				entry.setValue(current);
+			} else {
+				queue.add(pomFile);
+			}
+		}
+		Set<File> removed = new LinkedHashSet<>();
+		while (!queue.isEmpty()) {
+			File pomFile = queue.poll();
+			if (removed.add(pomFile)) {
+				remove(pomFile);
+				Set<File> children = descendants.get(pomFile);
+				if (children != null) {
+					queue.addAll(children);
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return true if the pom file is resolved and unchanged since the last {@link #refresh()}
+	 */
+	public boolean isResolved(File pomFile) {
+		return cache.isResolved(pomFile);
+	}
+
+	/**
+	 * Records the fingerprints and parent index of the poms resolved by a build. A BOM pom file is indexed like a
+	 * parent of the pom files which import it. Pom files which are no longer referenced by any of the poms are removed
+	 * from the cache
+	 */
+	public synchronized void update(Collection<ResolvedPom> poms) {
+		Map<Gav, File> pomFiles = new HashMap<>();
+		descendants.clear();
+		for (ResolvedPom pom : poms) {
+			File childFile = null;
+			for (ResolvedPom current = pom; current != null && current.getPomFile() != null; current = current.getParent()) {
+				File pomFile = canonicalFile(current.getPomFile());
+				pomFiles.put(Gav.of(current.getGroupId(), current.getArtifactId(), current.getVersion()), pomFile);
+				if (!fingerprints.containsKey(pomFile)) {
+					fingerprints.put(pomFile, PomFingerprint.of(pomFile));
+				}
+				if (childFile != null) {
+					addDescendant(pomFile, childFile);
+				}
+				childFile = pomFile;
+			}
+		}
+		for (ResolvedPom pom : poms) {
+			for (ResolvedPom current = pom; current != null && current.getPomFile() != null; current = current.getParent()) {
+				for (Gav bom : current.getImportedBoms()) {
+					File bomFile = pomFiles.get(bom);
+					if (bomFile != null) {
+						addDescendant(bomFile, canonicalFile(current.getPomFile()));
+					}
+				}
+			}
+		}
+		Set<File> referenced = new HashSet<>(pomFiles.values());
+		for (File pomFile : new HashSet<>(fingerprints.keySet())) {
+			if (!referenced.contains(pomFile)) {
+				remove(pomFile);
+			}
+		}
+	}
+
+	private void addDescendant(File pomFile, File childFile) {
+		Set<File> children = descendants.get(pomFile);
+		if (children == null) {
+			children = new HashSet<>();
+			descendants.put(pomFile, children);
+		}
+		children.add(childFile);
+	}
+
+	/**
+	 * @return The pom files which inherit directly from the parent pom file or import it as a BOM
+	 */
+	public synchronized Set<File> getChildren(File parentPomFile) {
+		Set<File> children = descendants.get(canonicalFile(parentPomFile));
+		return children == null ? Collections.<File> emptySet() : new HashSet<>(children);
+	}
+
+	protected void remove(File pomFile) {
+		fingerprints.remove(pomFile);
+		ResolvedPom pom = cache.removeResolvedPom(pomFile);
+		if (pom != null && persistentCache != null) {
+			persistentCache.removeResolvedPom(pom);
+		}
+	}
+
+	private static File canonicalFile(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read only map of resolved properties which holds a pom's own and overridden entries in a layer on top of its
+ * parent's properties, so the properties of a parent with many children are stored once rather than copied into each
+ * child. Lookups check each layer from the child up. Iteration returns a layer's entries before the entries it
+ * inherits
+ */
+final class LayeredProperties extends AbstractMap<String, String> {
+	private final LayeredProperties parent;
+	private final Map<String, String> layer;
+	private int size = -1;
+	private Set<Map.Entry<String, String>> entrySet;
+
+	/**
+	 * @param parent Inherited properties or null
+	 * @param layer Entries which are added or differ from the parent's entries, the map is owned by this instance
+	 */
+	LayeredProperties(LayeredProperties parent, Map<String, String> layer) {
+		this.parent = parent;
+		this.layer = layer;
+	}
+
+	/**
+	 * @return Properties holding only the entries of the full map which differ from the parent's entries
+	 */
+	static LayeredProperties of(LayeredProperties parent, Map<String, String> properties) {
+		Map<String, String> layer = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			String value = entry.getValue();
+			if (parent == null || !parent.containsKey(entry.getKey()) || !equal(value, parent.get(entry.getKey()))) {
+				layer.put(entry.getKey(), value);
+			}
+		}
+		return new LayeredProperties(parent, layer);
+	}
+
+	/**
+	 * @return The number of entries held by this layer
+	 */
+	int getLayerSize() {
+		return layer.size();
+	}
+
+	@Override
+	public String get(Object key) {
+		for (LayeredProperties current = this; current != null; current = current.parent) {
+			String value = current.layer.get(key);
+			if (value != null || current.layer.containsKey(key)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		for (LayeredProperties current = this; current != null; current = current.parent) {
+			if (current.layer.containsKey(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		if (size < 0) {
+			int count = layer.size();
+			if (parent != null) {
+				count += parent.size();
+				for (String key : layer.keySet()) {
+					if (parent.containsKey(key)) {
+						--count;
+					}
+				}
+			}
+			size = count;
+		}
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, String>>() {
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return LayeredProperties.this.size();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Iterates each layer, skipping the entries overridden by a lower layer
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+		private LayeredProperties current = LayeredProperties.this;
+		private Iterator<Map.Entry<String, String>> iterator = layer.entrySet().iterator();
+		private Map.Entry<String, String> next;
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && current != null) {
+				if (iterator.hasNext()) {
+					Map.Entry<String, String> candidate = iterator.next();
+					if (!isOverridden(candidate.getKey())) {
+						next = new SimpleImmutableEntry<>(candidate);
+					}
+				} else {
+					current = current.parent;
+					iterator = current == null ? null : current.layer.entrySet().iterator();
+				}
+			}
+			return next != null;
+		}
+
+		private boolean isOverridden(String key) {
+			for (LayeredProperties layered = LayeredProperties.this; layered != current; layered = layered.parent) {
+				if (layered.layer.containsKey(key)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static boolean equal(String value1, String value2) {
+		return value1 == null ? value2 == null : value1.equals(value2);
+	}
+}
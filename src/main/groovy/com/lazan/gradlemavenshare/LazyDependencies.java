@@ -0,0 +1,51 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ResolvableDependencies;
+
+/**
+ * Defers adding dependencies to a project until one of its configurations is resolved. The configurations of a
+ * project dependency are not resolved directly so the wiring of a project may trigger the wiring of the projects it
+ * depends on via {@link #wire(Project)}
+ */
+class LazyDependencies {
+	private final Map<Project, Runnable> pending = new HashMap<>();
+
+	public void register(final Project project, Runnable wiring) {
+		synchronized (pending) {
+			if (pending.containsKey(project)) {
+				throw new RuntimeException("Lazy dependencies already registered for " + project);
+			}
+			pending.put(project, wiring);
+		}
+		project.getConfigurations().all(new Action<Configuration>() {
+			@Override
+			public void execute(Configuration config) {
+				config.getIncoming().beforeResolve(new Action<ResolvableDependencies>() {
+					@Override
+					public void execute(ResolvableDependencies dependencies) {
+						wire(project);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Adds the dependencies registered for the project if they have not been added already
+	 */
+	public void wire(Project project) {
+		Runnable wiring;
+		synchronized (pending) {
+			wiring = pending.remove(project);
+		}
+		if (wiring != null) {
+			wiring.run();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link PomSource} which reads poms from a Maven local repository directory layout (eg ~/.m2/repository). Pom bytes
+ * are held in a least recently used cache bounded by total size and GAVs which were not found are remembered so that
+ * they are not looked up on the filesystem again
+ */
+public class LocalRepositoryPomSource implements PomSource {
+	public static final long DEFAULT_MAX_CACHE_BYTES = 32L * 1024 * 1024;
+	private static final long MAP_THRESHOLD = 64 * 1024;
+
+	private final File repositoryDir;
+	private final long maxCacheBytes;
+	private final Map<Gav, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final Set<Gav> missing = Collections.newSetFromMap(new ConcurrentHashMap<Gav, Boolean>());
+	private long cacheBytes;
+
+	/**
+	 * Uses the maven.repo.local system property if set, otherwise ~/.m2/repository
+	 */
+	public LocalRepositoryPomSource() {
+		this(getDefaultRepositoryDir());
+	}
+
+	public LocalRepositoryPomSource(File repositoryDir) {
+		this(repositoryDir, DEFAULT_MAX_CACHE_BYTES);
+	}
+
+	/**
+	 * @param repositoryDir Root of the repository
+	 * @param maxCacheBytes Maximum total size of the poms held in memory
+	 */
+	public LocalRepositoryPomSource(File repositoryDir, long maxCacheBytes) {
+		this.repositoryDir = repositoryDir;
+		this.maxCacheBytes = maxCacheBytes;
+	}
+
+	public static File getDefaultRepositoryDir() {
+		String localRepo = System.getProperty("maven.repo.local");
+		if (localRepo != null) {
+			return new File(localRepo);
+		}
+		return new File(System.getProperty("user.home"), ".m2/repository");
+	}
+
+	@Override
+	public InputStream getPom(String group, String artifact, String version) {
+		Gav gav = Gav.of(group, artifact, version);
+		if (missing.contains(gav)) {
+			throw createNotFoundException(gav);
+		}
+		byte[] content;
+		synchronized (cache) {
+			content = cache.get(gav);
+		}
+		if (content == null) {
+			content = readPom(getPomFile(group, artifact, version));
+			if (content == null) {
+				missing.add(gav);
+				throw createNotFoundException(gav);
+			}
+			addToCache(gav, content);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	public File getPomFile(String group, String artifact, String version) {
+		String path = String.format("%s/%s/%s/%s-%s.pom", group.replace('.', '/'), artifact, version, artifact, version);
+		return new File(repositoryDir, path);
+	}
+
+	/**
+	 * @return The pom content or null if the file does not exist. Large files are memory mapped
+	 */
+	protected byte[] readPom(File pomFile) {
+		try (FileChannel channel = FileChannel.open(pomFile.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Pom too large " + pomFile);
+			}
+			byte[] content = new byte[(int) size];
+			if (size > MAP_THRESHOLD) {
+				channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(content);
+			} else {
+				ByteBuffer buffer = ByteBuffer.wrap(content);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						throw new IOException("Unexpected end of file " + pomFile);
+					}
+				}
+			}
+			return content;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading " + pomFile, e);
+		}
+	}
+
+	protected void addToCache(Gav gav, byte[] content) {
+		if (content.length > maxCacheBytes) {
+			return;
+		}
+		synchronized (cache) {
+			byte[] previous = cache.put(gav, content);
+			cacheBytes += content.length - (previous == null ? 0 : previous.length);
+			Iterator<byte[]> iterator = cache.values().iterator();
+			while (cacheBytes > maxCacheBytes && iterator.hasNext()) {
+				cacheBytes -= iterator.next().length;
+				iterator.remove();
+			}
+		}
+	}
+
+	protected RuntimeException createNotFoundException(Gav gav) {
+		return new RuntimeException(String.format("Pom not found for %s in %s", gav, repositoryDir));
+	}
+
+	public File getRepositoryDir() {
+		return repositoryDir;
+	}
+}
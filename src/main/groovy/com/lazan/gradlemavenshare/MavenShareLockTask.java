@@ -0,0 +1,40 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Writes the {@link ShareSnapshot} of the dependencies shared with each project to
+ * {@link MavenShareRootModel#getShareLockFile()}
+ */
+public class MavenShareLockTask extends DefaultTask {
+	public MavenShareLockTask() {
+		setGroup("build setup");
+		setDescription("Writes a snapshot of the shared maven dependencies which is used while the poms are unchanged");
+		// the dependencies are shared while configuring so the snapshot is never up to date
+		getOutputs().upToDateWhen(new Spec<Task>() {
+			@Override
+			public boolean isSatisfiedBy(Task task) {
+				return false;
+			}
+		});
+	}
+
+	@TaskAction
+	public void writeLock() {
+		ShareSnapshot snapshot = getProject().getPlugins().getPlugin(MavenShareRootPlugin.class).createShareSnapshot(getProject());
+		File file = getLockFile();
+		snapshot.write(file);
+		getLogger().lifecycle("Share lock written to " + file);
+	}
+
+	@OutputFile
+	public File getLockFile() {
+		return getProject().file(getProject().getExtensions().getByType(MavenShareRootModel.class).getShareLockFile());
+	}
+}
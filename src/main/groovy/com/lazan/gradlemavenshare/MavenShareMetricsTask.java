@@ -0,0 +1,70 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Writes the {@link ShareMetrics} recorded while configuring the build as JSON and logs a summary of the slowest
+ * modules and phases
+ */
+public class MavenShareMetricsTask extends DefaultTask {
+	private Object reportFile;
+	private int summaryLimit = 10;
+
+	public MavenShareMetricsTask() {
+		setGroup("help");
+		setDescription("Reports the time spent resolving poms and running ShareActions");
+		// the metrics are recorded while configuring so they are never up to date
+		getOutputs().upToDateWhen(new Spec<Task>() {
+			@Override
+			public boolean isSatisfiedBy(Task task) {
+				return false;
+			}
+		});
+	}
+
+	@TaskAction
+	public void report() throws IOException {
+		ShareMetrics metrics = getProject().getPlugins().getPlugin(MavenShareRootPlugin.class).getMetrics();
+		if (!metrics.isEnabled()) {
+			getLogger().lifecycle("No metrics recorded, set mavenShareRoot.shareMetrics = true to record them");
+			return;
+		}
+		File file = getReportFile();
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), metrics.toJson().getBytes(StandardCharsets.UTF_8));
+		getLogger().lifecycle(metrics.getSummary(summaryLimit));
+		getLogger().lifecycle("Metrics written to " + file);
+	}
+
+	@OutputFile
+	public File getReportFile() {
+		return reportFile == null ? new File(getProject().getBuildDir(), "reports/mavenShare/metrics.json") : getProject().file(reportFile);
+	}
+
+	/**
+	 * @param reportFile Report file resolved against the project directory, defaults to
+	 *        reports/mavenShare/metrics.json in the build directory
+	 */
+	public void setReportFile(Object reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	@Input
+	public int getSummaryLimit() {
+		return summaryLimit;
+	}
+
+	public void setSummaryLimit(int summaryLimit) {
+		this.summaryLimit = summaryLimit;
+	}
+}
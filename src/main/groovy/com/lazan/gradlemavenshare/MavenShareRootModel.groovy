@@ -3,4 +3,20 @@ package com.lazan.gradlemavenshare
 class MavenShareRootModel {
 	PomSource pomSource
 	boolean allowUnsupportedDependencyProperties
+	boolean parallelResolve
+	int resolveThreads = Runtime.runtime.availableProcessors()
+	Object pomCacheFile
+	boolean streamingPomReader
+	boolean prefetchParents
+	boolean lazyDependencies
+	boolean shareMetrics
+	boolean incrementalResolve
+	boolean parallelShareActions
+	boolean sharedPomCache
+	int sharedPomCacheSize = SharedPomCache.DEFAULT_MAX_SIZE
+	boolean compactPoms
+	boolean useShareLock
+	Object shareLockFile = 'maven-share.lock'
+	boolean indexPoms
+	boolean onDemandResolve
 }
\ No newline at end of file
@@ -2,14 +2,26 @@ package com.lazan.gradlemavenshare;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.model.Dependency;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
 import org.gradle.api.Action;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.execution.TaskExecutionGraph;
+import org.gradle.api.execution.TaskExecutionGraphListener;
 
 public class MavenShareRootPlugin implements Plugin<Project> {
 	private static class SubProjectModel {
@@ -22,56 +34,644 @@ public class MavenShareRootPlugin implements Plugin<Project> {
 		}
 	}
 
+	private final LazyDependencies lazyDependencies = new LazyDependencies();
+	private final DependencyNotationCache notationCache = new DependencyNotationCache();
+	private ShareMetrics metrics = ShareMetrics.DISABLED;
+	private List<String> recomputedModules = Collections.emptyList();
+	private List<SubProjectModel> subModels;
+	private ProjectResolver projectResolver;
+	private ModuleGraph moduleGraph;
+	private TransitiveDependencies transitiveDependencies;
+	private ShareSnapshot appliedSnapshot;
+	private OnDemandPoms onDemandPoms;
+
 	public void apply(Project project) {
 		project.getExtensions().create("mavenShareRoot", MavenShareRootModel.class);
+		project.getTasks().create("mavenShareMetrics", MavenShareMetricsTask.class);
+		project.getTasks().create("mavenShareLock", MavenShareLockTask.class);
 		project.afterEvaluate(new Action<Project>() {
 			@Override
 			public void execute(Project arg0) {
+				MavenShareRootModel rootModel = project.getExtensions().getByType(MavenShareRootModel.class);
+				metrics = rootModel.isShareMetrics() ? new ShareMetrics() : ShareMetrics.DISABLED;
+				notationCache.setMetrics(metrics);
+				if (rootModel.isUseShareLock() && applyShareLock(project)) {
+					return;
+				}
+				if (rootModel.isOnDemandResolve()) {
+					startOnDemand(project);
+					return;
+				}
 				List<SubProjectModel> subModels = parsePoms(project);
 				ProjectResolver resolver = createProjectResolver(subModels);
-				for (SubProjectModel subModel : subModels) {
-					MavenShareModel shareModel = subModel.project.getExtensions().getByType(MavenShareModel.class);
-					for (ShareAction shareAction : shareModel.getShareActions()) {
-						shareAction.execute(subModel.pom, subModel.project, resolver);
+				synchronized (MavenShareRootPlugin.this) {
+					MavenShareRootPlugin.this.subModels = subModels;
+					projectResolver = resolver;
+					onDemandPoms = null;
+					moduleGraph = null;
+					transitiveDependencies = null;
+				}
+				if (metrics.isEnabled()) {
+					for (SubProjectModel subModel : subModels) {
+						recordDependencies(subModel);
+					}
+				}
+				if (rootModel.isParallelShareActions()) {
+					executeShareActionsParallel(subModels, resolver, rootModel.getResolveThreads());
+				} else {
+					for (SubProjectModel subModel : subModels) {
+						executeShareActions(subModel, resolver);
 					}
 				}
+				if (rootModel.isCompactPoms()) {
+					compactPoms(subModels);
+				}
 			}
 		});
 	}
+
+	/**
+	 * Resolves the dependencies of the pom so that the time isn't attributed to the first action to use them
+	 */
+	protected void recordDependencies(SubProjectModel subModel) {
+		long start = metrics.start();
+		subModel.pom.getDependencies();
+		metrics.record(subModel.project.getPath(), "dependencies", start);
+	}
+
+	/**
+	 * Defers resolving the pom of each project until the project is configured. With configure on demand only the
+	 * poms of the projects which are configured and the modules they depend on are resolved
+	 */
+	protected void startOnDemand(final Project rootProject) {
+		final OnDemandPoms onDemand = createOnDemandPoms(rootProject);
+		synchronized (this) {
+			onDemandPoms = onDemand;
+			subModels = null;
+			projectResolver = onDemand.getProjectResolver();
+			moduleGraph = null;
+			transitiveDependencies = null;
+		}
+		// with configure on demand projects are still being configured after projectsEvaluated
+		rootProject.getGradle().getTaskGraph().addTaskExecutionGraphListener(new TaskExecutionGraphListener() {
+			@Override
+			public void graphPopulated(TaskExecutionGraph graph) {
+				finishOnDemand(rootProject, onDemand);
+			}
+		});
+		for (Project project : getShareProjects(rootProject)) {
+			// the root project is being evaluated and a project may have been evaluated already by the build script
+			if (project == rootProject || project.getState().getExecuted()) {
+				shareOnDemand(project, onDemand);
+			} else {
+				project.afterEvaluate(new Action<Project>() {
+					@Override
+					public void execute(Project evaluated) {
+						shareOnDemand(evaluated, onDemand);
+					}
+				});
+			}
+		}
+	}
+
+	protected void shareOnDemand(Project project, OnDemandPoms onDemand) {
+		SubProjectModel subModel = new SubProjectModel(project, onDemand.resolve(project));
+		if (metrics.isEnabled()) {
+			recordDependencies(subModel);
+		}
+		executeShareActions(subModel, onDemand.getProjectResolver());
+		MavenShareRootModel rootModel = project.getRootProject().getExtensions().getByType(MavenShareRootModel.class);
+		if (rootModel.isCompactPoms()) {
+			compactPoms(Collections.singletonList(subModel));
+		}
+	}
+
+	/**
+	 * Records the poms resolved while the projects were configured and saves the persistent cache once the task graph
+	 * is ready
+	 */
+	protected void finishOnDemand(Project rootProject, OnDemandPoms onDemand) {
+		MavenShareRootModel rootModel = rootProject.getExtensions().getByType(MavenShareRootModel.class);
+		Map<Project, ResolvedPom> poms = onDemand.getResolvedPoms();
+		List<String> resolved = new ArrayList<>();
+		for (Project project : poms.keySet()) {
+			resolved.add(project.getPath());
+		}
+		int total = getShareProjects(rootProject).size();
+		metrics.add("onDemand.resolved", resolved.size());
+		metrics.add("onDemand.skipped", total - resolved.size());
+		metrics.add("pomCache.hits", onDemand.getCache().getHitCount());
+		metrics.add("pomCache.misses", onDemand.getCache().getMissCount());
+		rootProject.getLogger().info("Resolved the poms of {} of {} modules {}", resolved.size(), total, resolved);
+		recomputedModules = Collections.unmodifiableList(resolved);
+		if (rootModel.getPomCacheFile() != null && onDemand.getPersistentCache() != null) {
+			for (ResolvedPom pom : poms.values()) {
+				onDemand.getPersistentCache().retainResolvedPom(pom);
+			}
+			onDemand.getPersistentCache().save(rootProject.file(rootModel.getPomCacheFile()));
+		}
+	}
+
+	protected OnDemandPoms createOnDemandPoms(Project rootProject) {
+		MavenShareRootModel rootModel = rootProject.getExtensions().getByType(MavenShareRootModel.class);
+		PersistentPomCache persistentCache = rootModel.getPomCacheFile() == null ? null : PersistentPomCache.load(rootProject.file(rootModel.getPomCacheFile()));
+		PomResolveCache cache = new PomResolveCache();
+		if (rootModel.isSharedPomCache()) {
+			SharedPomCache sharedCache = SharedPomCache.getInstance();
+			sharedCache.setMaxSize(rootModel.getSharedPomCacheSize());
+			cache.setSharedCache(sharedCache);
+		}
+		PomIndex pomIndex = rootModel.isIndexPoms() ? scanPoms(rootProject) : null;
+		cache.setPomIndex(pomIndex);
+		PomSource pomSource = rootModel.getPomSource();
+		if (pomSource instanceof HttpRepositoryPomSource) {
+			((HttpRepositoryPomSource) pomSource).setMetrics(metrics);
+		}
+		Map<Project, File> pomFiles = new LinkedHashMap<>();
+		for (Project project : getShareProjects(rootProject)) {
+			MavenShareModel msm = project.getExtensions().getByType(MavenShareModel.class);
+			pomFiles.put(project, project.file(msm.getPomFile()));
+		}
+		PomResolver pomResolver = createPomResolver(rootModel, persistentCache, pomIndex);
+		pomResolver.setModulePoms(pomFiles.values());
+		bindBomResolver(rootProject, cache, pomResolver, pomSource);
+		return new OnDemandPoms(pomResolver, cache, pomSource, persistentCache, metrics, pomFiles);
+	}
+
+	/**
+	 * Binds the poms in the cache to a BOM resolver for this build's pom source. The poms may be kept by the daemon
+	 * for the next build so the resolver is released when the build finishes
+	 */
+	protected void bindBomResolver(Project rootProject, final PomResolveCache cache, PomResolver pomResolver, PomSource pomSource) {
+		cache.setBomResolver(pomResolver.createBomResolver(cache, pomSource));
+		rootProject.getGradle().addBuildListener(new BuildAdapter() {
+			@Override
+			public void buildFinished(BuildResult result) {
+				cache.setBomResolver(null);
+			}
+		});
+	}
+
+	protected PomResolver createPomResolver(MavenShareRootModel rootModel, PersistentPomCache persistentCache, PomIndex pomIndex) {
+		PomResolver pomResolver = new PomResolver();
+		pomResolver.setPersistentCache(persistentCache);
+		pomResolver.setStreaming(rootModel.isStreamingPomReader());
+		pomResolver.setCompact(rootModel.isCompactPoms());
+		pomResolver.setMetrics(metrics);
+		pomResolver.setPomIndex(pomIndex);
+		return pomResolver;
+	}
+
+	protected PomIndex scanPoms(Project rootProject) {
+		long start = metrics.start();
+		PomIndex pomIndex = PomIndex.scan(rootProject.getRootDir());
+		metrics.record("pomIndex", start);
+		metrics.add("pomIndex.poms", pomIndex.size());
+		return pomIndex;
+	}
+
+	/**
+	 * Releases the full models of the module poms and their parents once the share actions have been applied
+	 */
+	protected void compactPoms(List<SubProjectModel> subModels) {
+		long start = metrics.start();
+		Set<ResolvedPom> compacted = new HashSet<>();
+		for (SubProjectModel subModel : subModels) {
+			for (ResolvedPom current = subModel.pom; current != null && compacted.add(current); current = current.getParent()) {
+				current.compact();
+			}
+		}
+		metrics.record("compact", start);
+		metrics.add("compact.poms", compacted.size());
+	}
+
+	/**
+	 * Adds the dependencies from the share lock if none of its inputs have changed
+	 *
+	 * @return true if the share lock was applied, false if the poms need to be resolved
+	 */
+	protected boolean applyShareLock(Project rootProject) {
+		MavenShareRootModel rootModel = rootProject.getExtensions().getByType(MavenShareRootModel.class);
+		File lockFile = rootProject.file(rootModel.getShareLockFile());
+		long start = metrics.start();
+		ShareSnapshot snapshot = ShareSnapshot.read(lockFile);
+		List<Project> projects = getShareProjects(rootProject);
+		String staleReason = snapshot == null ? "it does not exist or is unreadable" : snapshot.getStaleReason(rootProject, projects);
+		if (staleReason != null) {
+			rootProject.getLogger().info("Resolving poms, the share lock {} is not used since {}", lockFile, staleReason);
+			metrics.increment("shareLock.misses");
+			return false;
+		}
+		for (Project project : projects) {
+			long projectStart = metrics.start();
+			metrics.add("dependencies.added", snapshot.apply(project));
+			metrics.record(project.getPath(), "shareLock", projectStart);
+		}
+		metrics.record("shareLock", start);
+		metrics.increment("shareLock.hits");
+		synchronized (this) {
+			appliedSnapshot = snapshot;
+		}
+		return true;
+	}
+
+	protected List<Project> getShareProjects(Project rootProject) {
+		List<Project> projects = new ArrayList<>();
+		for (Project subproject : rootProject.getAllprojects()) {
+			if (subproject.getPlugins().hasPlugin(MavenSharePlugin.class)) {
+				projects.add(subproject);
+			}
+		}
+		return projects;
+	}
+
+	/**
+	 * @return A snapshot of the dependencies added by the {@link DependencyShareAction} of each project
+	 * @throws RuntimeException if any project has a share action other than a single {@link DependencyShareAction}
+	 */
+	public synchronized ShareSnapshot createShareSnapshot(Project rootProject) {
+		if (appliedSnapshot != null) {
+			return appliedSnapshot;
+		}
+		List<SubProjectModel> subModels = getSubModels();
+		if (subModels == null) {
+			throw new RuntimeException("The share lock can't be created until the poms are resolved");
+		}
+		List<Project> projects = new ArrayList<>();
+		Map<Project, List<SharedDependency>> sharedDependencies = new LinkedHashMap<>();
+		List<ResolvedPom> poms = new ArrayList<>();
+		for (SubProjectModel subModel : subModels) {
+			MavenShareModel shareModel = subModel.project.getExtensions().getByType(MavenShareModel.class);
+			List<ShareAction> shareActions = shareModel.getShareActions();
+			if (shareActions.size() != 1 || shareActions.get(0).getClass() != DependencyShareAction.class) {
+				throw new RuntimeException(String.format("The share lock only supports a single %s, %s has %s",
+						DependencyShareAction.class.getSimpleName(), subModel.project.getPath(), shareActions));
+			}
+			DependencyShareAction shareAction = (DependencyShareAction) shareActions.get(0);
+			projects.add(subModel.project);
+			sharedDependencies.put(subModel.project, shareAction.shareDependencies(subModel.pom.getDependencies(), subModel.project, projectResolver));
+			poms.add(subModel.pom);
+		}
+		return ShareSnapshot.create(rootProject, projects, sharedDependencies, ShareSnapshot.getPomFiles(poms));
+	}
+
+	/**
+	 * @return The module poms, with {@link MavenShareRootModel#isOnDemandResolve()} the poms of every module are
+	 *         resolved on the first call. Null if the poms haven't been resolved
+	 */
+	protected synchronized List<SubProjectModel> getSubModels() {
+		if (subModels == null && onDemandPoms != null) {
+			List<SubProjectModel> resolved = new ArrayList<>();
+			for (Map.Entry<Project, ResolvedPom> entry : onDemandPoms.resolveAll().entrySet()) {
+				resolved.add(new SubProjectModel(entry.getKey(), entry.getValue()));
+			}
+			subModels = resolved;
+		}
+		return subModels;
+	}
+
+	protected void executeShareActions(SubProjectModel subModel, ProjectResolver resolver) {
+		MavenShareModel shareModel = subModel.project.getExtensions().getByType(MavenShareModel.class);
+		String module = subModel.project.getPath();
+		for (ShareAction shareAction : shareModel.getShareActions()) {
+			long start = metrics.start();
+			shareAction.execute(subModel.pom, subModel.project, resolver);
+			metrics.record(module, getActionName(shareAction), start);
+		}
+	}
+
+	/**
+	 * Executes the share actions wave by wave in the order of the {@link ModuleGraph}. Within a wave the modules whose
+	 * actions are all {@link ParallelShareAction}s are prepared on a thread pool and then applied one at a time on this
+	 * thread since the Gradle model isn't thread safe, the remaining modules then run one at a time
+	 */
+	protected void executeShareActionsParallel(List<SubProjectModel> subModels, final ProjectResolver resolver, int threads) {
+		Map<Project, SubProjectModel> subModelsByProject = new LinkedHashMap<>();
+		for (SubProjectModel subModel : subModels) {
+			subModelsByProject.put(subModel.project, subModel);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			for (List<Project> wave : getModuleGraph().getWaves()) {
+				Map<SubProjectModel, Future<List<Runnable>>> prepared = new LinkedHashMap<>();
+				List<SubProjectModel> serial = new ArrayList<>();
+				for (Project project : wave) {
+					final SubProjectModel subModel = subModelsByProject.get(project);
+					if (isParallel(subModel) && wave.size() > 1) {
+						prepared.put(subModel, executor.submit(new Callable<List<Runnable>>() {
+							@Override
+							public List<Runnable> call() {
+								return prepareShareActions(subModel, resolver);
+							}
+						}));
+					} else {
+						serial.add(subModel);
+					}
+				}
+				for (Map.Entry<SubProjectModel, Future<List<Runnable>>> entry : prepared.entrySet()) {
+					long start = metrics.start();
+					for (Runnable apply : entry.getValue().get()) {
+						apply.run();
+					}
+					metrics.record(entry.getKey().project.getPath(), "apply", start);
+				}
+				for (SubProjectModel subModel : serial) {
+					executeShareActions(subModel, resolver);
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs on a thread pool, see {@link ParallelShareAction#prepare(ResolvedPom, Project, ProjectResolver)}
+	 *
+	 * @return The prepared actions in the order of the module's share actions
+	 */
+	protected List<Runnable> prepareShareActions(SubProjectModel subModel, ProjectResolver resolver) {
+		MavenShareModel shareModel = subModel.project.getExtensions().getByType(MavenShareModel.class);
+		String module = subModel.project.getPath();
+		List<Runnable> prepared = new ArrayList<>();
+		for (ShareAction shareAction : shareModel.getShareActions()) {
+			long start = metrics.start();
+			prepared.add(((ParallelShareAction) shareAction).prepare(subModel.pom, subModel.project, resolver));
+			metrics.record(module, getActionName(shareAction), start);
+		}
+		return prepared;
+	}
+
+	protected boolean isParallel(SubProjectModel subModel) {
+		MavenShareModel shareModel = subModel.project.getExtensions().getByType(MavenShareModel.class);
+		for (ShareAction shareAction : shareModel.getShareActions()) {
+			if (!(shareAction instanceof ParallelShareAction) || isExecuteOverridden(shareAction)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if a subclass overrides execute without overriding prepare, eg a subclass of
+	 *         {@link DependencyShareAction} written before it was a {@link ParallelShareAction}. Preparing the action
+	 *         would bypass the overridden execute so it is executed instead
+	 */
+	protected boolean isExecuteOverridden(ShareAction shareAction) {
+		try {
+			Class<?> executeClass = shareAction.getClass().getMethod("execute", ResolvedPom.class, Project.class, ProjectResolver.class).getDeclaringClass();
+			Class<?> prepareClass = shareAction.getClass().getMethod("prepare", ResolvedPom.class, Project.class, ProjectResolver.class).getDeclaringClass();
+			return !executeClass.isAssignableFrom(prepareClass);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
 	
+	protected String getActionName(ShareAction shareAction) {
+		String name = shareAction.getClass().getSimpleName();
+		return "action:" + (name.isEmpty() ? shareAction.getClass().getName() : name);
+	}
+
 	protected List<SubProjectModel> parsePoms(Project rootProject) {
-		PomResolver pomResolver = new PomResolver();
-		PomResolveCache cache = new PomResolveCache();
-		List<SubProjectModel> subModels = new ArrayList<>();
 		MavenShareRootModel rootModel = rootProject.getExtensions().getByType(MavenShareRootModel.class);
+		File pomCacheFile = rootModel.getPomCacheFile() == null ? null : rootProject.file(rootModel.getPomCacheFile());
+		IncrementalPomCache incremental = rootModel.isIncrementalResolve() ? IncrementalPomCache.forBuild(rootProject.getRootDir(), pomCacheFile) : null;
+		PersistentPomCache persistentCache;
+		PomResolveCache cache;
+		if (incremental != null) {
+			persistentCache = incremental.getPersistentCache();
+			cache = incremental.getCache();
+			incremental.refresh();
+		} else {
+			persistentCache = pomCacheFile == null ? null : PersistentPomCache.load(pomCacheFile);
+			cache = new PomResolveCache();
+		}
+		SharedPomCache sharedCache = null;
+		if (rootModel.isSharedPomCache()) {
+			sharedCache = SharedPomCache.getInstance();
+			sharedCache.setMaxSize(rootModel.getSharedPomCacheSize());
+		}
+		cache.setSharedCache(sharedCache);
+		PomIndex pomIndex = rootModel.isIndexPoms() ? scanPoms(rootProject) : null;
+		cache.setPomIndex(pomIndex);
+		PomResolver pomResolver = createPomResolver(rootModel, persistentCache, pomIndex);
+		List<Project> projects = new ArrayList<>();
+		Map<String, File> pomFiles = new LinkedHashMap<>();
+		List<String> recomputed = new ArrayList<>();
+		List<File> unresolvedFiles = new ArrayList<>();
 		for (Project subproject : rootProject.getAllprojects()) {
 			if (subproject.getPlugins().hasPlugin(MavenSharePlugin.class)) {
 				MavenShareModel msm = subproject.getExtensions().getByType(MavenShareModel.class);
 				File pomFile = subproject.file(msm.getPomFile());
-				ResolvedPom pom = pomResolver.resolvePom(pomFile, cache, rootModel.getPomSource());
-				subModels.add(new SubProjectModel(subproject, pom));
+				projects.add(subproject);
+				pomFiles.put(subproject.getPath(), pomFile);
+				if (incremental == null || !incremental.isResolved(pomFile)) {
+					recomputed.add(subproject.getPath());
+					unresolvedFiles.add(pomFile);
+				}
 			}
 		}
+		pomResolver.setModulePoms(pomFiles.values());
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		long sharedHits = sharedCache == null ? 0 : sharedCache.getHitCount();
+		long sharedMisses = sharedCache == null ? 0 : sharedCache.getMissCount();
+		long sharedEvictions = sharedCache == null ? 0 : sharedCache.getEvictionCount();
+		PomSource pomSource = rootModel.getPomSource();
+		if (pomSource instanceof HttpRepositoryPomSource) {
+			((HttpRepositoryPomSource) pomSource).setMetrics(metrics);
+		}
+		// lazily imported BOMs are fetched from the pom source itself rather than the prefetching source
+		bindBomResolver(rootProject, cache, pomResolver, pomSource);
+		ExecutorService prefetchExecutor = null;
+		PomSource resolveSource = pomSource;
+		List<ResolvedPom> poms;
+		try {
+			if (rootModel.isPrefetchParents() && pomSource != null) {
+				AsyncPomSource asyncSource;
+				if (pomSource instanceof AsyncPomSource) {
+					asyncSource = (AsyncPomSource) pomSource;
+				} else {
+					prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, rootModel.getResolveThreads()));
+					asyncSource = new ExecutorPomSource(pomSource, prefetchExecutor);
+				}
+				PrefetchingPomSource prefetchingSource = new PrefetchingPomSource(asyncSource);
+				prefetchingSource.prefetch(pomResolver.findExternalParents(unresolvedFiles));
+				resolveSource = prefetchingSource;
+			}
+			poms = rootModel.isParallelResolve()
+					? resolvePomsParallel(pomResolver, cache, resolveSource, rootModel.getResolveThreads(), pomFiles)
+					: resolvePoms(pomResolver, cache, resolveSource, pomFiles);
+		} finally {
+			if (prefetchExecutor != null) {
+				prefetchExecutor.shutdownNow();
+			}
+		}
+		metrics.add("pomCache.hits", cache.getHitCount() - hits);
+		metrics.add("pomCache.misses", cache.getMissCount() - misses);
+		if (sharedCache != null) {
+			metrics.add("sharedPomCache.hits", sharedCache.getHitCount() - sharedHits);
+			metrics.add("sharedPomCache.misses", sharedCache.getMissCount() - sharedMisses);
+			metrics.add("sharedPomCache.evictions", sharedCache.getEvictionCount() - sharedEvictions);
+			rootProject.getLogger().info("Shared pom cache holds {} poms, {} hits and {} misses since the daemon started",
+					sharedCache.size(), sharedCache.getHitCount(), sharedCache.getMissCount());
+		}
+		if (incremental != null) {
+			incremental.update(poms);
+			metrics.add("incremental.recomputed", recomputed.size());
+			metrics.add("incremental.reused", projects.size() - recomputed.size());
+			rootProject.getLogger().info("Resolved the poms of {} of {} modules {}", recomputed.size(), projects.size(), recomputed);
+		}
+		recomputedModules = Collections.unmodifiableList(recomputed);
+		if (pomSource instanceof HttpRepositoryPomSource) {
+			rootProject.getLogger().info("Fetched poms from {}", pomSource);
+		}
+		if (persistentCache != null) {
+			for (ResolvedPom pom : poms) {
+				persistentCache.retainResolvedPom(pom);
+			}
+			persistentCache.save(pomCacheFile);
+		}
+		List<SubProjectModel> subModels = new ArrayList<>();
+		for (int i = 0; i < projects.size(); ++i) {
+			subModels.add(new SubProjectModel(projects.get(i), poms.get(i)));
+		}
 		return subModels;
 	}
+
+	/**
+	 * @param pomFiles Pom files by project path
+	 * @return The poms in the same order as the pom files
+	 */
+	protected List<ResolvedPom> resolvePoms(PomResolver pomResolver, PomResolveCache cache, PomSource pomSource, Map<String, File> pomFiles) {
+		List<ResolvedPom> poms = new ArrayList<>(pomFiles.size());
+		for (Map.Entry<String, File> entry : pomFiles.entrySet()) {
+			poms.add(resolvePom(pomResolver, cache, pomSource, entry.getKey(), entry.getValue()));
+		}
+		return poms;
+	}
+
+	protected ResolvedPom resolvePom(PomResolver pomResolver, PomResolveCache cache, PomSource pomSource, String module, File pomFile) {
+		long start = metrics.start();
+		ResolvedPom pom = pomResolver.resolvePom(pomFile, cache, pomSource);
+		metrics.record(module, "resolve", start);
+		return pom;
+	}
+
+	/**
+	 * Resolves the poms on a thread pool. Parents shared by many poms are resolved once by the {@link PomResolveCache},
+	 * the returned poms are in the same order as the pom files
+	 */
+	protected List<ResolvedPom> resolvePomsParallel(final PomResolver pomResolver, final PomResolveCache cache, final PomSource pomSource, int resolveThreads, Map<String, File> pomFiles) {
+		int threads = Math.max(1, Math.min(resolveThreads, pomFiles.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ResolvedPom>> futures = new ArrayList<>(pomFiles.size());
+			for (final Map.Entry<String, File> entry : pomFiles.entrySet()) {
+				futures.add(executor.submit(new Callable<ResolvedPom>() {
+					@Override
+					public ResolvedPom call() {
+						return resolvePom(pomResolver, cache, pomSource, entry.getKey(), entry.getValue());
+					}
+				}));
+			}
+			List<ResolvedPom> poms = new ArrayList<>(pomFiles.size());
+			for (Future<ResolvedPom> future : futures) {
+				poms.add(future.get());
+			}
+			return poms;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 	
+	/**
+	 * @return The dependencies waiting to be added to the projects when {@link MavenShareRootModel#isLazyDependencies()}
+	 */
+	LazyDependencies getLazyDependencies() {
+		return lazyDependencies;
+	}
+
+	/**
+	 * @return Paths of the projects whose pom was resolved by this build, with
+	 *         {@link MavenShareRootModel#isIncrementalResolve()} this excludes the projects whose pom and parent poms
+	 *         are unchanged since the previous build
+	 */
+	public List<String> getRecomputedModules() {
+		return recomputedModules;
+	}
+
+	/**
+	 * @return The graph of the modules in the build, created on first call once the poms are resolved
+	 */
+	public synchronized ModuleGraph getModuleGraph() {
+		if (moduleGraph == null) {
+			List<SubProjectModel> subModels = getSubModels();
+			if (subModels == null) {
+				throw new RuntimeException("The module graph is not available until the poms are resolved");
+			}
+			Map<Project, ResolvedPom> poms = new LinkedHashMap<>();
+			for (SubProjectModel subModel : subModels) {
+				poms.put(subModel.project, subModel.pom);
+			}
+			moduleGraph = new ModuleGraph(poms, projectResolver);
+		}
+		return moduleGraph;
+	}
+
+	/**
+	 * @return The transitive dependencies of the modules in the build, each module's closure is computed on first use
+	 */
+	public synchronized TransitiveDependencies getTransitiveDependencies() {
+		if (transitiveDependencies == null) {
+			transitiveDependencies = new TransitiveDependencies(getModuleGraph(), projectResolver);
+		}
+		return transitiveDependencies;
+	}
+
+	/**
+	 * @return The dependency notations shared by the modules in the build
+	 */
+	public DependencyNotationCache getNotationCache() {
+		return notationCache;
+	}
+
+	/**
+	 * @return The metrics recorded when {@link MavenShareRootModel#isShareMetrics()}
+	 */
+	public ShareMetrics getMetrics() {
+		return metrics;
+	}
+
 	protected ProjectResolver createProjectResolver(List<SubProjectModel> subModels) {
-		Map<String, Project> map = new LinkedHashMap<>();
+		final Map<Gav, Project> map = new LinkedHashMap<>();
 		for (SubProjectModel subModel : subModels) {
 			ResolvedPom pom = subModel.pom;
-			String gav = createGav(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+			Gav gav = createGav(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
 			if (map.containsKey(gav)) throw new RuntimeException("Duplicate GAV " + gav);
 			map.put(gav, subModel.project);
 		}
 		return new ProjectResolver() {
 			public boolean isProject(Dependency dependency) {
-				String gav = createGav(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
-				return map.containsKey(gav);
+				return map.containsKey(createGav(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()));
 			}
 			public Project getProject(Dependency dependency) {
-				String gav = createGav(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+				Gav gav = createGav(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
 				Project project = map.get(gav);
-				if (gav == null) {
+				if (project == null) {
 					throw new RuntimeException(gav + " is not a project dependency");
 				}
 				return project;
@@ -79,11 +679,7 @@ public class MavenShareRootPlugin implements Plugin<Project> {
 		};
 	}
 
-	protected String createGav(String group, String artifact, String version) {
-		String gav = String.format("%s:%s:%s", group, artifact, version);
-		if (group == null || artifact == null || version == null) {
-			throw new RuntimeException("Illegal gav " + gav);
-		}
-		return gav;
+	protected Gav createGav(String group, String artifact, String version) {
+		return Gav.of(group, artifact, version);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.model.Dependency;
+import org.gradle.api.Project;
+
+/**
+ * Graph of the modules in the build. A module is upstream of another if it is the nearest parent pom in the reactor
+ * or if it is a project dependency
+ */
+public class ModuleGraph {
+	private final Map<Project, ResolvedPom> poms;
+	private final Map<Project, Set<Project>> upstream = new LinkedHashMap<>();
+	private final Map<Project, Set<Project>> downstream = new LinkedHashMap<>();
+	private final List<List<Project>> waves;
+
+	/**
+	 * @param poms Poms by project in build order
+	 */
+	public ModuleGraph(Map<Project, ResolvedPom> poms, ProjectResolver resolver) {
+		this.poms = Collections.unmodifiableMap(new LinkedHashMap<>(poms));
+		Map<ResolvedPom, Project> projectsByPom = new IdentityHashMap<>();
+		for (Map.Entry<Project, ResolvedPom> entry : poms.entrySet()) {
+			projectsByPom.put(entry.getValue(), entry.getKey());
+			upstream.put(entry.getKey(), new LinkedHashSet<Project>());
+			downstream.put(entry.getKey(), new LinkedHashSet<Project>());
+		}
+		for (Map.Entry<Project, ResolvedPom> entry : poms.entrySet()) {
+			Project project = entry.getKey();
+			for (ResolvedPom parent = entry.getValue().getParent(); parent != null; parent = parent.getParent()) {
+				Project parentProject = projectsByPom.get(parent);
+				if (parentProject != null) {
+					addEdge(parentProject, project);
+					break;
+				}
+			}
+			for (Dependency dep : entry.getValue().getDependencies()) {
+				if (resolver.isProject(dep)) {
+					addEdge(resolver.getProject(dep), project);
+				}
+			}
+		}
+		this.waves = Collections.unmodifiableList(createWaves());
+	}
+
+	protected void addEdge(Project from, Project to) {
+		if (from != to && upstream.containsKey(from)) {
+			upstream.get(to).add(from);
+			downstream.get(from).add(to);
+		}
+	}
+
+	/**
+	 * Groups the modules into waves where each module's upstream modules are in earlier waves. Modules on a cycle
+	 * can't be ordered among themselves, see {@link #addCyclicWaves(List, List)}
+	 */
+	protected List<List<Project>> createWaves() {
+		Map<Project, Integer> remaining = new LinkedHashMap<>();
+		List<Project> ready = new ArrayList<>();
+		for (Project project : poms.keySet()) {
+			int count = upstream.get(project).size();
+			remaining.put(project, count);
+			if (count == 0) {
+				ready.add(project);
+			}
+		}
+		List<List<Project>> result = new ArrayList<>();
+		while (!ready.isEmpty()) {
+			result.add(Collections.unmodifiableList(ready));
+			List<Project> next = new ArrayList<>();
+			for (Project project : ready) {
+				remaining.remove(project);
+				for (Project child : downstream.get(project)) {
+					Integer count = remaining.get(child) - 1;
+					remaining.put(child, count);
+					if (count == 0) {
+						next.add(child);
+					}
+				}
+			}
+			ready = next;
+		}
+		if (!remaining.isEmpty()) {
+			addCyclicWaves(new ArrayList<>(remaining.keySet()), result);
+		}
+		return result;
+	}
+
+	/**
+	 * Orders the modules which are on a cycle or downstream of one. Each cycle is collapsed into a single node so the
+	 * modules downstream of a cycle are still in topological order, the modules on a cycle are added one per wave
+	 *
+	 * @param projects The modules in build order
+	 */
+	protected void addCyclicWaves(List<Project> projects, List<List<Project>> result) {
+		List<List<Project>> components = findComponents(projects);
+		Map<Project, Integer> componentIndex = new HashMap<>();
+		for (int i = 0; i < components.size(); ++i) {
+			for (Project project : components.get(i)) {
+				componentIndex.put(project, i);
+			}
+		}
+		List<Set<Integer>> componentDownstream = new ArrayList<>();
+		int[] remaining = new int[components.size()];
+		for (int i = 0; i < components.size(); ++i) {
+			Set<Integer> children = new TreeSet<>();
+			for (Project project : components.get(i)) {
+				for (Project child : downstream.get(project)) {
+					Integer childIndex = componentIndex.get(child);
+					if (childIndex != null && childIndex != i && children.add(childIndex)) {
+						++remaining[childIndex];
+					}
+				}
+			}
+			componentDownstream.add(children);
+		}
+		Set<Integer> ready = new TreeSet<>();
+		for (int i = 0; i < components.size(); ++i) {
+			if (remaining[i] == 0) {
+				ready.add(i);
+			}
+		}
+		while (!ready.isEmpty()) {
+			List<Project> acyclic = new ArrayList<>();
+			List<List<Project>> cycles = new ArrayList<>();
+			Set<Integer> next = new TreeSet<>();
+			for (int i : ready) {
+				List<Project> component = components.get(i);
+				if (component.size() == 1) {
+					acyclic.add(component.get(0));
+				} else {
+					cycles.add(component);
+				}
+				for (int child : componentDownstream.get(i)) {
+					if (--remaining[child] == 0) {
+						next.add(child);
+					}
+				}
+			}
+			if (!acyclic.isEmpty()) {
+				result.add(Collections.unmodifiableList(acyclic));
+			}
+			for (List<Project> cycle : cycles) {
+				for (Project project : cycle) {
+					result.add(Collections.singletonList(project));
+				}
+			}
+			ready = next;
+		}
+	}
+
+	/**
+	 * Finds the strongly connected components of the modules with Tarjan's algorithm
+	 *
+	 * @return The components ordered by their first module, the modules in each component are in build order
+	 */
+	protected List<List<Project>> findComponents(final List<Project> projects) {
+		final Map<Project, Integer> order = new HashMap<>();
+		for (Project project : projects) {
+			order.put(project, order.size());
+		}
+		final Map<Project, Integer> indexes = new HashMap<>();
+		final Map<Project, Integer> lowLinks = new HashMap<>();
+		final Deque<Project> stack = new ArrayDeque<>();
+		final Set<Project> onStack = new HashSet<>();
+		final List<List<Project>> components = new ArrayList<>();
+		Comparator<Project> buildOrder = new Comparator<Project>() {
+			@Override
+			public int compare(Project p1, Project p2) {
+				return Integer.compare(order.get(p1), order.get(p2));
+			}
+		};
+		for (Project project : projects) {
+			if (!indexes.containsKey(project)) {
+				connect(project, order, indexes, lowLinks, stack, onStack, components);
+			}
+		}
+		for (List<Project> component : components) {
+			Collections.sort(component, buildOrder);
+		}
+		Collections.sort(components, new Comparator<List<Project>>() {
+			@Override
+			public int compare(List<Project> c1, List<Project> c2) {
+				return Integer.compare(order.get(c1.get(0)), order.get(c2.get(0)));
+			}
+		});
+		return components;
+	}
+
+	private void connect(Project project, Map<Project, Integer> order, Map<Project, Integer> indexes, Map<Project, Integer> lowLinks,
+			Deque<Project> stack, Set<Project> onStack, List<List<Project>> components) {
+		int index = indexes.size();
+		indexes.put(project, index);
+		lowLinks.put(project, index);
+		stack.push(project);
+		onStack.add(project);
+		for (Project child : downstream.get(project)) {
+			if (!order.containsKey(child)) {
+				continue;
+			}
+			if (!indexes.containsKey(child)) {
+				connect(child, order, indexes, lowLinks, stack, onStack, components);
+				lowLinks.put(project, Math.min(lowLinks.get(project), lowLinks.get(child)));
+			} else if (onStack.contains(child)) {
+				lowLinks.put(project, Math.min(lowLinks.get(project), indexes.get(child)));
+			}
+		}
+		if (lowLinks.get(project) == index) {
+			List<Project> component = new ArrayList<>();
+			Project member;
+			do {
+				member = stack.pop();
+				onStack.remove(member);
+				component.add(member);
+			} while (member != project);
+			components.add(component);
+		}
+	}
+
+	/**
+	 * @return The projects in build order
+	 */
+	public Set<Project> getProjects() {
+		return poms.keySet();
+	}
+
+	public ResolvedPom getPom(Project project) {
+		return poms.get(project);
+	}
+
+	/**
+	 * @return The parent and project dependencies of the project which are modules in the build
+	 */
+	public Set<Project> getUpstream(Project project) {
+		return Collections.unmodifiableSet(getNode(upstream, project));
+	}
+
+	/**
+	 * @return The modules which have the project as a parent or project dependency
+	 */
+	public Set<Project> getDownstream(Project project) {
+		return Collections.unmodifiableSet(getNode(downstream, project));
+	}
+
+	/**
+	 * @return The modules in topological waves, the modules in a wave are independent of each other
+	 */
+	public List<List<Project>> getWaves() {
+		return waves;
+	}
+
+	private Set<Project> getNode(Map<Project, Set<Project>> edges, Project project) {
+		Set<Project> node = edges.get(project);
+		if (node == null) {
+			throw new RuntimeException(project + " is not a module");
+		}
+		return node;
+	}
+}
@@ -0,0 +1,182 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.gradle.api.Project;
+
+/**
+ * Resolves the poms of the modules in a build when they are first needed rather than all up front. Resolving a
+ * module's pom also resolves the poms of the modules it depends on, recursively. Project dependencies are recognised
+ * by the GAVs declared in the module pom headers (see {@link PomResolver#readDeclaredGav(File)}), a module's pom is
+ * only fully resolved up front if its header GAV contains a property. Thread safe so that projects can be configured
+ * in parallel
+ */
+class OnDemandPoms {
+	private final PomResolver pomResolver;
+	private final PomResolveCache cache;
+	private final PomSource pomSource;
+	private final PersistentPomCache persistentCache;
+	private final ShareMetrics metrics;
+	private final Map<Project, File> pomFiles;
+	private final Map<Project, ResolvedPom> resolved = new LinkedHashMap<>();
+	private final Set<Project> expanded = Collections.synchronizedSet(new HashSet<Project>());
+	private Map<Gav, Project> projectsByGav;
+
+	/**
+	 * @param pomFiles Pom file of each project in the build which applies the {@link MavenSharePlugin}
+	 * @param persistentCache The pom resolver's persistent cache, saved once the projects are configured. May be null
+	 */
+	public OnDemandPoms(PomResolver pomResolver, PomResolveCache cache, PomSource pomSource, PersistentPomCache persistentCache, ShareMetrics metrics, Map<Project, File> pomFiles) {
+		this.pomResolver = pomResolver;
+		this.cache = cache;
+		this.pomSource = pomSource;
+		this.persistentCache = persistentCache;
+		this.metrics = metrics;
+		this.pomFiles = new LinkedHashMap<>(pomFiles);
+	}
+
+	public boolean isShareProject(Project project) {
+		return pomFiles.containsKey(project);
+	}
+
+	public PomResolveCache getCache() {
+		return cache;
+	}
+
+	public PersistentPomCache getPersistentCache() {
+		return persistentCache;
+	}
+
+	/**
+	 * Resolves the project's pom and the poms of the modules it depends on
+	 */
+	public ResolvedPom resolve(Project project) {
+		ResolvedPom pom = resolvePom(project);
+		if (expanded.contains(project)) {
+			return pom;
+		}
+		Deque<Project> queue = new ArrayDeque<>();
+		Set<Project> visited = new HashSet<>();
+		queue.add(project);
+		visited.add(project);
+		ProjectResolver projectResolver = getProjectResolver();
+		while (!queue.isEmpty()) {
+			Project current = queue.poll();
+			for (Dependency dep : resolvePom(current).getDependencies()) {
+				if (projectResolver.isProject(dep)) {
+					Project upstream = projectResolver.getProject(dep);
+					if (!expanded.contains(upstream) && visited.add(upstream)) {
+						queue.add(upstream);
+					}
+				}
+			}
+		}
+		expanded.addAll(visited);
+		return pom;
+	}
+
+	/**
+	 * Resolves the poms of every module in the build
+	 *
+	 * @return The poms in the order of the pom files
+	 */
+	public Map<Project, ResolvedPom> resolveAll() {
+		Map<Project, ResolvedPom> poms = new LinkedHashMap<>();
+		for (Project project : pomFiles.keySet()) {
+			poms.put(project, resolvePom(project));
+		}
+		return poms;
+	}
+
+	/**
+	 * @return The poms resolved so far, in the order they were resolved
+	 */
+	public Map<Project, ResolvedPom> getResolvedPoms() {
+		synchronized (resolved) {
+			return new LinkedHashMap<>(resolved);
+		}
+	}
+
+	protected ResolvedPom resolvePom(Project project) {
+		synchronized (resolved) {
+			ResolvedPom pom = resolved.get(project);
+			if (pom != null) {
+				return pom;
+			}
+		}
+		File pomFile = pomFiles.get(project);
+		if (pomFile == null) {
+			throw new RuntimeException(project + " does not apply " + MavenSharePlugin.class.getSimpleName());
+		}
+		long start = metrics.start();
+		ResolvedPom pom = pomResolver.resolvePom(pomFile, cache, pomSource);
+		metrics.record(project.getPath(), "resolve", start);
+		synchronized (resolved) {
+			ResolvedPom existing = resolved.get(project);
+			if (existing != null) {
+				return existing;
+			}
+			resolved.put(project, pom);
+			return pom;
+		}
+	}
+
+	/**
+	 * @return A resolver which reads the GAVs of the module poms on first use
+	 */
+	public ProjectResolver getProjectResolver() {
+		return new ProjectResolver() {
+			@Override
+			public boolean isProject(Dependency dependency) {
+				return getProjectsByGav().containsKey(Gav.of(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion()));
+			}
+
+			@Override
+			public Project getProject(Dependency dependency) {
+				Gav gav = Gav.of(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+				Project project = getProjectsByGav().get(gav);
+				if (project == null) {
+					throw new RuntimeException(gav + " is not a project dependency");
+				}
+				return project;
+			}
+		};
+	}
+
+	protected synchronized Map<Gav, Project> getProjectsByGav() {
+		if (projectsByGav == null) {
+			long start = metrics.start();
+			Map<Gav, Project> map = new LinkedHashMap<>();
+			List<Project> unresolvable = new ArrayList<>();
+			for (Map.Entry<Project, File> entry : pomFiles.entrySet()) {
+				Gav gav = pomResolver.readDeclaredGav(entry.getValue());
+				if (gav == null) {
+					unresolvable.add(entry.getKey());
+				} else if (map.put(gav, entry.getKey()) != null) {
+					throw new RuntimeException("Duplicate GAV " + gav);
+				}
+			}
+			for (Project project : unresolvable) {
+				ResolvedPom pom = resolvePom(project);
+				Gav gav = Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+				if (map.put(gav, project) != null) {
+					throw new RuntimeException("Duplicate GAV " + gav);
+				}
+			}
+			metrics.record("onDemand.headers", start);
+			projectsByGav = map;
+		}
+		return projectsByGav;
+	}
+
+}
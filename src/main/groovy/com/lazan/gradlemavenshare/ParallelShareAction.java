@@ -0,0 +1,20 @@
+package com.lazan.gradlemavenshare;
+
+import org.gradle.api.Project;
+
+/**
+ * A {@link ShareAction} which can be prepared for independent modules concurrently when
+ * {@link MavenShareRootModel#isParallelShareActions()} is set. The Gradle model is not thread safe so only
+ * {@link #prepare(ResolvedPom, Project, ProjectResolver)} runs concurrently, the work it returns is applied to the
+ * projects on the configuring thread. A module with any action which is not a ParallelShareAction has its actions
+ * executed once the other modules in its wave are complete
+ */
+public interface ParallelShareAction extends ShareAction {
+	/**
+	 * Computes what the action adds to the project, eg dependency notations. Runs on a thread pool so it must not
+	 * modify the project or any other part of the Gradle model
+	 *
+	 * @return Applies the prepared action to the project on the configuring thread
+	 */
+	Runnable prepare(ResolvedPom pom, Project project, ProjectResolver resolver);
+}
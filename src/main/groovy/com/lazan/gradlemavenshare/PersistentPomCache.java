@@ -0,0 +1,356 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+
+/**
+ * Cache of {@link ResolvedPom}s which is persisted between builds. Entries are keyed by a hash of the pom content and
+ * are only used if the hash of the whole parent chain is unchanged. Each entry holds the parts of the pom used for
+ * resolution (coordinates, parent, properties, dependencies and dependency management) and the resolved properties
+ * (including the project.groupId, project.artifactId and project.version) and dependencies so that neither XML parsing
+ * nor property interpolation is required on a cache hit
+ */
+public class PersistentPomCache {
+	private static final int MAGIC = 0x6D76_6E73;
+	// bumped when the entries or the meaning of the resolved properties and dependencies change
+	private static final int FORMAT_VERSION = 3;
+
+	private final Map<String, Entry> loadedEntries;
+	private final ConcurrentMap<String, Entry> usedEntries = new ConcurrentHashMap<>();
+	// the entries of the poms created by every cache in the JVM so that a pom reused from the SharedPomCache by a later
+	// build is still saved by that build. ResolvedPom has identity equality and the entries don't refer to the poms
+	private static final Map<ResolvedPom, Entry> POM_ENTRIES = new WeakHashMap<>();
+
+	protected static class Entry {
+		String contentHash;
+		String chainHash;
+		Model model;
+		Map<String, String> properties;
+		List<Dependency> dependencies;
+	}
+
+	protected PersistentPomCache(Map<String, Entry> loadedEntries) {
+		this.loadedEntries = loadedEntries;
+	}
+
+	/**
+	 * Loads the cache from the file. An empty cache is returned if the file does not exist or is unreadable
+	 */
+	public static PersistentPomCache load(File cacheFile) {
+		Map<String, Entry> entries = new HashMap<>();
+		if (cacheFile.isFile()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+				if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION) {
+					EntryReader reader = new EntryReader(in, cacheFile.length());
+					int count = reader.readLength();
+					for (int i = 0; i < count; ++i) {
+						Entry entry = reader.readEntry();
+						entries.put(entry.contentHash, entry);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// corrupt or truncated cache, start again
+				entries.clear();
+			}
+		}
+		return new PersistentPomCache(entries);
+	}
+
+	/**
+	 * Writes the entries which were used or added in this build, entries for poms which no longer exist are dropped
+	 */
+	public void save(File cacheFile) {
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+		cacheFile.getParentFile().mkdirs();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			EntryWriter writer = new EntryWriter(out);
+			List<Entry> entries = new ArrayList<>(usedEntries.values());
+			out.writeInt(entries.size());
+			for (Entry entry : entries) {
+				writer.writeEntry(entry);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing " + cacheFile, e);
+		}
+		if (cacheFile.exists() && !cacheFile.delete()) {
+			throw new RuntimeException("Unable to delete " + cacheFile);
+		}
+		if (!tempFile.renameTo(cacheFile)) {
+			throw new RuntimeException("Unable to rename " + tempFile + " to " + cacheFile);
+		}
+	}
+
+	/**
+	 * @return The partial model for the pom content or null if the content is not in the cache
+	 */
+	public Model getModel(String contentHash) {
+		Entry entry = loadedEntries.get(contentHash);
+		return entry == null ? null : entry.model;
+	}
+
+	/**
+	 * @return A pom created from the cache or null if the pom content or any of its parents have changed
+	 */
+	public ResolvedPom getResolvedPom(String contentHash, File pomFile, ResolvedPom parent, Callable<Model> modelLoader, BomResolver bomResolver) {
+		Entry entry = loadedEntries.get(contentHash);
+		if (entry == null) {
+			return null;
+		}
+		String chainHash = createChainHash(contentHash, parent);
+		if (chainHash == null || !chainHash.equals(entry.chainHash)) {
+			return null;
+		}
+		ResolvedPom pom = new ResolvedPom(pomFile, parent, entry.model, modelLoader, entry.properties, entry.dependencies, bomResolver);
+		usedEntries.put(contentHash, entry);
+		synchronized (POM_ENTRIES) {
+			POM_ENTRIES.put(pom, entry);
+		}
+		return pom;
+	}
+
+	/**
+	 * Adds a pom which was resolved from its model
+	 */
+	public void addResolvedPom(String contentHash, ResolvedPom pom) {
+		String chainHash = createChainHash(contentHash, pom.getParent());
+		if (chainHash == null) {
+			return;
+		}
+		Model partial = ResolvedPom.createResolutionModel(pom.getResolutionModel());
+
+		Entry entry = new Entry();
+		entry.contentHash = contentHash;
+		entry.chainHash = chainHash;
+		entry.model = partial;
+		entry.properties = pom.getProperties();
+		// dependencies which use imported BOMs are resolved again since the BOMs are not part of the hash
+		entry.dependencies = pom.hasImports() ? null : pom.getDependencies();
+		usedEntries.put(contentHash, entry);
+		synchronized (POM_ENTRIES) {
+			POM_ENTRIES.put(pom, entry);
+		}
+	}
+
+	/**
+	 * Keeps the entries of a pom and its parents which were resolved by an earlier build, eg poms reused from the
+	 * {@link SharedPomCache}, so that they are written by {@link #save(File)}
+	 */
+	public void retainResolvedPom(ResolvedPom pom) {
+		for (ResolvedPom current = pom; current != null; current = current.getParent()) {
+			Entry entry;
+			synchronized (POM_ENTRIES) {
+				entry = POM_ENTRIES.get(current);
+			}
+			if (entry != null) {
+				usedEntries.putIfAbsent(entry.contentHash, entry);
+			}
+		}
+	}
+
+	/**
+	 * Forgets a pom which has changed since it was resolved so that its entry is not written by {@link #save(File)}
+	 */
+	public void removeResolvedPom(ResolvedPom pom) {
+		Entry entry;
+		synchronized (POM_ENTRIES) {
+			entry = POM_ENTRIES.remove(pom);
+		}
+		if (entry != null) {
+			usedEntries.remove(entry.contentHash, entry);
+		}
+	}
+
+	protected String createChainHash(String contentHash, ResolvedPom parent) {
+		String parentHash = "";
+		if (parent != null) {
+			Entry parentEntry;
+			synchronized (POM_ENTRIES) {
+				parentEntry = POM_ENTRIES.get(parent);
+			}
+			if (parentEntry == null) {
+				return null;
+			}
+			parentHash = parentEntry.chainHash;
+		}
+		return hash((contentHash + ":" + parentHash).getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static String hash(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected static class EntryWriter extends StringTableWriter {
+		public EntryWriter(DataOutputStream out) {
+			super(out);
+		}
+
+		public void writeEntry(Entry entry) throws IOException {
+			writeString(entry.contentHash);
+			writeString(entry.chainHash);
+			writeMap(entry.properties);
+			writeDependencies(entry.dependencies);
+
+			Model model = entry.model;
+			writeString(model.getGroupId());
+			writeString(model.getArtifactId());
+			writeString(model.getVersion());
+			writeString(model.getPackaging());
+			Parent parent = model.getParent();
+			out.writeBoolean(parent != null);
+			if (parent != null) {
+				writeString(parent.getGroupId());
+				writeString(parent.getArtifactId());
+				writeString(parent.getVersion());
+				writeString(parent.getRelativePath());
+			}
+			Map<String, String> rawProperties = new LinkedHashMap<>();
+			if (model.getProperties() != null) {
+				for (Map.Entry<Object, Object> property : model.getProperties().entrySet()) {
+					rawProperties.put((String) property.getKey(), (String) property.getValue());
+				}
+			}
+			writeMap(rawProperties);
+			writeDependencies(model.getDependencies());
+			DependencyManagement management = model.getDependencyManagement();
+			out.writeBoolean(management != null);
+			if (management != null) {
+				writeDependencies(management.getDependencies());
+			}
+		}
+
+		protected void writeDependencies(List<Dependency> dependencies) throws IOException {
+			out.writeInt(dependencies == null ? -1 : dependencies.size());
+			if (dependencies == null) {
+				return;
+			}
+			for (Dependency dep : dependencies) {
+				writeString(dep.getGroupId());
+				writeString(dep.getArtifactId());
+				writeString(dep.getVersion());
+				writeString(dep.getType());
+				writeString(dep.getClassifier());
+				writeString(dep.getScope());
+				writeString(dep.getSystemPath());
+				writeString(dep.getOptional());
+				List<Exclusion> exclusions = dep.getExclusions();
+				out.writeInt(exclusions == null ? 0 : exclusions.size());
+				if (exclusions != null) {
+					for (Exclusion exclusion : exclusions) {
+						writeString(exclusion.getGroupId());
+						writeString(exclusion.getArtifactId());
+					}
+				}
+			}
+		}
+	}
+
+	protected static class EntryReader extends StringTableReader {
+		public EntryReader(DataInputStream in, long size) {
+			super(in, size);
+		}
+
+		public Entry readEntry() throws IOException {
+			Entry entry = new Entry();
+			entry.contentHash = readString();
+			entry.chainHash = readString();
+			entry.properties = readMap();
+			entry.dependencies = readDependencies();
+
+			Model model = new Model();
+			model.setGroupId(readString());
+			model.setArtifactId(readString());
+			model.setVersion(readString());
+			model.setPackaging(readString());
+			if (in.readBoolean()) {
+				Parent parent = new Parent();
+				parent.setGroupId(readString());
+				parent.setArtifactId(readString());
+				parent.setVersion(readString());
+				parent.setRelativePath(readString());
+				model.setParent(parent);
+			}
+			Properties rawProperties = new Properties();
+			rawProperties.putAll(readMap());
+			model.setProperties(rawProperties);
+			List<Dependency> dependencies = readDependencies();
+			if (dependencies != null) {
+				model.setDependencies(dependencies);
+			}
+			if (in.readBoolean()) {
+				DependencyManagement management = new DependencyManagement();
+				List<Dependency> managed = readDependencies();
+				if (managed != null) {
+					management.setDependencies(managed);
+				}
+				model.setDependencyManagement(management);
+			}
+			entry.model = model;
+			return entry;
+		}
+
+		protected List<Dependency> readDependencies() throws IOException {
+			int count = in.readInt();
+			if (count == -1) {
+				return null;
+			}
+			checkLength(count);
+			List<Dependency> dependencies = new ArrayList<>(count);
+			for (int i = 0; i < count; ++i) {
+				Dependency dep = new Dependency();
+				dep.setGroupId(readString());
+				dep.setArtifactId(readString());
+				dep.setVersion(readString());
+				dep.setType(readString());
+				dep.setClassifier(readString());
+				dep.setScope(readString());
+				dep.setSystemPath(readString());
+				dep.setOptional(readString());
+				int exclusionCount = readLength();
+				for (int j = 0; j < exclusionCount; ++j) {
+					Exclusion exclusion = new Exclusion();
+					exclusion.setGroupId(readString());
+					exclusion.setArtifactId(readString());
+					dep.addExclusion(exclusion);
+				}
+				dependencies.add(dep);
+			}
+			return dependencies;
+		}
+	}
+}
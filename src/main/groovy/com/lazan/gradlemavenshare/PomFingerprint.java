@@ -0,0 +1,54 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Size, modification time and content hash of a pom file. The content is only hashed again if the size or
+ * modification time differ so that touching a file doesn't cause it to be resolved again
+ */
+final class PomFingerprint {
+	private final long size;
+	private final long lastModified;
+	private final String contentHash;
+
+	PomFingerprint(long size, long lastModified, String contentHash) {
+		this.size = size;
+		this.lastModified = lastModified;
+		this.contentHash = contentHash;
+	}
+
+	static PomFingerprint of(File pomFile) {
+		long size = pomFile.length();
+		long lastModified = pomFile.lastModified();
+		try {
+			return new PomFingerprint(size, lastModified, PersistentPomCache.hash(Files.readAllBytes(pomFile.toPath())));
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading " + pomFile, e);
+		}
+	}
+
+	/**
+	 * @return true if the file's size and modification time are unchanged
+	 */
+	boolean isUnchanged(File pomFile) {
+		return pomFile.isFile() && pomFile.length() == size && pomFile.lastModified() == lastModified;
+	}
+
+	boolean hasSameContent(PomFingerprint other) {
+		return contentHash.equals(other.contentHash);
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	long getLastModified() {
+		return lastModified;
+	}
+
+	String getContentHash() {
+		return contentHash;
+	}
+}
@@ -0,0 +1,279 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Index of the pom.xml files under a root directory, built by walking the directory once. Each pom is indexed by
+ * path, canonical file, file key and the GAV and parent declared in its header so that parent lookups and
+ * {@link PomResolveCache} keys are answered from memory rather than by probing the filesystem for every module.
+ * Paths outside the indexed directories (eg a relativePath which leaves the root directory or which names a file other
+ * than pom.xml) are not indexed and are checked on disk. Hidden directories and build output directories are not walked.
+ * Instances are immutable once scanned and thread safe
+ */
+public class PomIndex {
+	public static final Set<String> DEFAULT_SKIPPED_DIRECTORIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("target", "build", "node_modules")));
+
+	private static final String POM_FILE_NAME = "pom.xml";
+
+	private final Set<Path> directories = new HashSet<>();
+	private final Map<Path, Entry> entriesByPath = new LinkedHashMap<>();
+	private final Map<Object, Entry> entriesByKey = new HashMap<>();
+	private final Map<Gav, Entry> entriesByGav = new HashMap<>();
+
+	/**
+	 * A pom found by the scan
+	 */
+	public static class Entry {
+		private final File canonicalFile;
+		private final Gav gav;
+		private final Parent parent;
+
+		Entry(File canonicalFile, Gav gav, Parent parent) {
+			this.canonicalFile = canonicalFile;
+			this.gav = gav;
+			this.parent = parent;
+		}
+
+		public File getCanonicalFile() {
+			return canonicalFile;
+		}
+
+		/**
+		 * @return The GAV declared by the pom (inheriting the group and version from the parent declaration) or null
+		 *         if the pom could not be read or its GAV contains a property
+		 */
+		public Gav getGav() {
+			return gav;
+		}
+
+		/**
+		 * @return The parent declared by the pom, null if there is no parent or the pom could not be read
+		 */
+		public Parent getParent() {
+			return parent;
+		}
+	}
+
+	protected PomIndex() {
+	}
+
+	/**
+	 * Walks the root directory skipping hidden directories and the {@link #DEFAULT_SKIPPED_DIRECTORIES}
+	 */
+	public static PomIndex scan(File rootDir) {
+		return scan(rootDir, DEFAULT_SKIPPED_DIRECTORIES);
+	}
+
+	/**
+	 * @param skippedDirectories Names of the directories which are not walked, hidden directories are always skipped
+	 */
+	public static PomIndex scan(File rootDir, final Set<String> skippedDirectories) {
+		final PomIndex index = new PomIndex();
+		final StreamingPomReader reader = new StreamingPomReader();
+		final Path root = rootDir.getAbsoluteFile().toPath().normalize();
+		final Path canonicalRoot;
+		try {
+			canonicalRoot = root.toRealPath();
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+					String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+					if (!dir.equals(root) && (name.startsWith(".") || skippedDirectories.contains(name))) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					index.directories.add(dir);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+					// symbolic links are not followed, a linked pom is checked on disk when it's looked up
+					if (attributes.isRegularFile() && POM_FILE_NAME.equals(file.getFileName().toString())) {
+						File canonicalFile = canonicalRoot.resolve(root.relativize(file)).toFile();
+						index.add(file, attributes.fileKey(), createEntry(canonicalFile, file, reader));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException("Error scanning " + rootDir, e);
+		}
+		return index;
+	}
+
+	private static Entry createEntry(File canonicalFile, Path file, StreamingPomReader reader) {
+		Model header;
+		try (InputStream in = Files.newInputStream(file)) {
+			header = reader.readHeader(in);
+		} catch (IOException | XmlPullParserException e) {
+			// reported if the pom is resolved
+			return new Entry(canonicalFile, null, null);
+		}
+		return new Entry(canonicalFile, getDeclaredGav(header), header.getParent());
+	}
+
+	/**
+	 * @param header Model read by {@link StreamingPomReader#readHeader(InputStream)}
+	 * @return The GAV declared by the pom, inheriting the group and version from the parent declaration, or null if
+	 *         it contains a property and can only be known by resolving the pom
+	 */
+	static Gav getDeclaredGav(Model header) {
+		Parent parent = header.getParent();
+		String groupId = header.getGroupId() != null || parent == null ? header.getGroupId() : parent.getGroupId();
+		String version = header.getVersion() != null || parent == null ? header.getVersion() : parent.getVersion();
+		String artifactId = header.getArtifactId();
+		if (isLiteral(groupId) && isLiteral(artifactId) && isLiteral(version)) {
+			return Gav.of(groupId, artifactId, version);
+		}
+		return null;
+	}
+
+	private static boolean isLiteral(String value) {
+		return value != null && !value.contains("${");
+	}
+
+	protected void add(Path path, Object fileKey, Entry entry) {
+		entriesByPath.put(path, entry);
+		if (fileKey != null) {
+			entriesByKey.put(fileKey, entry);
+		}
+		// a GAV declared by more than one pom is ambiguous and not indexed
+		Gav gav = entry.getGav();
+		if (gav != null && entriesByGav.containsKey(gav)) {
+			entriesByGav.put(gav, null);
+		} else if (gav != null) {
+			entriesByGav.put(gav, entry);
+		}
+	}
+
+	/**
+	 * @return true if the file is in an indexed directory, in which case {@link #getPomFile(File)} is definitive
+	 */
+	public boolean isIndexed(File file) {
+		Path path = normalize(file);
+		if (path == null) {
+			return false;
+		}
+		if (directories.contains(path) || entriesByPath.containsKey(path)) {
+			return true;
+		}
+		return POM_FILE_NAME.equals(path.getFileName().toString()) && directories.contains(path.getParent());
+	}
+
+	/**
+	 * @param file A pom file or a directory containing a pom.xml
+	 * @return The canonical pom file or null if there is no indexed pom at the path
+	 */
+	public File getPomFile(File file) {
+		Path path = normalize(file);
+		if (path == null) {
+			return null;
+		}
+		Entry entry = entriesByPath.get(path);
+		if (entry == null && directories.contains(path)) {
+			entry = entriesByPath.get(path.resolve(POM_FILE_NAME));
+		}
+		return entry == null ? null : entry.getCanonicalFile();
+	}
+
+	/**
+	 * @return The canonical pom file declaring the GAV or null if no pom (or more than one pom) declares it
+	 */
+	public File getPomFile(Gav gav) {
+		Entry entry = entriesByGav.get(gav);
+		return entry == null ? null : entry.getCanonicalFile();
+	}
+
+	/**
+	 * @return The indexed entry for the pom file or null if the file is not indexed
+	 */
+	public Entry getEntry(File pomFile) {
+		Path path = normalize(pomFile);
+		return path == null ? null : entriesByPath.get(path);
+	}
+
+	/**
+	 * Gets the canonical file from the index, files which are not found by path are looked up by file key (eg a
+	 * path through a symbolic link) and finally by {@link File#getCanonicalFile()}
+	 */
+	public File getCanonicalFile(File file) {
+		Entry entry = getEntry(file);
+		if (entry == null && !entriesByKey.isEmpty()) {
+			try {
+				Object fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+				entry = fileKey == null ? null : entriesByKey.get(fileKey);
+			} catch (IOException e) {
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			return entry.getCanonicalFile();
+		}
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entriesByPath.values());
+	}
+
+	public int size() {
+		return entriesByPath.size();
+	}
+
+	/**
+	 * Removes '.' and '..' segments without accessing the filesystem. A '..' is only removed when the directory it
+	 * leaves was walked by the scan, so it is known not to be a symbolic link
+	 *
+	 * @return The normalized absolute path or null if the path can't be normalized without the filesystem
+	 */
+	protected Path normalize(File file) {
+		Path absolute = file.getAbsoluteFile().toPath();
+		Path result = absolute.getRoot();
+		for (Path name : absolute) {
+			String segment = name.toString();
+			if (".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				if (!directories.contains(result)) {
+					return null;
+				}
+				result = result.getParent();
+				if (result == null) {
+					return null;
+				}
+			} else {
+				result = result == null ? name : result.resolve(name);
+			}
+		}
+		return result;
+	}
+}
@@ -2,46 +2,273 @@ package com.lazan.gradlemavenshare;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Thread safe cache of {@link ResolvedPom}s keyed by pom file and by GAV. Poms are resolved at most once, concurrent
+ * requests for a pom which is currently being resolved wait for the in-flight resolution rather than resolving it again
+ */
 public class PomResolveCache {
-	private final Map<String, ResolvedPom> pomsByGav = new LinkedHashMap<>();
-	private final Map<File, ResolvedPom> pomsByFile = new LinkedHashMap<>();
-	
-	public synchronized void addResolvedPom(ResolvedPom pom) {
+	private final ConcurrentMap<Gav, ResolvedPom> pomsByGav = new ConcurrentHashMap<>();
+	private final ConcurrentMap<File, ResolvedPom> pomsByFile = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Object, PendingPom> pending = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Thread, Object> waiting = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile SharedPomCache sharedCache;
+	private volatile PomIndex pomIndex;
+	private volatile BomResolver bomResolver;
+
+	private static class PendingPom extends FutureTask<ResolvedPom> {
+		private final Thread owner = Thread.currentThread();
+
+		public PendingPom(Callable<ResolvedPom> callable) {
+			super(callable);
+		}
+
+		void complete(ResolvedPom pom) {
+			set(pom);
+		}
+	}
+
+	/**
+	 * @param sharedCache Poms which are not in this cache are looked up in the shared cache before they are resolved,
+	 *        resolved poms are added to the shared cache. Null to resolve all poms
+	 */
+	public void setSharedCache(SharedPomCache sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	/**
+	 * @param pomIndex Canonical files of the poms in the build, pom files which are not in the index are
+	 *        canonicalized on disk. Null to canonicalize all pom files on disk
+	 */
+	public void setPomIndex(PomIndex pomIndex) {
+		this.pomIndex = pomIndex;
+	}
+
+	/**
+	 * Binds the poms in the cache, and the poms added to it from the shared cache, to the BOM resolver of the current
+	 * build. Null releases the resolver once the build is finished
+	 */
+	void setBomResolver(BomResolver bomResolver) {
+		this.bomResolver = bomResolver;
+		for (ResolvedPom pom : pomsByGav.values()) {
+			// shared poms may have parents which were not added to this cache
+			for (ResolvedPom current = pom; current != null; current = current.getParent()) {
+				current.setBomResolver(bomResolver);
+			}
+		}
+	}
+
+	/**
+	 * @return The BOM resolver of the current build, null if none is bound
+	 */
+	BomResolver getBomResolver() {
+		return bomResolver;
+	}
+
+	public void addResolvedPom(ResolvedPom pom) {
 		if (pom.getPomFile() != null) {
-			File pomFile;
-			try {
-				pomFile = pom.getPomFile().getCanonicalFile();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+			File pomFile = canonicalFile(pom.getPomFile());
+			if (pomsByFile.putIfAbsent(pomFile, pom) != null) throw new RuntimeException("Duplicate pom file " + pomFile);
+		}
+		Gav gav = Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+		if (pomsByGav.putIfAbsent(gav, pom) != null) throw new RuntimeException("Duplicate gav " + gav);
+	}
+
+	/**
+	 * Removes the pom resolved from the file
+	 *
+	 * @return The removed pom or null if the file has not been resolved
+	 */
+	public ResolvedPom removeResolvedPom(File pomFile) {
+		ResolvedPom pom = pomsByFile.remove(canonicalFile(pomFile));
+		if (pom != null) {
+			pomsByGav.remove(Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion()), pom);
+		}
+		return pom;
+	}
+
+	/**
+	 * @return true if the file has been resolved, unlike {@link #getResolvedPom(File)} this is not counted as a hit
+	 */
+	public boolean isResolved(File pomFile) {
+		return pomsByFile.containsKey(canonicalFile(pomFile));
+	}
+
+	public ResolvedPom getResolvedPom(File pomFile) {
+		return countHit(pomsByFile.get(canonicalFile(pomFile)));
+	}
+
+	public ResolvedPom getResolvedPom(String group, String artifact, String version) {
+		return getResolvedPom(Gav.of(group, artifact, version));
+	}
+
+	public ResolvedPom getResolvedPom(Gav gav) {
+		return countHit(pomsByGav.get(gav));
+	}
+
+	/**
+	 * Get the pom for the file, invoking the resolver if it has not been resolved yet. The resolver is expected to
+	 * {@link #addResolvedPom(ResolvedPom)} the pom it resolves
+	 */
+	public ResolvedPom getResolvedPom(File pomFile, Callable<ResolvedPom> resolver) {
+		File key = canonicalFile(pomFile);
+		ResolvedPom pom = countHit(pomsByFile.get(key));
+		return pom != null ? pom : resolveOnce(key, resolver);
+	}
+
+	/**
+	 * Get the pom for the GAV, invoking the resolver if it has not been resolved yet. The resolver is expected to
+	 * {@link #addResolvedPom(ResolvedPom)} the pom it resolves
+	 */
+	public ResolvedPom getResolvedPom(String group, String artifact, String version, Callable<ResolvedPom> resolver) {
+		return getResolvedPom(Gav.of(group, artifact, version), resolver);
+	}
+
+	/**
+	 * Get the pom for the GAV, invoking the resolver if it has not been resolved yet. The resolver is expected to
+	 * {@link #addResolvedPom(ResolvedPom)} the pom it resolves
+	 */
+	public ResolvedPom getResolvedPom(Gav gav, Callable<ResolvedPom> resolver) {
+		ResolvedPom pom = countHit(pomsByGav.get(gav));
+		return pom != null ? pom : resolveOnce(gav, resolver);
+	}
+
+	protected ResolvedPom resolveOnce(Object key, Callable<ResolvedPom> resolver) {
+		PendingPom task = new PendingPom(resolver);
+		PendingPom existing = pending.putIfAbsent(key, task);
+		if (existing != null) {
+			hits.incrementAndGet();
+			return await(key, existing);
+		}
+		try {
+			// another thread may have completed the resolution between our lookup and claiming the key
+			ResolvedPom pom = countHit(getCached(key));
+			if (pom != null) {
+				return pom;
+			}
+			SharedPomCache shared = sharedCache;
+			pom = shared == null ? null : shared.getResolvedPom(key);
+			if (pom != null) {
+				addSharedPom(pom);
+				task.complete(pom);
+				return pom;
+			}
+			misses.incrementAndGet();
+			task.run();
+			if (shared != null) {
+				shared.addResolvedPom(await(key, task));
+			}
+		} finally {
+			pending.remove(key, task);
+		}
+		return await(key, task);
+	}
+
+	/**
+	 * Adds a pom from the shared cache and any of its parents which are not already in this cache
+	 */
+	private void addSharedPom(ResolvedPom pom) {
+		BomResolver resolver = bomResolver;
+		for (ResolvedPom current = pom; current != null; current = current.getParent()) {
+			if (resolver != null) {
+				current.setBomResolver(resolver);
+			}
+			if (current.getPomFile() != null) {
+				pomsByFile.putIfAbsent(canonicalFile(current.getPomFile()), current);
+			}
+			pomsByGav.putIfAbsent(Gav.of(current.getGroupId(), current.getArtifactId(), current.getVersion()), current);
+		}
+	}
+
+	private ResolvedPom countHit(ResolvedPom pom) {
+		if (pom != null) {
+			hits.incrementAndGet();
+		}
+		return pom;
+	}
+
+	/**
+	 * @return Number of lookups which found a resolved pom or a pom being resolved by another thread
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of poms resolved by the cache's resolvers
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private ResolvedPom getCached(Object key) {
+		return key instanceof File ? pomsByFile.get(key) : pomsByGav.get(key);
+	}
+
+	private ResolvedPom await(Object key, PendingPom task) {
+		Thread current = Thread.currentThread();
+		if (!task.isDone()) {
+			waiting.put(current, key);
+		}
+		try {
+			if (!task.isDone()) {
+				checkCycle(key, task);
 			}
-			if (pomsByFile.containsKey(pomFile)) throw new RuntimeException("Duplicate pom file " + pomFile);
-			pomsByFile.put(pomFile, pom);
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			waiting.remove(current);
 		}
-		String gav = createGav(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
-		if (pomsByGav.containsKey(gav)) throw new RuntimeException("Duplicate gav " + gav);
-		pomsByGav.put(gav, pom);
 	}
-	
-	protected String createGav(String group, String artifact, String version) {
-		String gav = String.format("%s:%s:%s", group, artifact, version);
-		if (group == null || artifact == null || version == null) {
-			throw new RuntimeException("Illegal gav " + gav);
+
+	/**
+	 * Follows the chain of threads waiting on each other's poms. If it leads back to the current thread the pom
+	 * hierarchy is cyclic and waiting would never complete
+	 */
+	private void checkCycle(Object key, PendingPom task) {
+		Thread current = Thread.currentThread();
+		List<Object> chain = new ArrayList<>();
+		chain.add(key);
+		Thread owner = task.owner;
+		while (owner != null) {
+			if (owner == current) {
+				throw new RuntimeException("Cyclic pom hierarchy " + chain);
+			}
+			Object ownerKey = waiting.get(owner);
+			PendingPom ownerTask = ownerKey == null ? null : pending.get(ownerKey);
+			if (ownerTask == null || chain.contains(ownerKey)) {
+				return;
+			}
+			chain.add(ownerKey);
+			owner = ownerTask.owner;
 		}
-		return gav;
 	}
-	
-	public synchronized ResolvedPom getResolvedPom(File pomFile) {
+
+	protected File canonicalFile(File pomFile) {
+		PomIndex index = pomIndex;
+		if (index != null) {
+			return index.getCanonicalFile(pomFile);
+		}
 		try {
-			return pomsByFile.get(pomFile.getCanonicalFile());
+			return pomFile.getCanonicalFile();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
-	
-	public synchronized ResolvedPom getResolvedPom(String group, String artifact, String version) {
-		return pomsByGav.get(createGav(group, artifact, version));
-	}
 }
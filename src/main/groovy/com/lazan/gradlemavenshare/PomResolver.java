@@ -1,16 +1,48 @@
 package com.lazan.gradlemavenshare;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Parent;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 
+/**
+ * Resolves poms and their parent hierarchy. Instances are thread safe and may be shared by threads resolving poms
+ * concurrently against the same {@link PomResolveCache}
+ */
 public class PomResolver {
-	private MavenXpp3Reader mavenReader = new MavenXpp3Reader();
-	
+	private final ThreadLocal<MavenXpp3Reader> mavenReader = new ThreadLocal<MavenXpp3Reader>() {
+		@Override
+		protected MavenXpp3Reader initialValue() {
+			return new MavenXpp3Reader();
+		}
+	};
+
+	private final StreamingPomReader streamingReader = new StreamingPomReader();
+	private PersistentPomCache persistentCache;
+	private PomIndex pomIndex;
+	private List<File> modulePoms = Collections.emptyList();
+	private Map<Gav, File> modulePomsByGav;
+	private boolean streaming;
+	private boolean compact;
+	private ShareMetrics metrics = ShareMetrics.DISABLED;
+
 	private static PomSource DEFAULT_POM_SOURCE = new PomSource() {
 		@Override
 		public InputStream getPom(String group, String artifact, String version) {
@@ -19,52 +51,172 @@ public class PomResolver {
 		}
 	};
 
+	/**
+	 * @param persistentCache Cache of poms resolved in previous builds or null to parse every pom
+	 */
+	public void setPersistentCache(PersistentPomCache persistentCache) {
+		this.persistentCache = persistentCache;
+	}
+
+	/**
+	 * @param pomIndex Index of the poms in the build used for relativePath lookups and to read the GAVs of the module
+	 *        poms, null to check the filesystem for each parent
+	 */
+	public void setPomIndex(PomIndex pomIndex) {
+		this.pomIndex = pomIndex;
+	}
+
+	/**
+	 * @param modulePoms Pom files of the modules in the build. An imported BOM or a parent which is not found at its
+	 *        relativePath is resolved from the pom file of the module declaring it rather than the {@link PomSource}
+	 */
+	public synchronized void setModulePoms(Collection<File> modulePoms) {
+		this.modulePoms = new ArrayList<>(modulePoms);
+		this.modulePomsByGav = null;
+	}
+
+	/**
+	 * @param streaming true to read only the parts of each pom used for resolution, the full model is then loaded
+	 *        on the first call to {@link ResolvedPom#getModel()}
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * @param compact true to always keep a partial model for resolution so that the full model can be released by
+	 *        {@link ResolvedPom#compact()}
+	 */
+	public void setCompact(boolean compact) {
+		this.compact = compact;
+	}
+
+	/**
+	 * @param metrics Records the time spent parsing, fetching from the {@link PomSource} and resolving properties
+	 */
+	public void setMetrics(ShareMetrics metrics) {
+		this.metrics = metrics == null ? ShareMetrics.DISABLED : metrics;
+	}
+
 	public ResolvedPom resolvePom(File pomFile, PomResolveCache cache) {
 		return resolvePom(pomFile, cache, DEFAULT_POM_SOURCE);
 	}
-	
-	public ResolvedPom resolvePom(File pomFile, PomResolveCache cache, PomSource pomSource) {
-		try (InputStream in = new FileInputStream(pomFile)) {
-			return resolvePom(in, pomFile, cache, pomSource == null ? DEFAULT_POM_SOURCE : pomSource);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+
+	public ResolvedPom resolvePom(final File pomFile, final PomResolveCache cache, PomSource pomSource) {
+		final PomSource source = pomSource == null ? DEFAULT_POM_SOURCE : pomSource;
+		return cache.getResolvedPom(pomFile, new Callable<ResolvedPom>() {
+			@Override
+			public ResolvedPom call() throws Exception {
+				try (InputStream in = new FileInputStream(pomFile)) {
+					return resolvePom(in, pomFile, cache, source);
+				}
+			}
+		});
 	}
 
 	protected ResolvedPom resolvePom(InputStream in, File pomFile, PomResolveCache cache, PomSource pomSource) throws Exception {
+		if (persistentCache == null && !streaming && !compact) {
+			long start = metrics.start();
+			Model model = mavenReader.get().read(in);
+			metrics.record("parse", start);
+			ResolvedPom parent = resolveParent(model, pomFile, cache, pomSource);
+			start = metrics.start();
+			ResolvedPom resolved = new ResolvedPom(pomFile, parent, model, null, null, null, getBomResolver(cache, pomSource));
+			metrics.record("properties", start);
+			cache.addResolvedPom(resolved);
+			return resolved;
+		}
+		byte[] content = readFully(in);
+		String contentHash = null;
+		Model cachedModel = null;
+		ResolvedPom parent = null;
 		ResolvedPom resolved = null;
-		if (pomFile != null) {
-			resolved = cache.getResolvedPom(pomFile);
+		if (persistentCache != null) {
+			// on a hit (the content and the parent chain are unchanged) the pom is created without parsing the XML
+			contentHash = PersistentPomCache.hash(content);
+			cachedModel = persistentCache.getModel(contentHash);
+			if (cachedModel != null) {
+				parent = resolveParent(cachedModel, pomFile, cache, pomSource);
+				resolved = persistentCache.getResolvedPom(contentHash, pomFile, parent, createModelLoader(pomFile, content), getBomResolver(cache, pomSource));
+			}
+			metrics.increment(resolved == null ? "persistentCache.misses" : "persistentCache.hits");
 		}
 		if (resolved == null) {
-			Model model = mavenReader.read(in);
-			ResolvedPom parent = resolveParent(model, pomFile, cache, pomSource);
-			resolved = new ResolvedPom(pomFile, parent, model);
-			cache.addResolvedPom(resolved);
+			long start = metrics.start();
+			Model model = streaming || compact ? readPartialModel(content) : null;
+			Callable<Model> modelLoader = model == null && !compact ? null : createModelLoader(pomFile, content);
+			if (model == null) {
+				model = mavenReader.get().read(new ByteArrayInputStream(content));
+				if (compact) {
+					model = ResolvedPom.createResolutionModel(model);
+				}
+			}
+			metrics.record("parse", start);
+			if (cachedModel == null) {
+				parent = resolveParent(model, pomFile, cache, pomSource);
+			}
+			start = metrics.start();
+			resolved = new ResolvedPom(pomFile, parent, model, modelLoader, null, null, getBomResolver(cache, pomSource));
+			metrics.record("properties", start);
+			if (persistentCache != null) {
+				persistentCache.addResolvedPom(contentHash, resolved);
+			}
 		}
+		cache.addResolvedPom(resolved);
 		return resolved;
 	}
-	
-	protected ResolvedPom resolveParent(Model model, File pomFile, PomResolveCache cache, PomSource pomSource) throws Exception {
-		Parent rawParent = model.getParent();
+
+	/**
+	 * @return The partial model or null if the streaming reader can't read the pom (eg it uses entities only known to
+	 *         the MavenXpp3Reader) in which case the full model is read
+	 */
+	protected Model readPartialModel(byte[] content) throws IOException {
+		try {
+			return streamingReader.read(new ByteArrayInputStream(content));
+		} catch (XmlPullParserException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Poms with a file are re-read from disk so that the content need not be held in memory
+	 */
+	protected Callable<Model> createModelLoader(final File pomFile, byte[] content) {
+		final byte[] retained = pomFile == null ? content : null;
+		return new Callable<Model>() {
+			@Override
+			public Model call() throws Exception {
+				try (InputStream in = retained == null ? new FileInputStream(pomFile) : new ByteArrayInputStream(retained)) {
+					return mavenReader.get().read(in);
+				}
+			}
+		};
+	}
+
+	protected byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	protected ResolvedPom resolveParent(Model model, File pomFile, final PomResolveCache cache, final PomSource pomSource) throws Exception {
+		final Parent rawParent = model.getParent();
 		if (rawParent != null) {
 			if (rawParent.getGroupId() == null || rawParent.getArtifactId() == null || rawParent.getVersion() == null) {
 				throw new RuntimeException("Invalid parent for artifact " + createGav(model));
 			}
 			ResolvedPom parent = cache.getResolvedPom(rawParent.getGroupId(), rawParent.getArtifactId(), rawParent.getVersion());
 			if (parent == null) {
-				if (pomFile != null && rawParent.getRelativePath() != null) {
-					File parentPomFile = new File(pomFile.getParentFile(), rawParent.getRelativePath());
-					if (!parentPomFile.isFile()) {
-						parentPomFile = new File(parentPomFile, "pom.xml");
-					}
+				File parentPomFile = pomFile == null ? null : getRelativeParentFile(pomFile, rawParent);
+				if (parentPomFile != null) {
 					parent = resolvePom(parentPomFile, cache, pomSource);
 				} else {
-					try (
-						InputStream parentIn = pomSource.getPom(rawParent.getGroupId(), rawParent.getArtifactId(), rawParent.getVersion());
-					) {
-						parent = resolvePom(parentIn, null, cache, pomSource);
-					}
+					Gav parentGav = Gav.of(rawParent.getGroupId(), rawParent.getArtifactId(), rawParent.getVersion());
+					parent = resolveExternalPom(parentGav, cache, pomSource, !isEmptyRelativePath(rawParent));
 				}
 			}
 			return parent;
@@ -72,6 +224,162 @@ public class PomResolver {
 		return null;
 	}
 
+	/**
+	 * Resolves a pom from the {@link PomSource}, each GAV is fetched at most once per {@link PomResolveCache}
+	 *
+	 * @param moduleLookup true to resolve the pom from the file of the module declaring the GAV, if there is one. Only
+	 *        the module poms are looked up, other poms under the root (eg test fixtures) are never used
+	 */
+	protected ResolvedPom resolveExternalPom(final Gav gav, final PomResolveCache cache, final PomSource pomSource, final boolean moduleLookup) {
+		return cache.getResolvedPom(gav, new Callable<ResolvedPom>() {
+			@Override
+			public ResolvedPom call() throws Exception {
+				File moduleFile = moduleLookup ? getModulePomFile(gav) : null;
+				if (moduleFile != null) {
+					metrics.increment("modulePoms.lookups");
+					return resolvePom(moduleFile, cache, pomSource);
+				}
+				long start = metrics.start();
+				InputStream pomIn = pomSource.getPom(gav.getGroupId(), gav.getArtifactId(), gav.getVersion());
+				metrics.record("pomSource", start);
+				metrics.increment("pomSource.fetches");
+				try (InputStream in = pomIn) {
+					return resolvePom(in, null, cache, pomSource);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The pom file of the module declaring the GAV or null. The module GAVs are read from the pom headers, or
+	 *         the {@link PomIndex}, on first call and a module whose GAV contains a property is not found
+	 */
+	protected synchronized File getModulePomFile(Gav gav) {
+		if (modulePomsByGav == null) {
+			Map<Gav, File> map = new HashMap<>();
+			for (File pomFile : modulePoms) {
+				Gav declared = readDeclaredGav(pomFile);
+				if (declared != null && !map.containsKey(declared)) {
+					map.put(declared, pomFile);
+				}
+			}
+			modulePomsByGav = map;
+		}
+		return modulePomsByGav.get(gav);
+	}
+
+	/**
+	 * @return The GAV declared by the pom header or null if the pom needs to be resolved to know its GAV
+	 */
+	protected Gav readDeclaredGav(File pomFile) {
+		PomIndex.Entry entry = pomIndex == null ? null : pomIndex.getEntry(pomFile);
+		if (entry != null) {
+			return entry.getGav();
+		}
+		Model header;
+		try (InputStream in = new FileInputStream(pomFile)) {
+			header = streamingReader.readHeader(in);
+		} catch (IOException | XmlPullParserException e) {
+			// reported when the pom is resolved
+			return null;
+		}
+		return PomIndex.getDeclaredGav(header);
+	}
+
+	/**
+	 * @return The BOM resolver bound to the cache for the current build, or a resolver for the cache and pom source
+	 */
+	protected BomResolver getBomResolver(PomResolveCache cache, PomSource pomSource) {
+		BomResolver bomResolver = cache.getBomResolver();
+		return bomResolver != null ? bomResolver : createBomResolver(cache, pomSource);
+	}
+
+	/**
+	 * Imported BOMs are resolved through the same cache as parents so a BOM shared by many poms is fetched, parsed and
+	 * has its dependency management resolved once. A BOM declared by a module in the build is resolved from its file
+	 */
+	protected BomResolver createBomResolver(final PomResolveCache cache, final PomSource pomSource) {
+		return new BomResolver() {
+			@Override
+			public ResolvedPom resolveBom(Gav gav) {
+				metrics.increment("bom.imports");
+				return resolveExternalPom(gav, cache, pomSource, true);
+			}
+		};
+	}
+
+	/**
+	 * Scans the parent declarations of the poms and their local parents without resolving them
+	 *
+	 * @return The GAVs of the parents which are not found at their relativePath or in the module poms and will be
+	 *         requested from the {@link PomSource}. Poms in the {@link PomIndex} are not read again
+	 */
+	public Set<Gav> findExternalParents(Iterable<File> pomFiles) {
+		Set<Gav> externalParents = new LinkedHashSet<>();
+		Set<File> visited = new HashSet<>();
+		for (File pomFile : pomFiles) {
+			File current = pomFile;
+			while (current != null && visited.add(current.getAbsoluteFile().toPath().normalize().toFile())) {
+				Parent rawParent;
+				PomIndex.Entry entry = pomIndex == null ? null : pomIndex.getEntry(current);
+				if (entry != null) {
+					rawParent = entry.getParent();
+				} else {
+					try (InputStream in = new FileInputStream(current)) {
+						rawParent = streamingReader.readParent(in);
+					} catch (IOException | XmlPullParserException e) {
+						// reported when the pom is resolved
+						break;
+					}
+				}
+				if (rawParent == null || rawParent.getGroupId() == null || rawParent.getArtifactId() == null || rawParent.getVersion() == null) {
+					break;
+				}
+				Gav parentGav = Gav.of(rawParent.getGroupId(), rawParent.getArtifactId(), rawParent.getVersion());
+				current = getRelativeParentFile(current, rawParent);
+				if (current == null && !isEmptyRelativePath(rawParent)) {
+					current = getModulePomFile(parentGav);
+				}
+				if (current == null) {
+					externalParents.add(parentGav);
+				}
+			}
+		}
+		return externalParents;
+	}
+
+	/**
+	 * @return The parent pom file or null if the relativePath is empty or there is no pom at the relativePath, in
+	 *         which case the parent is provided by the {@link PomSource}. Paths within the {@link PomIndex} are not
+	 *         checked on disk
+	 */
+	protected File getRelativeParentFile(File pomFile, Parent rawParent) {
+		String relativePath = rawParent.getRelativePath();
+		if (relativePath == null || relativePath.trim().isEmpty()) {
+			return null;
+		}
+		File parentPomFile = new File(pomFile.getParentFile(), relativePath);
+		PomIndex index = pomIndex;
+		if (index != null && index.isIndexed(parentPomFile)) {
+			return index.getPomFile(parentPomFile);
+		}
+		if (index != null) {
+			metrics.increment("pomIndex.diskProbes");
+		}
+		if (!parentPomFile.isFile()) {
+			parentPomFile = new File(parentPomFile, "pom.xml");
+		}
+		return parentPomFile.isFile() ? parentPomFile : null;
+	}
+
+	/**
+	 * @return true if the parent declares an empty relativePath, which in maven means the parent is never looked up
+	 *         locally
+	 */
+	protected boolean isEmptyRelativePath(Parent rawParent) {
+		return rawParent.getRelativePath() != null && rawParent.getRelativePath().trim().isEmpty();
+	}
+
 	protected String createGav(Parent parent) {
 		return String.format("%s:%s:%s", parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
 	}
@@ -0,0 +1,122 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+import org.apache.maven.model.Parent;
+
+/**
+ * Fetches poms from an {@link AsyncPomSource} ahead of resolution. Each GAV is fetched once, requests for a GAV
+ * which is being fetched join the in-flight fetch. When a pom arrives its parent is requested straight away so
+ * that external parent chains are fetched without waiting for the rest of the resolution
+ */
+public class PrefetchingPomSource implements PomSource {
+	private final AsyncPomSource source;
+	private final StreamingPomReader reader = new StreamingPomReader();
+	private final ConcurrentMap<Gav, CompletableFuture<byte[]>> fetches = new ConcurrentHashMap<>();
+
+	public PrefetchingPomSource(AsyncPomSource source) {
+		this.source = source;
+	}
+
+	/**
+	 * Requests all of the GAVs which are not already fetched or being fetched in a single batch
+	 */
+	public void prefetch(Collection<Gav> gavs) {
+		Map<Gav, CompletableFuture<byte[]>> claimed = new LinkedHashMap<>();
+		for (Gav gav : gavs) {
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			if (fetches.putIfAbsent(gav, future) == null) {
+				claimed.put(gav, future);
+			}
+		}
+		if (claimed.isEmpty()) {
+			return;
+		}
+		Map<Gav, CompletableFuture<byte[]>> results;
+		try {
+			results = source.getPomsAsync(claimed.keySet());
+		} catch (RuntimeException e) {
+			for (CompletableFuture<byte[]> future : claimed.values()) {
+				future.completeExceptionally(e);
+			}
+			throw e;
+		}
+		for (Map.Entry<Gav, CompletableFuture<byte[]>> entry : claimed.entrySet()) {
+			final CompletableFuture<byte[]> future = entry.getValue();
+			CompletableFuture<byte[]> result = results.get(entry.getKey());
+			if (result == null) {
+				future.completeExceptionally(new RuntimeException("No pom returned for " + entry.getKey()));
+				continue;
+			}
+			result.whenComplete(new BiConsumer<byte[], Throwable>() {
+				@Override
+				public void accept(byte[] content, Throwable error) {
+					if (error != null) {
+						future.completeExceptionally(error);
+					} else {
+						future.complete(content);
+						prefetchParent(content);
+					}
+				}
+			});
+		}
+	}
+
+	protected void prefetchParent(byte[] content) {
+		Parent parent;
+		try {
+			parent = reader.readParent(new ByteArrayInputStream(content));
+		} catch (Exception e) {
+			// reported when the pom is resolved
+			return;
+		}
+		if (parent != null && parent.getGroupId() != null && parent.getArtifactId() != null && parent.getVersion() != null) {
+			prefetch(Collections.singletonList(Gav.of(parent.getGroupId(), parent.getArtifactId(), parent.getVersion())));
+		}
+	}
+
+	@Override
+	public InputStream getPom(String group, String artifact, String version) {
+		Gav gav = Gav.of(group, artifact, version);
+		CompletableFuture<byte[]> future = fetches.get(gav);
+		if (future == null) {
+			prefetch(Collections.singletonList(gav));
+			future = fetches.get(gav);
+		}
+		try {
+			return new ByteArrayInputStream(future.get());
+		} catch (ExecutionException e) {
+			throw unwrap(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private RuntimeException unwrap(Throwable cause) {
+		while (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+	}
+
+	/**
+	 * @return The GAVs which have been requested
+	 */
+	public List<Gav> getRequestedGavs() {
+		return new ArrayList<>(fetches.keySet());
+	}
+}
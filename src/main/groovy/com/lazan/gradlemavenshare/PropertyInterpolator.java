@@ -0,0 +1,86 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the placeholders in a map of properties in a single pass. Each property is resolved after the properties
+ * it references (depth first) so every value is substituted exactly once. Cyclic references are reported as an error
+ */
+class PropertyInterpolator {
+	private final Map<String, String> properties;
+	private final Map<String, String> values;
+	private final String description;
+	private final Set<String> resolved = new HashSet<>();
+	private final Set<String> resolving = new LinkedHashSet<>();
+
+	private PropertyInterpolator(Map<String, String> properties, Map<String, String> values, String description) {
+		this.properties = properties;
+		this.values = values;
+		this.description = description;
+	}
+
+	/**
+	 * Replaces the values in the map with their resolved values, preserving the iteration order
+	 *
+	 * @param description Used in error messages
+	 */
+	static void interpolate(Map<String, String> properties, String description) {
+		resolveAll(properties, properties, description);
+	}
+
+	/**
+	 * Resolves the properties of a layer, references to properties which are not in the layer are looked up in the
+	 * inherited (already resolved) properties
+	 */
+	static void interpolate(Map<String, String> layer, LayeredProperties inherited, String description) {
+		resolveAll(layer, new LayeredProperties(inherited, layer), description);
+	}
+
+	private static void resolveAll(Map<String, String> properties, Map<String, String> values, String description) {
+		PropertyInterpolator interpolator = new PropertyInterpolator(properties, values, description);
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			if (PropertyTemplate.hasPlaceholders(entry.getValue())) {
+				interpolator.resolve(entry.getKey());
+			}
+		}
+	}
+
+	private void resolve(String name) {
+		String value = properties.get(name);
+		if (!PropertyTemplate.hasPlaceholders(value) || resolved.contains(name)) {
+			return;
+		}
+		if (!resolving.add(name)) {
+			List<String> cycle = new ArrayList<>(resolving);
+			cycle = cycle.subList(cycle.indexOf(name), cycle.size());
+			cycle.add(name);
+			throw new RuntimeException(String.format("Cyclic property reference %s in %s", formatCycle(cycle), description));
+		}
+		PropertyTemplate template = PropertyTemplate.compile(value);
+		for (String reference : template.getPropertyNames()) {
+			if (properties.containsKey(reference)) {
+				resolve(reference);
+			}
+		}
+		// replacing the value of an existing key is not a structural modification so is safe during iteration
+		properties.put(name, template.apply(values));
+		resolving.remove(name);
+		resolved.add(name);
+	}
+
+	private static String formatCycle(List<String> cycle) {
+		StringBuilder builder = new StringBuilder();
+		for (String name : cycle) {
+			if (builder.length() > 0) {
+				builder.append(" -> ");
+			}
+			builder.append("${").append(name).append('}');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,94 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A value containing ${...} property placeholders, parsed once into literal segments and property names. Templates
+ * are shared across poms since the same raw values (eg ${project.version} or ${spring.version}) are repeated in many
+ * poms. Placeholders for unknown properties are left as they are
+ */
+class PropertyTemplate {
+	private static final int MAX_CACHED_TEMPLATES = 16384;
+	private static final ConcurrentMap<String, PropertyTemplate> CACHE = new ConcurrentHashMap<>();
+
+	private final String value;
+	private final String[] literals;
+	private final String[] names;
+
+	private PropertyTemplate(String value, String[] literals, String[] names) {
+		this.value = value;
+		this.literals = literals;
+		this.names = names;
+	}
+
+	static boolean hasPlaceholders(String value) {
+		return value != null && value.indexOf("${") >= 0;
+	}
+
+	/**
+	 * @param value a value containing at least one placeholder
+	 */
+	static PropertyTemplate compile(String value) {
+		PropertyTemplate template = CACHE.get(value);
+		if (template == null) {
+			template = parse(value);
+			if (CACHE.size() >= MAX_CACHED_TEMPLATES) {
+				CACHE.clear();
+			}
+			CACHE.put(value, template);
+		}
+		return template;
+	}
+
+	private static PropertyTemplate parse(String value) {
+		List<String> literals = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		int literalStart = 0;
+		int start = value.indexOf("${");
+		while (start >= 0) {
+			int end = value.indexOf('}', start + 2);
+			if (end < 0) {
+				break;
+			}
+			literals.add(value.substring(literalStart, start));
+			names.add(value.substring(start + 2, end));
+			literalStart = end + 1;
+			start = value.indexOf("${", literalStart);
+		}
+		literals.add(value.substring(literalStart));
+		return new PropertyTemplate(value, literals.toArray(new String[literals.size()]), names.toArray(new String[names.size()]));
+	}
+
+	List<String> getPropertyNames() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	String apply(Map<String, String> properties) {
+		if (names.length == 0) {
+			return value;
+		}
+		if (names.length == 1 && literals[0].isEmpty() && literals[1].isEmpty()) {
+			String replacement = properties.get(names[0]);
+			return replacement == null ? value : replacement;
+		}
+		StringBuilder builder = new StringBuilder(value.length() + 32);
+		for (int i = 0; i < names.length; ++i) {
+			builder.append(literals[i]);
+			String replacement = properties.get(names[i]);
+			if (replacement == null) {
+				// leave it as it was
+				builder.append("${").append(names[i]).append('}');
+			} else {
+				builder.append(replacement);
+			}
+		}
+		builder.append(literals[names.length]);
+		return builder.toString();
+	}
+}
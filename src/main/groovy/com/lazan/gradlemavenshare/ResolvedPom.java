@@ -1,15 +1,24 @@
 package com.lazan.gradlemavenshare;
 
 import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
 import org.apache.maven.model.Exclusion;
 import org.apache.maven.model.Model;
 
@@ -26,43 +35,89 @@ public class ResolvedPom {
 	private final File pomFile;
 	private final ResolvedPom parent;
 	private final Model model;
-	private final Map<String, String> properties;
+	private final Callable<Model> modelLoader;
+	private volatile Model loadedModel;
+	private volatile SoftReference<Model> softModel;
+	private volatile boolean compacted;
+	private final String groupId;
+	private final String version;
+	private final LayeredProperties properties;
+	private volatile Map<String, List<String>> referrers;
+	private volatile List<Dependency> dependencies;
+	private volatile DependencyManagementTable managementTable;
+	private volatile List<ResolvedPom> resolvedBoms = Collections.emptyList();
+	private volatile BomResolver bomResolver;
+	private static final ThreadLocal<List<Gav>> IMPORTING = new ThreadLocal<List<Gav>>() {
+		@Override
+		protected List<Gav> initialValue() {
+			return new ArrayList<>();
+		}
+	};
 	
 	public ResolvedPom(File pomFile, ResolvedPom parent, Model model) {
+		this(pomFile, parent, model, null, null, null);
+	}
+
+	/**
+	 * @param pomFile Pom file, null for poms provided by a {@link PomSource}
+	 * @param parent Resolved parent
+	 * @param model Model used for resolution, may be a partial model if a modelLoader is provided
+	 * @param modelLoader Loads the full model on first call to {@link #getModel()}, null if model is the full model
+	 * @param properties Previously resolved properties or null to resolve them from the model
+	 * @param dependencies Previously resolved dependencies or null to resolve them from the model
+	 */
+	protected ResolvedPom(File pomFile, ResolvedPom parent, Model model, Callable<Model> modelLoader, Map<String, String> properties, List<Dependency> dependencies) {
+		this(pomFile, parent, model, modelLoader, properties, dependencies, null);
+	}
+
+	/**
+	 * @param bomResolver Resolves BOMs imported into dependency management, null if imports are not supported
+	 */
+	protected ResolvedPom(File pomFile, ResolvedPom parent, Model model, Callable<Model> modelLoader, Map<String, String> properties, List<Dependency> dependencies, BomResolver bomResolver) {
 		super();
 		this.pomFile = pomFile;
 		this.parent = parent;
 		this.model = model;
-		this.properties = Collections.unmodifiableMap(resolveProperties());
+		this.modelLoader = modelLoader;
+		this.groupId = model.getGroupId() != null || parent == null ? model.getGroupId() : parent.getGroupId();
+		this.version = model.getVersion() != null || parent == null ? model.getVersion() : parent.getVersion();
+		Map<String, String> resolved = properties == null ? resolveProperties() : properties;
+		this.properties = resolved instanceof LayeredProperties
+				? (LayeredProperties) resolved
+				: LayeredProperties.of(parent == null ? null : parent.properties, resolved);
+		this.dependencies = dependencies == null ? null : Collections.unmodifiableList(dependencies);
+		this.bomResolver = bomResolver;
+	}
+
+	/**
+	 * Binds the pom to the {@link BomResolver} of the build using it. Poms are reused across builds in the same daemon,
+	 * binding null once the build finishes releases the build's caches and pom source
+	 */
+	void setBomResolver(BomResolver bomResolver) {
+		this.bomResolver = bomResolver;
 	}
 	
+	/**
+	 * @return The dependencies with dependency management applied, resolved on first call
+	 */
 	public List<Dependency> getDependencies() {
+		List<Dependency> result = dependencies;
+		if (result == null) {
+			result = Collections.unmodifiableList(resolveDependencies());
+			dependencies = result;
+		}
+		return result;
+	}
+
+	protected List<Dependency> resolveDependencies() {
 		if (model.getDependencies() == null || model.getDependencies().isEmpty()) {
 			return Collections.emptyList();
 		}
-		final Map<String, Dependency> managementMap = new LinkedHashMap<>();
-		ResolvedPomVisitor<Void> visitor = new ResolvedPomVisitor<Void>() {
-			@Override
-			public Void visit(ResolvedPom pom) {
-				if (pom.getModel().getDependencyManagement() != null) {
-					for (Dependency rawDep : pom.getModel().getDependencyManagement().getDependencies()) {
-						Dependency dep = resolve(rawDep);
-						String key = String.format("%s:%s", dep.getGroupId(), dep.getArtifactId());
-						if (!managementMap.containsKey(key)) {
-							managementMap.put(key, dep);
-						}
-					}
-				}
-				return null;
-			}
-		};
-		visitHierarchy(visitor);
-		
+		DependencyManagementTable management = getDependencyManagement();
 		List<Dependency> dependencies = new ArrayList<>(model.getDependencies().size());
 		for (Dependency rawDep : model.getDependencies()) {
 			Dependency dep = resolve(rawDep);
-			String key = String.format("%s:%s", dep.getGroupId(), dep.getArtifactId());
-			Dependency managedDep = managementMap.get(key);
+			Dependency managedDep = management.get(createManagementKey(dep));
 			if (managedDep != null) {
 				if (dep.getVersion() == null) {
 					dep.setVersion(managedDep.getVersion());
@@ -73,7 +128,151 @@ public class ResolvedPom {
 			}
 			dependencies.add(dep);
 		}
-		return Collections.unmodifiableList(dependencies);
+		return dependencies;
+	}
+
+	protected DependencyManagementTable getDependencyManagement() {
+		DependencyManagementTable result = managementTable;
+		if (result == null) {
+			List<ResolvedPom> boms = new ArrayList<>();
+			result = resolveDependencyManagement(boms);
+			resolvedBoms = boms.isEmpty() ? Collections.<ResolvedPom> emptyList() : Collections.unmodifiableList(boms);
+			managementTable = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param boms Receives the BOM poms imported into the dependency management
+	 */
+	protected DependencyManagementTable resolveDependencyManagement(List<ResolvedPom> boms) {
+		List<Dependency> rawDeps = getRawManagedDependencies(this);
+		if (parent == null) {
+			if (rawDeps.isEmpty()) {
+				return DependencyManagementTable.EMPTY;
+			}
+			Map<Gav, Dependency> entries = new HashMap<>();
+			List<DependencyManagementTable> imports = new ArrayList<>();
+			Set<String> propertyNames = new HashSet<>();
+			addManagedDependencies(rawDeps, entries, imports, boms, propertyNames);
+			return new DependencyManagementTable(entries, null, imports, propertyNames);
+		}
+		DependencyManagementTable parentTable = parent.getDependencyManagement();
+		if (parentTable.isInheritable(parent.properties, properties)) {
+			if (rawDeps.isEmpty()) {
+				return parentTable;
+			}
+			Map<Gav, Dependency> entries = new HashMap<>();
+			List<DependencyManagementTable> imports = new ArrayList<>();
+			Set<String> propertyNames = new HashSet<>();
+			addManagedDependencies(rawDeps, entries, imports, boms, propertyNames);
+			return new DependencyManagementTable(entries, parentTable, imports, DependencyManagementTable.union(propertyNames, parentTable.getPropertyNames()));
+		}
+		// this pom changes a property used by inherited entries, resolve the whole hierarchy against this pom's properties
+		Map<Gav, Dependency> entries = new HashMap<>();
+		List<DependencyManagementTable> imports = new ArrayList<>();
+		Set<String> propertyNames = new HashSet<>();
+		for (ResolvedPom current = this; current != null; current = current.parent) {
+			addManagedDependencies(getRawManagedDependencies(current), entries, imports, boms, propertyNames);
+		}
+		return new DependencyManagementTable(entries, null, imports, propertyNames);
+	}
+
+	private static List<Dependency> getRawManagedDependencies(ResolvedPom pom) {
+		DependencyManagement management = pom.model.getDependencyManagement();
+		if (management == null || management.getDependencies() == null) {
+			return Collections.emptyList();
+		}
+		return management.getDependencies();
+	}
+
+	private void addManagedDependencies(List<Dependency> rawDeps, Map<Gav, Dependency> entries, List<DependencyManagementTable> imports, List<ResolvedPom> boms, Set<String> propertyNames) {
+		for (Dependency rawDep : rawDeps) {
+			Dependency dep = resolve(rawDep);
+			if (isImport(dep)) {
+				imports.add(importDependencyManagement(Gav.of(dep.getGroupId(), dep.getArtifactId(), dep.getVersion()), boms));
+			} else {
+				Gav key = createManagementKey(dep);
+				if (!entries.containsKey(key)) {
+					entries.put(key, dep);
+				}
+			}
+			addPropertyNames(rawDep.getGroupId(), propertyNames);
+			addPropertyNames(rawDep.getArtifactId(), propertyNames);
+			addPropertyNames(rawDep.getVersion(), propertyNames);
+			addPropertyNames(rawDep.getScope(), propertyNames);
+		}
+	}
+
+	protected boolean isImport(Dependency dep) {
+		return "import".equals(dep.getScope()) && "pom".equals(dep.getType());
+	}
+
+	/**
+	 * @param boms Receives the resolved BOM pom
+	 * @return The dependency management of the BOM, which is resolved against the BOM's own properties
+	 */
+	protected DependencyManagementTable importDependencyManagement(Gav gav, List<ResolvedPom> boms) {
+		BomResolver resolver = bomResolver;
+		if (resolver == null) {
+			throw new RuntimeException(String.format("Cannot import %s into %s:%s:%s, no BomResolver", gav, getGroupId(), getArtifactId(), getVersion()));
+		}
+		List<Gav> importing = IMPORTING.get();
+		if (importing.contains(gav)) {
+			List<Gav> cycle = new ArrayList<>(importing.subList(importing.indexOf(gav), importing.size()));
+			cycle.add(gav);
+			throw new RuntimeException("Cyclic BOM import " + cycle);
+		}
+		importing.add(gav);
+		try {
+			ResolvedPom bom = resolver.resolveBom(gav);
+			boms.add(bom);
+			return bom.getDependencyManagement();
+		} finally {
+			importing.remove(importing.size() - 1);
+		}
+	}
+
+	/**
+	 * @return true if this pom or any of its parents import a BOM into dependency management, see
+	 *         {@link #isImport(Dependency)}
+	 */
+	public boolean hasImports() {
+		return !getImportedBoms().isEmpty();
+	}
+
+	/**
+	 * @return The BOM poms imported into this pom's dependency management, empty until the dependency management is
+	 *         resolved. The BOMs of an inherited dependency management are returned by the parent
+	 */
+	public List<ResolvedPom> getResolvedBoms() {
+		return resolvedBoms;
+	}
+
+	/**
+	 * @return The GAVs of the BOMs imported into dependency management by this pom and its parents, without resolving
+	 *         them
+	 */
+	public List<Gav> getImportedBoms() {
+		List<Gav> boms = new ArrayList<>();
+		for (ResolvedPom current = this; current != null; current = current.parent) {
+			for (Dependency rawDep : getRawManagedDependencies(current)) {
+				if ("import".equals(current.substituteProperties(rawDep.getScope())) && "pom".equals(current.substituteProperties(rawDep.getType()))) {
+					boms.add(Gav.of(current.substituteProperties(rawDep.getGroupId()), current.substituteProperties(rawDep.getArtifactId()), current.substituteProperties(rawDep.getVersion())));
+				}
+			}
+		}
+		return boms;
+	}
+
+	private static void addPropertyNames(String value, Set<String> propertyNames) {
+		if (PropertyTemplate.hasPlaceholders(value)) {
+			propertyNames.addAll(PropertyTemplate.compile(value).getPropertyNames());
+		}
+	}
+
+	protected Gav createManagementKey(Dependency dep) {
+		return Gav.ofGroupArtifact(dep.getGroupId(), dep.getArtifactId());
 	}
 	
 	protected Dependency resolve(Dependency rawDep) {
@@ -100,69 +299,112 @@ public class ResolvedPom {
 		return dep;
 	}
 
+	/**
+	 * Only this pom's own properties and the inherited properties whose values depend on them are resolved, the
+	 * other properties are the parent's resolved properties
+	 */
 	protected Map<String, String> resolveProperties() {
-		final Map<String, String> properties = new LinkedHashMap<>();
-		properties.put("project.groupId", getGroupId());
-		properties.put("project.artifactId", getArtifactId());
-		properties.put("project.version", getVersion());
-		ResolvedPomVisitor<Void> visitor = new ResolvedPomVisitor<Void>() {
-			@Override
-			public Void visit(ResolvedPom pom) {
-				Model unresolved = pom.getModel();
-				if (unresolved.getProperties() != null) {
-					for (Map.Entry<Object, Object> entry : unresolved.getProperties().entrySet()) {
-						String key = (String) entry.getKey();
-						String value = (String) entry.getValue();
-						
-						if (!properties.containsKey(key)) {
-							properties.put(key, value);
-						}
+		Map<String, String> layer = new LinkedHashMap<>();
+		layer.put("project.groupId", getGroupId());
+		layer.put("project.artifactId", getArtifactId());
+		layer.put("project.version", getVersion());
+		if (model.getProperties() != null) {
+			for (Map.Entry<Object, Object> entry : model.getProperties().entrySet()) {
+				String key = (String) entry.getKey();
+				if (!layer.containsKey(key)) {
+					layer.put(key, (String) entry.getValue());
+				}
+			}
+		}
+		String description = getGroupId() + ":" + getArtifactId() + ":" + getVersion();
+		if (parent == null) {
+			PropertyInterpolator.interpolate(layer, description);
+			return new LayeredProperties(null, layer);
+		}
+		LayeredProperties inherited = parent.properties;
+		Deque<String> changed = new ArrayDeque<>();
+		for (Map.Entry<String, String> entry : layer.entrySet()) {
+			if (PropertyTemplate.hasPlaceholders(entry.getValue()) || !Objects.equals(entry.getValue(), inherited.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		// inherited properties which reference a changed property are resolved again against this pom's values
+		Map<String, List<String>> parentReferrers = parent.getReferrers();
+		while (!changed.isEmpty()) {
+			List<String> keys = parentReferrers.get(changed.remove());
+			if (keys != null) {
+				for (String key : keys) {
+					if (!layer.containsKey(key)) {
+						layer.put(key, parent.getRawProperty(key));
+						changed.add(key);
 					}
 				}
-				return null;
 			}
-		};
-		visitHierarchy(visitor);
-		
-		boolean dirtied = true;
-		while (dirtied) {
-			dirtied = false;
-			for (Map.Entry<String, String> entry : properties.entrySet()) {
-				String value = entry.getValue();
-				String result = substituteProperties(properties, value);
-				if (result != null && !result.equals(value)) {
-					dirtied = true;
-					entry.setValue(result);
+		}
+		PropertyInterpolator.interpolate(layer, inherited, description);
+		for (Iterator<Map.Entry<String, String>> it = layer.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, String> entry = it.next();
+			if (inherited.containsKey(entry.getKey()) && Objects.equals(entry.getValue(), inherited.get(entry.getKey()))) {
+				it.remove();
+			}
+		}
+		return new LayeredProperties(inherited, layer);
+	}
+
+	/**
+	 * @return The raw properties of this pom and its parents with placeholders, keyed by the referenced property
+	 *         names. Built once for a parent and used by all of its children
+	 */
+	private Map<String, List<String>> getReferrers() {
+		Map<String, List<String>> result = referrers;
+		if (result == null) {
+			result = new HashMap<>();
+			Set<String> seen = new HashSet<>(Arrays.asList("project.groupId", "project.artifactId", "project.version"));
+			for (ResolvedPom current = this; current != null; current = current.parent) {
+				if (current.model.getProperties() == null) {
+					continue;
+				}
+				for (Map.Entry<Object, Object> entry : current.model.getProperties().entrySet()) {
+					String key = (String) entry.getKey();
+					String value = (String) entry.getValue();
+					if (seen.add(key) && PropertyTemplate.hasPlaceholders(value)) {
+						for (String name : PropertyTemplate.compile(value).getPropertyNames()) {
+							List<String> keys = result.get(name);
+							if (keys == null) {
+								keys = new ArrayList<>(2);
+								result.put(name, keys);
+							}
+							keys.add(key);
+						}
+					}
 				}
 			}
+			referrers = result;
 		}
-		return properties;
+		return result;
+	}
+
+	/**
+	 * @return The unresolved value of the nearest declaration of the property in this pom or its parents
+	 */
+	private String getRawProperty(String key) {
+		for (ResolvedPom current = this; current != null; current = current.parent) {
+			if (current.model.getProperties() != null && current.model.getProperties().containsKey(key)) {
+				return current.model.getProperties().getProperty(key);
+			}
+		}
+		return null;
 	}
-	
-	protected static final Pattern PROPERTY_PATTERN = Pattern.compile("\\$\\{(.*?)}");
 
 	public String substituteProperties(String value) {
 		return substituteProperties(properties, value);
 	}
 	
 	protected String substituteProperties(Map<String, String> properties, String value) {
-		if (value == null) return null;
-		
-		Matcher matcher = PROPERTY_PATTERN.matcher(value);
-		if (!matcher.find()) return value;
-		
-		StringBuffer buffer = new StringBuffer();
-		do {
-			String name = matcher.group(1);
-			String replacement = properties.get(name);
-			if (replacement == null) {
-				// leave it as it was
-				replacement = matcher.group(0);
-			}
-			matcher.appendReplacement(buffer,  Matcher.quoteReplacement(replacement));
-		} while (matcher.find());
-		matcher.appendTail(buffer);
-		return buffer.toString();
+		if (!PropertyTemplate.hasPlaceholders(value)) {
+			return value;
+		}
+		return PropertyTemplate.compile(value).apply(properties);
 	}
 
 	public File getPomFile() {
@@ -177,26 +419,108 @@ public class ResolvedPom {
 		return model.getArtifactId();
 	}
 	
+	/**
+	 * @return The full maven model, loaded on demand if this pom was resolved from a partial model. Once compacted the
+	 *         model is only softly reachable and may be loaded again. The parts of a loaded model used for resolution
+	 *         are those of the partial model so they match the resolved data even if the pom has since changed
+	 */
 	public Model getModel() {
+		if (modelLoader == null) {
+			return model;
+		}
+		Model result = getLoadedModel();
+		if (result == null) {
+			synchronized (this) {
+				result = getLoadedModel();
+				if (result == null) {
+					try {
+						result = withResolutionModel(modelLoader.call());
+					} catch (Exception e) {
+						throw new RuntimeException("Error loading model for " + getGroupId() + ":" + getArtifactId() + ":" + getVersion(), e);
+					}
+					if (compacted) {
+						softModel = new SoftReference<>(result);
+					} else {
+						loadedModel = result;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private Model withResolutionModel(Model loaded) {
+		loaded.setGroupId(model.getGroupId());
+		loaded.setArtifactId(model.getArtifactId());
+		loaded.setVersion(model.getVersion());
+		loaded.setPackaging(model.getPackaging());
+		loaded.setParent(model.getParent());
+		loaded.setProperties(model.getProperties());
+		loaded.setDependencies(model.getDependencies());
+		loaded.setDependencyManagement(model.getDependencyManagement());
+		return loaded;
+	}
+
+	private Model getLoadedModel() {
+		Model result = loadedModel;
+		if (result == null) {
+			SoftReference<Model> ref = softModel;
+			result = ref == null ? null : ref.get();
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the dependencies and dependency management then releases the full model so that only the partial
+	 * model used for resolution is retained. The partial model's properties and dependency management are kept since
+	 * poms resolved later may inherit them
+	 *
+	 * @return false if there is no partial model so the full model can't be released
+	 */
+	public synchronized boolean compact() {
+		getDependencies();
+		getDependencyManagement();
+		if (modelLoader == null) {
+			return false;
+		}
+		compacted = true;
+		loadedModel = null;
+		return true;
+	}
+
+	public boolean isCompacted() {
+		return compacted;
+	}
+
+	/**
+	 * @return A model with only the parts of the given model used for resolution
+	 */
+	static Model createResolutionModel(Model model) {
+		Model partial = new Model();
+		partial.setGroupId(model.getGroupId());
+		partial.setArtifactId(model.getArtifactId());
+		partial.setVersion(model.getVersion());
+		partial.setPackaging(model.getPackaging());
+		partial.setParent(model.getParent());
+		partial.setProperties(model.getProperties());
+		partial.setDependencies(model.getDependencies());
+		partial.setDependencyManagement(model.getDependencyManagement());
+		return partial;
+	}
+	
+	/**
+	 * @return The model used for resolution which may be a partial model
+	 */
+	Model getResolutionModel() {
 		return model;
 	}
 	
 	public String getGroupId() {
-		ResolvedPomVisitor<String> visitor = new ResolvedPomVisitor<String>() {
-			public String visit(ResolvedPom pom) {
-				return pom.getModel().getGroupId();
-			}
-		};
-		return visitHierarchy(visitor);
+		return groupId;
 	}
 	
 	public String getVersion() {
-		ResolvedPomVisitor<String> visitor = new ResolvedPomVisitor<String>() {
-			public String visit(ResolvedPom pom) {
-				return pom.getModel().getVersion();
-			}
-		};
-		return visitHierarchy(visitor);
+		return version;
 	}
 	
 	protected <T> T visitHierarchy(ResolvedPomVisitor<T> visitor) {
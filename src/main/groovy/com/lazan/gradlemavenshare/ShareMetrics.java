@@ -0,0 +1,193 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Thread safe durations and counts recorded while poms are resolved and shared. Durations are recorded per module and
+ * phase, {@link #DISABLED} records nothing so that callers need not check whether metrics are enabled
+ */
+public class ShareMetrics {
+	public static final ShareMetrics DISABLED = new ShareMetrics(false);
+
+	private final boolean enabled;
+	private final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> durations = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> phaseDurations = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	public ShareMetrics() {
+		this(true);
+	}
+
+	protected ShareMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The start time to pass to {@link #record(String, String, long)}
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time since start to the phase without attributing it to a module
+	 */
+	public void record(String phase, long start) {
+		if (enabled) {
+			getCounter(phaseDurations, phase).addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Adds the time since start to the module's phase
+	 */
+	public void record(String module, String phase, long start) {
+		if (enabled) {
+			long nanos = System.nanoTime() - start;
+			getCounter(phaseDurations, phase).addAndGet(nanos);
+			ConcurrentMap<String, AtomicLong> phases = durations.get(module);
+			if (phases == null) {
+				ConcurrentMap<String, AtomicLong> created = new ConcurrentHashMap<>();
+				phases = durations.putIfAbsent(module, created);
+				if (phases == null) {
+					phases = created;
+				}
+			}
+			getCounter(phases, phase).addAndGet(nanos);
+		}
+	}
+
+	public void increment(String counter) {
+		add(counter, 1);
+	}
+
+	public void add(String counter, long delta) {
+		if (enabled) {
+			getCounter(counters, counter).addAndGet(delta);
+		}
+	}
+
+	private AtomicLong getCounter(ConcurrentMap<String, AtomicLong> map, String key) {
+		AtomicLong counter = map.get(key);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = map.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * @return Milliseconds by phase by module
+	 */
+	public Map<String, Map<String, Double>> getModuleDurations() {
+		Map<String, Map<String, Double>> result = new LinkedHashMap<>();
+		for (String module : sorted(durations.keySet())) {
+			Map<String, Double> phases = new LinkedHashMap<>();
+			Map<String, AtomicLong> moduleDurations = durations.get(module);
+			for (String phase : sorted(moduleDurations.keySet())) {
+				phases.put(phase, toMillis(moduleDurations.get(phase).get()));
+			}
+			result.put(module, phases);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Milliseconds by phase over all modules
+	 */
+	public Map<String, Double> getPhaseDurations() {
+		Map<String, Double> result = new LinkedHashMap<>();
+		for (String phase : sorted(phaseDurations.keySet())) {
+			result.put(phase, toMillis(phaseDurations.get(phase).get()));
+		}
+		return result;
+	}
+
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		for (String counter : sorted(counters.keySet())) {
+			result.put(counter, counters.get(counter).get());
+		}
+		return result;
+	}
+
+	public String toJson() {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("phases", getPhaseDurations());
+		report.put("counters", getCounters());
+		report.put("modules", getModuleDurations());
+		return JsonOutput.prettyPrint(JsonOutput.toJson(report));
+	}
+
+	/**
+	 * @param limit Number of modules and phases to list
+	 * @return Human readable summary of the slowest modules and phases
+	 */
+	public String getSummary(int limit) {
+		StringBuilder summary = new StringBuilder();
+		final Map<String, Map<String, Double>> modules = getModuleDurations();
+		List<String> slowestModules = new ArrayList<>(modules.keySet());
+		Collections.sort(slowestModules, new Comparator<String>() {
+			@Override
+			public int compare(String module1, String module2) {
+				return Double.compare(sum(modules.get(module2)), sum(modules.get(module1)));
+			}
+		});
+		summary.append("Slowest modules:\n");
+		for (String module : slowestModules.subList(0, Math.min(limit, slowestModules.size()))) {
+			summary.append(String.format("  %10.1f ms  %s %s%n", sum(modules.get(module)), module, modules.get(module)));
+		}
+		final Map<String, Double> phases = getPhaseDurations();
+		List<String> slowestPhases = new ArrayList<>(phases.keySet());
+		Collections.sort(slowestPhases, new Comparator<String>() {
+			@Override
+			public int compare(String phase1, String phase2) {
+				return Double.compare(phases.get(phase2), phases.get(phase1));
+			}
+		});
+		summary.append("Slowest phases and actions:\n");
+		for (String phase : slowestPhases.subList(0, Math.min(limit, slowestPhases.size()))) {
+			summary.append(String.format("  %10.1f ms  %s%n", phases.get(phase), phase));
+		}
+		summary.append("Counters: ").append(getCounters());
+		return summary.toString();
+	}
+
+	private static double sum(Map<String, Double> phases) {
+		double sum = 0;
+		for (Double value : phases.values()) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000 / 1000.0;
+	}
+
+	private static List<String> sorted(Iterable<String> keys) {
+		List<String> list = new ArrayList<>();
+		for (String key : keys) {
+			list.add(key);
+		}
+		Collections.sort(list);
+		return list;
+	}
+}
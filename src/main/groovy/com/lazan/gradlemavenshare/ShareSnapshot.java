@@ -0,0 +1,405 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ModuleDependency;
+
+/**
+ * Snapshot ("share lock") of the dependencies added to each project by {@link DependencyShareAction} along with the
+ * fingerprints of the input files (poms, build scripts and gradle.properties) and a hash of the mavenShare rules. While
+ * none of the inputs have changed the dependencies can be added from the snapshot without parsing any poms
+ */
+public class ShareSnapshot {
+	private static final int MAGIC = 0x6D76_6C6B;
+	private static final int FORMAT_VERSION = 2;
+	private static final byte PROJECT_NOTATION = 0;
+	private static final byte MAP_NOTATION = 1;
+	private static final byte STRING_NOTATION = 2;
+
+	public static class SnapshotDependency {
+		private final Map<String, String> mavenDependency;
+		private final byte kind;
+		private final Map<String, String> notation;
+		private final List<Map<String, String>> exclusions;
+
+		protected SnapshotDependency(Map<String, String> mavenDependency, byte kind, Map<String, String> notation, List<Map<String, String>> exclusions) {
+			this.mavenDependency = mavenDependency;
+			this.kind = kind;
+			this.notation = notation;
+			this.exclusions = exclusions;
+		}
+
+		/**
+		 * @return The maven dependency without its exclusions, passed to the {@link ConfigurationResolver} when the
+		 *         snapshot is applied
+		 */
+		public Dependency getMavenDependency() {
+			Dependency dep = new Dependency();
+			dep.setGroupId(mavenDependency.get("groupId"));
+			dep.setArtifactId(mavenDependency.get("artifactId"));
+			dep.setVersion(mavenDependency.get("version"));
+			dep.setType(mavenDependency.get("type"));
+			dep.setClassifier(mavenDependency.get("classifier"));
+			dep.setScope(mavenDependency.get("scope"));
+			dep.setSystemPath(mavenDependency.get("systemPath"));
+			dep.setOptional(mavenDependency.get("optional"));
+			return dep;
+		}
+
+		public boolean isProject() {
+			return kind == PROJECT_NOTATION;
+		}
+
+		/**
+		 * @return The project path for a project dependency, the string notation or the map notation
+		 */
+		public Object getNotation() {
+			return kind == MAP_NOTATION ? notation : notation.get("notation");
+		}
+
+		/**
+		 * @return Exclusions with group and/or module keys
+		 */
+		public List<Map<String, String>> getExclusions() {
+			return exclusions;
+		}
+	}
+
+	private final String rulesHash;
+	private final Map<String, PomFingerprint> inputs;
+	private final Map<String, List<SnapshotDependency>> dependencies;
+
+	protected ShareSnapshot(String rulesHash, Map<String, PomFingerprint> inputs, Map<String, List<SnapshotDependency>> dependencies) {
+		this.rulesHash = rulesHash;
+		this.inputs = inputs;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * @param projects The projects using the mavenShare plugin
+	 * @param sharedDependencies The dependencies shared with each project
+	 * @param pomFiles The pom files of the projects, their parents and imported BOMs, see {@link #getPomFiles(Collection)}
+	 */
+	public static ShareSnapshot create(Project rootProject, List<Project> projects, Map<Project, List<SharedDependency>> sharedDependencies, Collection<File> pomFiles) {
+		Map<String, PomFingerprint> inputs = new LinkedHashMap<>();
+		for (File pomFile : pomFiles) {
+			inputs.put(rootProject.relativePath(pomFile), PomFingerprint.of(pomFile));
+		}
+		for (File scriptFile : getScriptFiles(rootProject, projects)) {
+			inputs.put(rootProject.relativePath(scriptFile), PomFingerprint.of(scriptFile));
+		}
+		Map<String, List<SnapshotDependency>> dependencies = new LinkedHashMap<>();
+		for (Project project : projects) {
+			List<SnapshotDependency> snapshotDeps = new ArrayList<>();
+			List<SharedDependency> sharedDeps = sharedDependencies.get(project);
+			for (SharedDependency sharedDep : sharedDeps == null ? Collections.<SharedDependency> emptyList() : sharedDeps) {
+				snapshotDeps.add(createSnapshotDependency(project, sharedDep));
+			}
+			dependencies.put(project.getPath(), snapshotDeps);
+		}
+		return new ShareSnapshot(hashRules(rootProject, projects), inputs, dependencies);
+	}
+
+	/**
+	 * Collects the pom files reached from the module poms through parents and imported BOMs. A release pom from the
+	 * {@link PomSource} is identified by its GAV, which is declared in one of these files, so it isn't an input. A
+	 * SNAPSHOT pom from the {@link PomSource} may change without any change to the build so it can't be locked
+	 *
+	 * @param poms Module poms with their dependencies resolved
+	 */
+	public static Set<File> getPomFiles(Collection<ResolvedPom> poms) {
+		Set<File> pomFiles = new LinkedHashSet<>();
+		Set<ResolvedPom> visited = new HashSet<>();
+		Deque<ResolvedPom> queue = new ArrayDeque<>(poms);
+		while (!queue.isEmpty()) {
+			ResolvedPom pom = queue.poll();
+			if (!visited.add(pom)) {
+				continue;
+			}
+			if (pom.getPomFile() != null) {
+				pomFiles.add(pom.getPomFile());
+			} else if (pom.getVersion() != null && pom.getVersion().endsWith("-SNAPSHOT")) {
+				throw new RuntimeException(String.format("The share lock can't fingerprint %s:%s:%s from the PomSource, SNAPSHOT poms may change between builds",
+						pom.getGroupId(), pom.getArtifactId(), pom.getVersion()));
+			}
+			if (pom.getParent() != null) {
+				queue.add(pom.getParent());
+			}
+			queue.addAll(pom.getResolvedBoms());
+		}
+		return pomFiles;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static SnapshotDependency createSnapshotDependency(Project project, SharedDependency sharedDep) {
+		Object notation = sharedDep.getNotation();
+		byte kind;
+		Map<String, String> notationMap = new LinkedHashMap<>();
+		if (notation instanceof Project) {
+			kind = PROJECT_NOTATION;
+			notationMap.put("notation", ((Project) notation).getPath());
+		} else if (notation instanceof Map) {
+			kind = MAP_NOTATION;
+			for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) notation).entrySet()) {
+				notationMap.put(String.valueOf(entry.getKey()), entry.getValue() == null ? null : String.valueOf(entry.getValue()));
+			}
+		} else if (notation instanceof CharSequence) {
+			kind = STRING_NOTATION;
+			notationMap.put("notation", notation.toString());
+		} else {
+			throw new RuntimeException(String.format("Cannot snapshot dependency notation %s of type %s in %s", notation,
+					notation == null ? null : notation.getClass().getName(), project.getPath()));
+		}
+		Dependency dep = sharedDep.getMavenDependency();
+		Map<String, String> mavenDependency = new LinkedHashMap<>();
+		mavenDependency.put("groupId", dep.getGroupId());
+		mavenDependency.put("artifactId", dep.getArtifactId());
+		mavenDependency.put("version", dep.getVersion());
+		mavenDependency.put("type", dep.getType());
+		mavenDependency.put("classifier", dep.getClassifier());
+		mavenDependency.put("scope", dep.getScope());
+		mavenDependency.put("systemPath", dep.getSystemPath());
+		mavenDependency.put("optional", dep.getOptional());
+		List<Map<String, String>> exclusions = new ArrayList<>();
+		for (Exclusion exclusion : dep.getExclusions()) {
+			Map<String, String> exclusionMap = new LinkedHashMap<>();
+			if (exclusion.getGroupId() != null) {
+				exclusionMap.put("group", exclusion.getGroupId());
+			}
+			if (exclusion.getArtifactId() != null) {
+				exclusionMap.put("module", exclusion.getArtifactId());
+			}
+			exclusions.add(exclusionMap);
+		}
+		return new SnapshotDependency(mavenDependency, kind, notationMap, exclusions);
+	}
+
+	/**
+	 * Rules implemented in code (resolvers and share actions) are identified by class name, changes to their code are
+	 * detected through the build script fingerprints
+	 */
+	public static String hashRules(Project rootProject, List<Project> projects) {
+		MavenShareRootModel rootModel = rootProject.getExtensions().getByType(MavenShareRootModel.class);
+		StringBuilder rules = new StringBuilder();
+		rules.append(FORMAT_VERSION).append('|').append(rootModel.isAllowUnsupportedDependencyProperties());
+		for (Project project : projects) {
+			MavenShareModel msm = project.getExtensions().getByType(MavenShareModel.class);
+			rules.append('\n').append(project.getPath());
+			rules.append('|').append(rootProject.relativePath(project.file(msm.getPomFile())));
+			rules.append('|').append(msm.getConfigurationResolver().getClass().getName());
+			rules.append('|').append(msm.getExcludes());
+			for (Map<?, ?> resolveConfig : msm.getResolvers()) {
+				rules.append('|').append(resolveConfig.get("attributes")).append('=').append(resolveConfig.get("resolver").getClass().getName());
+			}
+			for (ShareAction shareAction : msm.getShareActions()) {
+				rules.append('|').append(shareAction.getClass().getName());
+			}
+		}
+		return PersistentPomCache.hash(rules.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gradle has no API listing the scripts applied with {@code apply from:} so the build scripts are approximated by
+	 * the build file and every *.gradle file in the directory of the root and mavenShare projects, the *.gradle files
+	 * under the root gradle directory and the gradle.properties in these directories and the Gradle user home
+	 */
+	protected static Set<File> getScriptFiles(Project rootProject, List<Project> projects) {
+		Set<File> result = new LinkedHashSet<>();
+		List<Project> scriptProjects = new ArrayList<>();
+		scriptProjects.add(rootProject);
+		scriptProjects.addAll(projects);
+		for (Project project : scriptProjects) {
+			if (project.getBuildFile().isFile()) {
+				result.add(project.getBuildFile());
+			}
+			addScriptFiles(project.getProjectDir(), false, result);
+		}
+		addScriptFiles(new File(rootProject.getRootDir(), "gradle"), true, result);
+		File userProperties = new File(rootProject.getGradle().getGradleUserHomeDir(), "gradle.properties");
+		if (userProperties.isFile()) {
+			result.add(userProperties);
+		}
+		return result;
+	}
+
+	private static void addScriptFiles(File dir, boolean recursive, Set<File> result) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				if (recursive) {
+					addScriptFiles(file, true, result);
+				}
+			} else if (name.endsWith(".gradle") || name.endsWith(".gradle.kts") || name.equals("gradle.properties")) {
+				result.add(file);
+			}
+		}
+	}
+
+	/**
+	 * @return A description of the first input which has changed or null if the snapshot is current
+	 */
+	public String getStaleReason(Project rootProject, List<Project> projects) {
+		if (!rulesHash.equals(hashRules(rootProject, projects))) {
+			return "the mavenShare projects or rules have changed";
+		}
+		for (File scriptFile : getScriptFiles(rootProject, projects)) {
+			String path = rootProject.relativePath(scriptFile);
+			if (!inputs.containsKey(path)) {
+				return path + " has been added";
+			}
+		}
+		for (Map.Entry<String, PomFingerprint> entry : inputs.entrySet()) {
+			File file = rootProject.file(entry.getKey());
+			PomFingerprint fingerprint = entry.getValue();
+			if (!fingerprint.isUnchanged(file) && (!file.isFile() || !PomFingerprint.of(file).hasSameContent(fingerprint))) {
+				return entry.getKey() + " has changed";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the project's dependencies from the snapshot to the configurations given by the project's
+	 * {@link ConfigurationResolver}
+	 *
+	 * @return The number of dependencies added
+	 */
+	public int apply(Project project) {
+		List<SnapshotDependency> snapshotDeps = dependencies.get(project.getPath());
+		if (snapshotDeps == null) {
+			throw new RuntimeException("No dependencies in snapshot for " + project.getPath());
+		}
+		ConfigurationResolver configurationResolver = project.getExtensions().getByType(MavenShareModel.class).getConfigurationResolver();
+		for (SnapshotDependency snapshotDep : snapshotDeps) {
+			Object notation = snapshotDep.isProject() ? project.project((String) snapshotDep.getNotation()) : snapshotDep.getNotation();
+			org.gradle.api.artifacts.Dependency gradleDep = project.getDependencies().create(notation);
+			if (!snapshotDep.getExclusions().isEmpty()) {
+				for (Map<String, String> exclusion : snapshotDep.getExclusions()) {
+					((ModuleDependency) gradleDep).exclude(exclusion);
+				}
+			}
+			configurationResolver.getConfiguration(project, snapshotDep.getMavenDependency()).getDependencies().add(gradleDep);
+		}
+		return snapshotDeps.size();
+	}
+
+	public Map<String, List<SnapshotDependency>> getDependencies() {
+		return Collections.unmodifiableMap(dependencies);
+	}
+
+	public void write(File snapshotFile) {
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		File parentDir = snapshotFile.getAbsoluteFile().getParentFile();
+		parentDir.mkdirs();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			StringTableWriter writer = new StringTableWriter(out);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			writer.writeString(rulesHash);
+			out.writeInt(inputs.size());
+			for (Map.Entry<String, PomFingerprint> entry : inputs.entrySet()) {
+				writer.writeString(entry.getKey());
+				out.writeLong(entry.getValue().getSize());
+				out.writeLong(entry.getValue().getLastModified());
+				writer.writeString(entry.getValue().getContentHash());
+			}
+			out.writeInt(dependencies.size());
+			for (Map.Entry<String, List<SnapshotDependency>> entry : dependencies.entrySet()) {
+				writer.writeString(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (SnapshotDependency dep : entry.getValue()) {
+					writer.writeMap(dep.mavenDependency);
+					out.writeByte(dep.kind);
+					writer.writeMap(dep.notation);
+					out.writeInt(dep.exclusions.size());
+					for (Map<String, String> exclusion : dep.exclusions) {
+						writer.writeMap(exclusion);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing " + snapshotFile, e);
+		}
+		if (snapshotFile.exists() && !snapshotFile.delete()) {
+			throw new RuntimeException("Unable to delete " + snapshotFile);
+		}
+		if (!tempFile.renameTo(snapshotFile)) {
+			throw new RuntimeException("Unable to rename " + tempFile + " to " + snapshotFile);
+		}
+	}
+
+	/**
+	 * @return The snapshot or null if the file does not exist or is unreadable
+	 */
+	public static ShareSnapshot read(File snapshotFile) {
+		if (!snapshotFile.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+			StringTableReader reader = new StringTableReader(in, snapshotFile.length());
+			String rulesHash = reader.readString();
+			Map<String, PomFingerprint> inputs = new LinkedHashMap<>();
+			int inputCount = reader.readLength();
+			for (int i = 0; i < inputCount; ++i) {
+				String path = reader.readString();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				inputs.put(path, new PomFingerprint(size, lastModified, reader.readString()));
+			}
+			Map<String, List<SnapshotDependency>> dependencies = new LinkedHashMap<>();
+			int projectCount = reader.readLength();
+			for (int i = 0; i < projectCount; ++i) {
+				String path = reader.readString();
+				int depCount = reader.readLength();
+				List<SnapshotDependency> deps = new ArrayList<>(depCount);
+				for (int j = 0; j < depCount; ++j) {
+					Map<String, String> mavenDependency = reader.readMap();
+					byte kind = in.readByte();
+					Map<String, String> notation = reader.readMap();
+					int exclusionCount = reader.readLength();
+					List<Map<String, String>> exclusions = new ArrayList<>(exclusionCount);
+					for (int k = 0; k < exclusionCount; ++k) {
+						exclusions.add(reader.readMap());
+					}
+					deps.add(new SnapshotDependency(mavenDependency, kind, notation, exclusions));
+				}
+				dependencies.put(path, deps);
+			}
+			return new ShareSnapshot(rulesHash, inputs, dependencies);
+		} catch (IOException | RuntimeException e) {
+			// corrupt or truncated snapshot, resolve the poms instead
+			return null;
+		}
+	}
+}
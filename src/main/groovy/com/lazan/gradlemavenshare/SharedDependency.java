@@ -0,0 +1,36 @@
+package com.lazan.gradlemavenshare;
+
+import org.apache.maven.model.Dependency;
+import org.gradle.api.artifacts.Configuration;
+
+/**
+ * A maven dependency after the mavenShare rules are applied, ie the configuration it is added to and the Gradle
+ * dependency notation
+ */
+public class SharedDependency {
+	private final Dependency mavenDependency;
+	private final Configuration configuration;
+	private final Object notation;
+
+	public SharedDependency(Dependency mavenDependency, Configuration configuration, Object notation) {
+		super();
+		this.mavenDependency = mavenDependency;
+		this.configuration = configuration;
+		this.notation = notation;
+	}
+
+	public Dependency getMavenDependency() {
+		return mavenDependency;
+	}
+
+	public Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return Dependency notation returned by the {@link DependencyResolver}
+	 */
+	public Object getNotation() {
+		return notation;
+	}
+}
@@ -0,0 +1,164 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JVM wide cache of {@link ResolvedPom}s which outlives a build so that parent poms and poms from a {@link PomSource}
+ * are resolved once per Gradle daemon rather than once per build. Poms with a file are keyed by file and are only
+ * reused while the file's {@link PomFingerprint} is unchanged, other poms are keyed by GAV. SNAPSHOT poms without a
+ * file are not cached since the {@link PomSource} may return a newer pom for the same GAV. A pom is only reused if its
+ * parent and the BOMs imported into its dependency management are still the cached poms, so the importers of a
+ * SNAPSHOT BOM are resolved again by every build. The least recently used poms are evicted once the cache is full
+ */
+public class SharedPomCache {
+	public static final int DEFAULT_MAX_SIZE = 2000;
+	private static final SharedPomCache INSTANCE = new SharedPomCache(DEFAULT_MAX_SIZE);
+
+	private static class Entry {
+		final ResolvedPom pom;
+		PomFingerprint fingerprint;
+
+		Entry(ResolvedPom pom, PomFingerprint fingerprint) {
+			this.pom = pom;
+			this.fingerprint = fingerprint;
+		}
+
+		/**
+		 * @return The BOM poms imported by the pom, recorded once its dependency management is resolved
+		 */
+		List<ResolvedPom> getBoms() {
+			return pom.getResolvedBoms();
+		}
+	}
+
+	private final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+			if (size() > maxSize) {
+				++evictions;
+				return true;
+			}
+			return false;
+		}
+	};
+	private int maxSize;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public SharedPomCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return The cache shared by all builds in this JVM
+	 */
+	public static SharedPomCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param maxSize Maximum number of poms, the least recently used poms are evicted if the cache is larger
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		while (entries.size() > maxSize) {
+			Object eldest = entries.keySet().iterator().next();
+			entries.remove(eldest);
+			++evictions;
+		}
+	}
+
+	/**
+	 * @param key Canonical pom file or GAV
+	 * @return The cached pom if it and its parents are unchanged, otherwise null
+	 */
+	public synchronized ResolvedPom getResolvedPom(Object key) {
+		ResolvedPom pom = lookup(key);
+		if (pom == null) {
+			++misses;
+		} else {
+			++hits;
+		}
+		return pom;
+	}
+
+	public synchronized void addResolvedPom(ResolvedPom pom) {
+		if (pom.getPomFile() != null) {
+			File pomFile = canonicalFile(pom.getPomFile());
+			entries.put(pomFile, new Entry(pom, PomFingerprint.of(pomFile)));
+		} else if (!isSnapshot(pom.getVersion())) {
+			entries.put(Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion()), new Entry(pom, null));
+		}
+	}
+
+	private ResolvedPom lookup(Object key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.fingerprint != null && !entry.fingerprint.isUnchanged((File) key)) {
+			File pomFile = (File) key;
+			PomFingerprint current = pomFile.isFile() ? PomFingerprint.of(pomFile) : null;
+			if (current == null || !current.hasSameContent(entry.fingerprint)) {
+				entries.remove(key);
+				return null;
+			}
+			entry.fingerprint = current;
+		}
+		ResolvedPom parent = entry.pom.getParent();
+		if (parent != null && lookup(getKey(parent)) != parent) {
+			entries.remove(key);
+			return null;
+		}
+		for (ResolvedPom bom : entry.getBoms()) {
+			if (lookup(getKey(bom)) != bom) {
+				entries.remove(key);
+				return null;
+			}
+		}
+		return entry.pom;
+	}
+
+	protected boolean isSnapshot(String version) {
+		return version != null && version.endsWith("-SNAPSHOT");
+	}
+
+	private Object getKey(ResolvedPom pom) {
+		return pom.getPomFile() != null
+				? canonicalFile(pom.getPomFile())
+				: Gav.of(pom.getGroupId(), pom.getArtifactId(), pom.getVersion());
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	private static File canonicalFile(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
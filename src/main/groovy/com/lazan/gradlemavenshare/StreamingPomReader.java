@@ -0,0 +1,210 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Reads the parts of a pom which are used by {@link ResolvedPom} (coordinates, parent, properties, dependencies and
+ * dependency management) into a partial {@link Model}. All other elements (build, reporting, profiles etc) are skipped
+ * without creating any objects. Uses the same pull parser as the MavenXpp3Reader and trims values in the same way
+ */
+class StreamingPomReader {
+	public Model read(InputStream in) throws IOException, XmlPullParserException {
+		XmlPullParser parser = createParser(in);
+		Model model = new Model();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String name = parser.getName();
+			if ("groupId".equals(name)) {
+				model.setGroupId(readText(parser));
+			} else if ("artifactId".equals(name)) {
+				model.setArtifactId(readText(parser));
+			} else if ("version".equals(name)) {
+				model.setVersion(readText(parser));
+			} else if ("packaging".equals(name)) {
+				model.setPackaging(readText(parser));
+			} else if ("parent".equals(name)) {
+				model.setParent(readParent(parser));
+			} else if ("properties".equals(name)) {
+				while (parser.nextTag() == XmlPullParser.START_TAG) {
+					String key = parser.getName();
+					model.addProperty(key, readText(parser));
+				}
+			} else if ("dependencies".equals(name)) {
+				model.setDependencies(readDependencies(parser));
+			} else if ("dependencyManagement".equals(name)) {
+				DependencyManagement management = new DependencyManagement();
+				while (parser.nextTag() == XmlPullParser.START_TAG) {
+					if ("dependencies".equals(parser.getName())) {
+						management.setDependencies(readDependencies(parser));
+					} else {
+						skip(parser);
+					}
+				}
+				model.setDependencyManagement(management);
+			} else {
+				skip(parser);
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * @return The parent declared by the pom or null if there is no parent
+	 */
+	public Parent readParent(InputStream in) throws IOException, XmlPullParserException {
+		XmlPullParser parser = createParser(in);
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			if ("parent".equals(parser.getName())) {
+				return readParent(parser);
+			}
+			skip(parser);
+		}
+		return null;
+	}
+
+	/**
+	 * @return A model with only the coordinates and parent declared by the pom, reading stops once they are all found
+	 */
+	public Model readHeader(InputStream in) throws IOException, XmlPullParserException {
+		XmlPullParser parser = createParser(in);
+		Model model = new Model();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String name = parser.getName();
+			if ("groupId".equals(name)) {
+				model.setGroupId(readText(parser));
+			} else if ("artifactId".equals(name)) {
+				model.setArtifactId(readText(parser));
+			} else if ("version".equals(name)) {
+				model.setVersion(readText(parser));
+			} else if ("parent".equals(name)) {
+				model.setParent(readParent(parser));
+			} else {
+				skip(parser);
+			}
+			if (model.getGroupId() != null && model.getArtifactId() != null && model.getVersion() != null && model.getParent() != null) {
+				break;
+			}
+		}
+		return model;
+	}
+
+	protected XmlPullParser createParser(InputStream in) throws IOException, XmlPullParserException {
+		XmlPullParser parser = new MXParser();
+		parser.setInput(ReaderFactory.newXmlReader(in));
+		if (parser.nextTag() != XmlPullParser.START_TAG || !"project".equals(parser.getName())) {
+			throw new XmlPullParserException("Expected root element 'project' but found '" + parser.getName() + "'", parser, null);
+		}
+		return parser;
+	}
+
+	protected Parent readParent(XmlPullParser parser) throws IOException, XmlPullParserException {
+		Parent parent = new Parent();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String name = parser.getName();
+			if ("groupId".equals(name)) {
+				parent.setGroupId(readText(parser));
+			} else if ("artifactId".equals(name)) {
+				parent.setArtifactId(readText(parser));
+			} else if ("version".equals(name)) {
+				parent.setVersion(readText(parser));
+			} else if ("relativePath".equals(name)) {
+				parent.setRelativePath(readText(parser));
+			} else {
+				skip(parser);
+			}
+		}
+		return parent;
+	}
+
+	protected List<Dependency> readDependencies(XmlPullParser parser) throws IOException, XmlPullParserException {
+		List<Dependency> dependencies = new ArrayList<>();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			if ("dependency".equals(parser.getName())) {
+				dependencies.add(readDependency(parser));
+			} else {
+				skip(parser);
+			}
+		}
+		return dependencies;
+	}
+
+	protected Dependency readDependency(XmlPullParser parser) throws IOException, XmlPullParserException {
+		Dependency dep = new Dependency();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String name = parser.getName();
+			if ("groupId".equals(name)) {
+				dep.setGroupId(readText(parser));
+			} else if ("artifactId".equals(name)) {
+				dep.setArtifactId(readText(parser));
+			} else if ("version".equals(name)) {
+				dep.setVersion(readText(parser));
+			} else if ("type".equals(name)) {
+				dep.setType(readText(parser));
+			} else if ("classifier".equals(name)) {
+				dep.setClassifier(readText(parser));
+			} else if ("scope".equals(name)) {
+				dep.setScope(readText(parser));
+			} else if ("systemPath".equals(name)) {
+				dep.setSystemPath(readText(parser));
+			} else if ("optional".equals(name)) {
+				dep.setOptional(readText(parser));
+			} else if ("exclusions".equals(name)) {
+				while (parser.nextTag() == XmlPullParser.START_TAG) {
+					if ("exclusion".equals(parser.getName())) {
+						dep.addExclusion(readExclusion(parser));
+					} else {
+						skip(parser);
+					}
+				}
+			} else {
+				skip(parser);
+			}
+		}
+		return dep;
+	}
+
+	protected Exclusion readExclusion(XmlPullParser parser) throws IOException, XmlPullParserException {
+		Exclusion exclusion = new Exclusion();
+		while (parser.nextTag() == XmlPullParser.START_TAG) {
+			String name = parser.getName();
+			if ("groupId".equals(name)) {
+				exclusion.setGroupId(readText(parser));
+			} else if ("artifactId".equals(name)) {
+				exclusion.setArtifactId(readText(parser));
+			} else {
+				skip(parser);
+			}
+		}
+		return exclusion;
+	}
+
+	protected String readText(XmlPullParser parser) throws IOException, XmlPullParserException {
+		return parser.nextText().trim();
+	}
+
+	protected void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = parser.next();
+			if (event == XmlPullParser.START_TAG) {
+				++depth;
+			} else if (event == XmlPullParser.END_TAG) {
+				--depth;
+			} else if (event == XmlPullParser.END_DOCUMENT) {
+				throw new XmlPullParserException("Unexpected end of document", parser, null);
+			}
+		}
+	}
+}
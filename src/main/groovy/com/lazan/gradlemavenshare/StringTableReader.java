@@ -0,0 +1,71 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the strings written by a {@link StringTableWriter}. Lengths and counts are checked against the size of the
+ * input so that a corrupt file fails with an IOException rather than a huge allocation
+ */
+class StringTableReader {
+	protected final DataInputStream in;
+	private final long size;
+	private final List<String> strings = new ArrayList<>();
+
+	/**
+	 * @param size Size of the input, lengths and counts larger than the input are rejected as corrupt
+	 */
+	public StringTableReader(DataInputStream in, long size) {
+		this.in = in;
+		this.size = size;
+	}
+
+	public Map<String, String> readMap() throws IOException {
+		int count = readLength();
+		Map<String, String> map = new LinkedHashMap<>();
+		for (int i = 0; i < count; ++i) {
+			String key = readString();
+			map.put(key, readString());
+		}
+		return map;
+	}
+
+	public String readString() throws IOException {
+		int index = in.readInt();
+		if (index == -1) {
+			return null;
+		}
+		if (index >= 0) {
+			if (index >= strings.size()) throw new IOException("Invalid string index " + index);
+			return strings.get(index);
+		}
+		if (index != -2) {
+			throw new IOException("Invalid string index " + index);
+		}
+		byte[] bytes = new byte[readLength()];
+		in.readFully(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(value);
+		return value;
+	}
+
+	/**
+	 * Reads a length or count which may not be negative
+	 */
+	public int readLength() throws IOException {
+		int length = in.readInt();
+		checkLength(length);
+		return length;
+	}
+
+	public void checkLength(int length) throws IOException {
+		if (length < 0 || length > size) {
+			throw new IOException("Invalid length " + length);
+		}
+	}
+}
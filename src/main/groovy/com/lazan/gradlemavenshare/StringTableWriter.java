@@ -0,0 +1,45 @@
+package com.lazan.gradlemavenshare;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes strings via a string table so that repeated values (group ids, scopes, configurations etc) are written once.
+ * Used by the binary files of the {@link PersistentPomCache} and the {@link ShareSnapshot}, see {@link StringTableReader}
+ */
+class StringTableWriter {
+	protected final DataOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	public StringTableWriter(DataOutputStream out) {
+		this.out = out;
+	}
+
+	public void writeMap(Map<String, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			writeString(entry.getKey());
+			writeString(entry.getValue());
+		}
+	}
+
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		Integer index = strings.get(value);
+		if (index != null) {
+			out.writeInt(index);
+			return;
+		}
+		strings.put(value, strings.size());
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(-2);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
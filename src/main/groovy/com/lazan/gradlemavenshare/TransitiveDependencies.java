@@ -0,0 +1,256 @@
+package com.lazan.gradlemavenshare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.gradle.api.Project;
+
+/**
+ * Transitive dependencies of the modules in the build. Only the modules are traversed, external dependencies are
+ * leaves since their poms are not resolved. Follows maven's rules
+ * <ul>
+ * <li>Nearest wins mediation, the first declaration wins if two dependencies are at the same depth</li>
+ * <li>Test and provided dependencies are not transitive, the scope of other dependencies is derived from the scope
+ * of the dependency they are reached through</li>
+ * <li>Optional dependencies are not transitive</li>
+ * <li>Exclusions remove a dependency and everything reached only through it</li>
+ * <li>The dependency management of the module applies to its transitive dependencies</li>
+ * </ul>
+ * Each module's closure is computed once for each set of exclusions it is reached with and reused by the modules
+ * which depend on it. The exclusions are part of the key since they can reveal a dependency which lost mediation
+ * within the closure
+ */
+public class TransitiveDependencies {
+	private static final Comparator<Node> BY_DEPTH = new Comparator<Node>() {
+		@Override
+		public int compare(Node node1, Node node2) {
+			return Integer.compare(node1.depth, node2.depth);
+		}
+	};
+
+	/**
+	 * A dependency in a module's closure
+	 */
+	private static class Node {
+		final Dependency dependency;
+		final String key;
+		final int depth;
+		final boolean optional;
+		final Path path;
+		final Project project;
+
+		Node(Dependency dependency, String key, int depth, boolean optional, Path path, Project project) {
+			this.dependency = dependency;
+			this.key = key;
+			this.depth = depth;
+			this.optional = optional;
+			this.path = path;
+			this.project = project;
+		}
+	}
+
+	/**
+	 * The modules a dependency is reached through, tails are shared between the closures
+	 */
+	private static class Path {
+		final String key;
+		final Project project;
+		final Path next;
+
+		Path(String key, Project project, Path next) {
+			this.key = key;
+			this.project = project;
+			this.next = next;
+		}
+	}
+
+	private final ModuleGraph moduleGraph;
+	private final ProjectResolver resolver;
+	private final Map<Project, Map<Set<String>, List<Node>>> closures = new HashMap<>();
+	private final Map<Project, List<Dependency>> dependencies = new HashMap<>();
+	private final List<Project> computing = new ArrayList<>();
+
+	public TransitiveDependencies(ModuleGraph moduleGraph, ProjectResolver resolver) {
+		this.moduleGraph = moduleGraph;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * @return The direct and transitive dependencies of the module with mediated versions and scopes, nearest first
+	 * @throws RuntimeException if the project isn't a module or the modules depend on each other in a cycle
+	 */
+	public synchronized List<Dependency> getDependencies(Project project) {
+		List<Dependency> result = dependencies.get(project);
+		if (result == null) {
+			List<Node> closure = getClosure(project, Collections.<String> emptySet());
+			result = new ArrayList<>(closure.size());
+			for (Node node : closure) {
+				result.add(node.dependency);
+			}
+			result = Collections.unmodifiableList(result);
+			dependencies.put(project, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param exclusions groupId:artifactId patterns excluded by the dependencies the module is reached through
+	 */
+	private List<Node> getClosure(Project project, Set<String> exclusions) {
+		Map<Set<String>, List<Node>> projectClosures = closures.get(project);
+		if (projectClosures == null) {
+			projectClosures = new HashMap<>();
+			closures.put(project, projectClosures);
+		}
+		List<Node> closure = projectClosures.get(exclusions);
+		if (closure == null) {
+			if (computing.contains(project)) {
+				List<Project> cycle = new ArrayList<>(computing.subList(computing.indexOf(project), computing.size()));
+				cycle.add(project);
+				throw new RuntimeException("Cyclic module dependency " + cycle);
+			}
+			ResolvedPom pom = moduleGraph.getPom(project);
+			if (pom == null) {
+				throw new RuntimeException(project + " is not a module");
+			}
+			computing.add(project);
+			try {
+				closure = createClosure(pom, exclusions);
+			} finally {
+				computing.remove(computing.size() - 1);
+			}
+			projectClosures.put(exclusions, closure);
+		}
+		return closure;
+	}
+
+	private List<Node> createClosure(ResolvedPom pom, Set<String> exclusions) {
+		List<Node> candidates = new ArrayList<>();
+		List<Dependency> directDeps = new ArrayList<>();
+		for (Dependency directDep : pom.getDependencies()) {
+			if (!isExcluded(exclusions, directDep)) {
+				directDeps.add(directDep);
+			}
+		}
+		for (Dependency directDep : directDeps) {
+			Dependency dep = directDep.clone();
+			dep.setScope(getScope(directDep));
+			Project project = resolver.isProject(directDep) ? resolver.getProject(directDep) : null;
+			candidates.add(new Node(dep, createKey(dep), 1, dep.isOptional(), null, project));
+		}
+		for (int i = 0; i < directDeps.size(); ++i) {
+			Node directNode = candidates.get(i);
+			if (directNode.project == null || "system".equals(directNode.dependency.getScope())) {
+				continue;
+			}
+			for (Node node : getClosure(directNode.project, addExclusions(exclusions, directNode.dependency))) {
+				String scope = deriveScope(directNode.dependency.getScope(), node.dependency.getScope());
+				if (node.optional || scope == null) {
+					continue;
+				}
+				Dependency dep = node.dependency.clone();
+				dep.setScope(scope);
+				Dependency managedDep = pom.getDependencyManagement().get(pom.createManagementKey(dep));
+				if (managedDep != null) {
+					if (managedDep.getVersion() != null) {
+						dep.setVersion(managedDep.getVersion());
+					}
+					if (managedDep.getScope() != null) {
+						dep.setScope(managedDep.getScope());
+					}
+				}
+				Path path = new Path(directNode.key, directNode.project, node.path);
+				candidates.add(new Node(dep, node.key, node.depth + 1, directNode.optional, path, node.project));
+			}
+		}
+		// a stable sort keeps declaration order within a depth so a candidate's path is decided before the candidate
+		Collections.sort(candidates, BY_DEPTH);
+		Map<String, Node> selected = new LinkedHashMap<>();
+		for (Node candidate : candidates) {
+			if (!selected.containsKey(candidate.key) && isSelected(candidate.path, selected)) {
+				selected.put(candidate.key, candidate);
+			}
+		}
+		return new ArrayList<>(selected.values());
+	}
+
+	/**
+	 * @return true if every module on the path won mediation, otherwise the dependency was reached through a module
+	 *         which is excluded or replaced by a nearer version
+	 */
+	private static boolean isSelected(Path path, Map<String, Node> selected) {
+		for (Path current = path; current != null; current = current.next) {
+			Node node = selected.get(current.key);
+			if (node == null || node.project != current.project) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The scope of a transitive dependency or null if it isn't transitive
+	 */
+	protected String deriveScope(String scope, String transitiveScope) {
+		if ("test".equals(transitiveScope) || "provided".equals(transitiveScope)) {
+			return null;
+		}
+		if ("system".equals(transitiveScope) || "compile".equals(scope)) {
+			return transitiveScope;
+		}
+		if ("runtime".equals(scope) || "test".equals(scope) || "provided".equals(scope)) {
+			return scope;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The exclusions with those of the dependency added
+	 */
+	private static Set<String> addExclusions(Set<String> exclusions, Dependency dependency) {
+		if (dependency.getExclusions() == null || dependency.getExclusions().isEmpty()) {
+			return exclusions;
+		}
+		Set<String> result = new TreeSet<>(exclusions);
+		for (Exclusion exclusion : dependency.getExclusions()) {
+			result.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+		}
+		return result;
+	}
+
+	protected boolean isExcluded(Set<String> exclusions, Dependency transitiveDep) {
+		for (String exclusion : exclusions) {
+			int colonIndex = exclusion.indexOf(':');
+			if (matches(exclusion.substring(0, colonIndex), transitiveDep.getGroupId()) && matches(exclusion.substring(colonIndex + 1), transitiveDep.getArtifactId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(String pattern, String value) {
+		return "*".equals(pattern) || (pattern != null && pattern.equals(value));
+	}
+
+	private static String getScope(Dependency dependency) {
+		return dependency.getScope() == null ? "compile" : dependency.getScope();
+	}
+
+	/**
+	 * @return The conflict key, dependencies with the same key are mediated
+	 */
+	protected String createKey(Dependency dependency) {
+		String type = dependency.getType() == null ? "jar" : dependency.getType();
+		String classifier = dependency.getClassifier() == null ? "" : dependency.getClassifier();
+		return dependency.getGroupId() + ":" + dependency.getArtifactId() + ":" + type + ":" + classifier;
+	}
+}
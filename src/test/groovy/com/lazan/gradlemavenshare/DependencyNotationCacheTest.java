@@ -0,0 +1,122 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.ExtensionContainer;
+import org.junit.Test;
+
+public class DependencyNotationCacheTest {
+	private final DependencyNotationCache cache = new DependencyNotationCache();
+	private final ProjectResolver projectResolver = mock(ProjectResolver.class);
+	private final Project project1 = mock(Project.class);
+	private final Project project2 = mock(Project.class);
+
+	@Test
+	public void testCacheableNotationIsShared() {
+		CacheableDependencyResolver resolver = mock(CacheableDependencyResolver.class);
+		Dependency dep1 = createDependency("spring-context", "4.3.0");
+		Dependency dep2 = createDependency("spring-context", "4.3.0");
+		Map<String, String> notation = new LinkedHashMap<>();
+		notation.put("name", "spring-context");
+		when(resolver.resolve(project1, dep1, projectResolver)).thenReturn(notation);
+
+		Object notation1 = cache.getNotation(project1, dep1, resolver, projectResolver);
+		Object notation2 = cache.getNotation(project2, dep2, resolver, projectResolver);
+		assertSame(notation1, notation2);
+		assertEquals(notation, notation1);
+		verify(resolver, times(1)).resolve(project1, dep1, projectResolver);
+		assertEquals(1L, cache.getHitCount());
+		assertEquals(1L, cache.getMissCount());
+
+		// another version is a different notation
+		Dependency dep3 = createDependency("spring-context", "4.3.1");
+		when(resolver.resolve(project2, dep3, projectResolver)).thenReturn("com.foo:spring-context:4.3.1");
+		cache.getNotation(project2, dep3, resolver, projectResolver);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testOtherResolversAreNotCached() {
+		DependencyResolver resolver = mock(DependencyResolver.class);
+		Dependency dep = createDependency("junit", "4.12");
+		when(resolver.resolve(project1, dep, projectResolver)).thenReturn("junit:junit:4.12");
+		cache.getNotation(project1, dep, resolver, projectResolver);
+		cache.getNotation(project1, dep, resolver, projectResolver);
+		verify(resolver, times(2)).resolve(project1, dep, projectResolver);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testSystemPathIsValidated() {
+		Project rootProject = mock(Project.class);
+		ExtensionContainer extensions = mock(ExtensionContainer.class);
+		when(project1.getRootProject()).thenReturn(rootProject);
+		when(project2.getRootProject()).thenReturn(rootProject);
+		when(rootProject.getExtensions()).thenReturn(extensions);
+		when(extensions.getByType(MavenShareRootModel.class)).thenReturn(new MavenShareRootModel());
+		DefaultDependencyResolver resolver = new DefaultDependencyResolver();
+
+		Dependency dep = createDependency("tools", "1.0");
+		assertEquals(resolver.resolve(project1, dep, projectResolver), cache.getNotation(project1, dep, resolver, projectResolver));
+		// the same coordinates with a system path in another module are validated rather than taken from the cache
+		Dependency systemDep = createDependency("tools", "1.0");
+		systemDep.setScope("system");
+		systemDep.setSystemPath("/opt/tools.jar");
+		try {
+			cache.getNotation(project2, systemDep, resolver, projectResolver);
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("systemPath='/opt/tools.jar' not supported for com.foo:tools:1.0"));
+		}
+		assertEquals(0L, cache.getHitCount());
+	}
+
+	@Test
+	public void testExcludes() {
+		assertSame(Collections.emptyList(), cache.getExcludes(createDependency("junit", "4.12")));
+
+		Dependency dep1 = createDependency("spring-context", "4.3.0");
+		dep1.addExclusion(createExclusion("commons-logging", "commons-logging"));
+		dep1.addExclusion(createExclusion("org.slf4j", null));
+		Dependency dep2 = createDependency("spring-core", "4.3.0");
+		dep2.addExclusion(createExclusion("commons-logging", "commons-logging"));
+		dep2.addExclusion(createExclusion("org.slf4j", null));
+
+		List<Map<String, String>> excludes = cache.getExcludes(dep1);
+		assertSame(excludes, cache.getExcludes(dep2));
+		assertEquals(2, excludes.size());
+		assertEquals("commons-logging", excludes.get(0).get("module"));
+		assertTrue(excludes.get(1).containsKey("group"));
+		assertEquals(1, excludes.get(1).size());
+	}
+
+	private Dependency createDependency(String artifactId, String version) {
+		Dependency dep = new Dependency();
+		dep.setGroupId("com.foo");
+		dep.setArtifactId(artifactId);
+		dep.setVersion(version);
+		return dep;
+	}
+
+	private Exclusion createExclusion(String groupId, String artifactId) {
+		Exclusion exclusion = new Exclusion();
+		exclusion.setGroupId(groupId);
+		exclusion.setArtifactId(artifactId);
+		return exclusion;
+	}
+}
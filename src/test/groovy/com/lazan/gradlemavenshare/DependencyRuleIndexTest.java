@@ -0,0 +1,65 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.junit.Test;
+
+public class DependencyRuleIndexTest {
+	@Test
+	public void testFirstMatchWins() {
+		DependencyRuleIndex<String> index = new DependencyRuleIndex<>();
+		index.add(attributes("scope", "test"), "test scope");
+		index.add(attributes("groupId", "com.foo", "artifactId", "bar"), "bar");
+		index.add(attributes("groupId", "com.foo"), "foo group");
+		index.add(attributes("artifactId", "baz"), "baz");
+
+		assertEquals("bar", index.getValue(dependency("com.foo", "bar", null)));
+		assertEquals("test scope", index.getValue(dependency("com.foo", "bar", "test")));
+		assertEquals("foo group", index.getValue(dependency("com.foo", "baz", null)));
+		assertEquals("baz", index.getValue(dependency("com.other", "baz", null)));
+		assertNull(index.getValue(dependency("com.other", "other", null)));
+	}
+
+	@Test
+	public void testDefaults() {
+		Dependency dep = dependency("com.foo", "bar", null);
+		assertTrue(DependencyRuleIndex.matches(dep, attributes("type", "jar", "scope", "compile")));
+		assertFalse(DependencyRuleIndex.matches(dep, attributes("scope", "test")));
+		assertTrue(DependencyRuleIndex.matches(dep, attributes("classifier", null)));
+		assertFalse(DependencyRuleIndex.matches(dep, attributes("classifier", "tests")));
+		assertTrue(DependencyRuleIndex.matches(dep, Collections.<String, Object>emptyMap()));
+	}
+
+	@Test
+	public void testUnknownAttributeNeverMatches() {
+		DependencyRuleIndex<String> index = new DependencyRuleIndex<>();
+		index.add(attributes("groupId", "com.foo", "unknown", "x"), "unknown");
+		assertFalse(index.matches(dependency("com.foo", "bar", null)));
+		assertFalse(DependencyRuleIndex.matches(dependency("com.foo", "bar", null), attributes("groupId", "com.foo", "unknown", "x")));
+	}
+
+	private Dependency dependency(String groupId, String artifactId, String scope) {
+		Dependency dep = new Dependency();
+		dep.setGroupId(groupId);
+		dep.setArtifactId(artifactId);
+		dep.setVersion("1.0");
+		dep.setScope(scope);
+		return dep;
+	}
+
+	private Map<String, Object> attributes(Object... keyValues) {
+		Map<String, Object> attributes = new LinkedHashMap<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			attributes.put((String) keyValues[i], keyValues[i + 1]);
+		}
+		return attributes;
+	}
+}
@@ -0,0 +1,42 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class GavTest {
+	@Test
+	public void testEquality() {
+		Gav gav = Gav.of(new String("com.foo"), new String("bar"), "1.0");
+		Gav other = Gav.parse("com.foo:bar:1.0");
+		assertEquals(gav, other);
+		assertEquals(gav.hashCode(), other.hashCode());
+		assertSame(gav.getGroupId(), other.getGroupId());
+		assertSame(gav.getArtifactId(), other.getArtifactId());
+		assertEquals("com.foo:bar:1.0", gav.toString());
+		assertNotEquals(gav, Gav.of("com.foo", "bar", "1.1"));
+		assertNotEquals(gav, Gav.ofGroupArtifact("com.foo", "bar"));
+		assertEquals("com.foo:bar", Gav.ofGroupArtifact("com.foo", "bar").toString());
+		assertEquals(Gav.ofGroupArtifact(null, "bar"), Gav.ofGroupArtifact(null, "bar"));
+	}
+
+	@Test
+	public void testIllegal() {
+		try {
+			Gav.of("com.foo", null, "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().equals("Illegal gav com.foo:null:1.0"));
+		}
+		try {
+			Gav.parse("com.foo:bar");
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().equals("Illegal gav com.foo:bar"));
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import groovy.json.JsonSlurper;
+
+public class HeadlessResolverTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	@Test
+	public void testWrite() throws IOException {
+		addPom("", "<groupId>com.foo</groupId><artifactId>root</artifactId><version>1.0</version><packaging>pom</packaging>"
+				+ "<modules><module>api</module><module>services/web</module></modules>");
+		addPom("api", "<parent><groupId>com.foo</groupId><artifactId>root</artifactId><version>1.0</version></parent><artifactId>api</artifactId>"
+				+ "<dependencies>"
+				+ "<dependency><groupId>junit</groupId><artifactId>junit</artifactId><version>4.12</version><scope>test</scope></dependency>"
+				+ "<dependency><groupId>com.sun</groupId><artifactId>tools</artifactId><version>1.8</version></dependency>"
+				+ "</dependencies>");
+		addPom("services/web", "<parent><groupId>com.foo</groupId><artifactId>root</artifactId><version>1.0</version><relativePath>../../pom.xml</relativePath></parent><artifactId>web</artifactId>"
+				+ "<dependencies>"
+				+ "<dependency><groupId>com.foo</groupId><artifactId>api</artifactId><version>1.0</version>"
+				+ "<exclusions><exclusion><groupId>com.bar</groupId></exclusion></exclusions></dependency>"
+				+ "<dependency><groupId>com.baz</groupId><artifactId>war</artifactId><version>2.0</version><type>war</type></dependency>"
+				+ "<dependency><groupId>com.baz</groupId><artifactId>lib</artifactId><version>2.0</version><type>test-jar</type><scope>test</scope></dependency>"
+				+ "</dependencies>");
+
+		HeadlessResolver resolver = new HeadlessResolver(tempDir.getRoot());
+		resolver.exclude(Collections.singletonMap("groupId", "com.sun"));
+		resolver.resolve(Collections.singletonMap("type", "test-jar"), "${groupId}:${artifactId}:${version}:tests");
+		resolver.setConfiguration("test", "testImplementation");
+		StringWriter out = new StringWriter();
+		assertEquals(1, resolver.write(out));
+		assertEquals(3, resolver.getModuleCount());
+
+		List<Map<String, Object>> modules = parse(out);
+		assertEquals(Arrays.asList(":", ":api", ":services:web"), Arrays.asList(modules.get(0).get("module"), modules.get(1).get("module"), modules.get(2).get("module")));
+		assertEquals("services/web/pom.xml", modules.get(2).get("pomFile"));
+
+		List<Map<String, Object>> apiDeps = getDependencies(modules.get(1));
+		assertEquals(1, apiDeps.size());
+		assertEquals("testImplementation", apiDeps.get(0).get("configuration"));
+		assertEquals("junit", ((Map<?, ?>) apiDeps.get(0).get("notation")).get("group"));
+
+		List<Map<String, Object>> webDeps = getDependencies(modules.get(2));
+		assertEquals(3, webDeps.size());
+		assertEquals("compile", webDeps.get(0).get("configuration"));
+		assertEquals(":api", webDeps.get(0).get("project"));
+		assertEquals(Collections.singletonMap("group", "com.bar"), ((List<?>) webDeps.get(0).get("excludes")).get(0));
+		assertNull(webDeps.get(1).get("notation"));
+		assertTrue(String.valueOf(webDeps.get(1).get("error")).startsWith("type='war' not supported"));
+		assertEquals("com.baz:lib:2.0:tests", webDeps.get(2).get("notation"));
+	}
+
+	@Test
+	public void testModulesFromReactor() throws IOException {
+		addPom("", "<groupId>com.foo</groupId><artifactId>root</artifactId><version>1.0</version><packaging>pom</packaging>"
+				+ "<modules><module>services</module></modules>");
+		addPom("services", "<groupId>com.foo</groupId><artifactId>services</artifactId><version>1.0</version><packaging>pom</packaging>"
+				+ "<modules><module>web</module></modules>");
+		addPom("services/web", "<groupId>com.foo</groupId><artifactId>web</artifactId><version>1.0</version>");
+		// test fixtures and unlisted poms aren't modules, even with a duplicate GAV
+		addPom("services/web/src/test/resources/fixture", "<groupId>com.foo</groupId><artifactId>web</artifactId><version>1.0</version>");
+		addPom("unlisted", "<groupId>com.foo</groupId><artifactId>unlisted</artifactId><version>1.0</version>");
+
+		HeadlessResolver resolver = new HeadlessResolver(tempDir.getRoot());
+		StringWriter out = new StringWriter();
+		assertEquals(0, resolver.write(out));
+		List<Map<String, Object>> modules = parse(out);
+		assertEquals(Arrays.asList(":", ":services", ":services:web"), Arrays.asList(modules.get(0).get("module"), modules.get(1).get("module"), modules.get(2).get("module")));
+		assertEquals(3, resolver.getModuleCount());
+
+		resolver.setModules(Arrays.asList("unlisted", "services/web"));
+		out = new StringWriter();
+		assertEquals(0, resolver.write(out));
+		modules = parse(out);
+		assertEquals(Arrays.asList(":services:web", ":unlisted"), Arrays.asList(modules.get(0).get("module"), modules.get(1).get("module")));
+	}
+
+	@Test
+	public void testApplyRules() throws IOException {
+		addPom("", "<groupId>com.foo</groupId><artifactId>root</artifactId><version>1.0</version>"
+				+ "<dependencies><dependency><groupId>com.baz</groupId><artifactId>war</artifactId><version>2.0</version><type>war</type><scope>provided</scope></dependency></dependencies>");
+		File rules = tempDir.newFile("rules.json");
+		Files.write(rules.toPath(), "{\"allowUnsupportedDependencyProperties\": true, \"configurations\": {\"provided\": \"providedCompile\"}}".getBytes(StandardCharsets.UTF_8));
+
+		HeadlessResolver resolver = new HeadlessResolver(tempDir.getRoot());
+		resolver.applyRules(rules);
+		StringWriter out = new StringWriter();
+		assertEquals(0, resolver.write(out));
+		Map<String, Object> dep = getDependencies(parse(out).get(0)).get(0);
+		assertEquals("providedCompile", dep.get("configuration"));
+		assertEquals("com.baz:war:2.0", dep.get("dependency"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testUnsupportedRule() throws IOException {
+		File rules = tempDir.newFile("rules.json");
+		Files.write(rules.toPath(), "{\"exclude\": []}".getBytes(StandardCharsets.UTF_8));
+		new HeadlessResolver(tempDir.getRoot()).applyRules(rules);
+	}
+
+	private void addPom(String dir, String content) throws IOException {
+		File pomDir = new File(tempDir.getRoot(), dir);
+		pomDir.mkdirs();
+		String pom = "<project><modelVersion>4.0.0</modelVersion>" + content + "</project>";
+		Files.write(new File(pomDir, "pom.xml").toPath(), pom.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> parse(StringWriter out) {
+		return (List<Map<String, Object>>) new JsonSlurper().parseText(out.toString());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> getDependencies(Map<String, Object> module) {
+		return (List<Map<String, Object>>) module.get("dependencies");
+	}
+}
@@ -0,0 +1,310 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpRepositoryPomSourceTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	private final File repositoryDir = getFile("local-repo-1");
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+	// poms served instead of the repository directory, by path
+	private final Map<String, byte[]> deployed = new ConcurrentHashMap<>();
+	private final Set<InetSocketAddress> connections = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+	private volatile int failuresRemaining;
+	private volatile boolean badChecksums;
+	private volatile long delayMillis;
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/repo/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				connections.add(exchange.getRemoteAddress());
+				try {
+					serve(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		// only the delay is counted as active, the client may send its next request as soon as the response is written
+		peak.set(Math.max(peak.get(), active.incrementAndGet()));
+		try {
+			if (delayMillis > 0) {
+				Thread.sleep(delayMillis);
+			}
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} finally {
+			active.decrementAndGet();
+		}
+		if (failuresRemaining > 0) {
+			--failuresRemaining;
+			send(exchange, 503, "unavailable".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		String path = exchange.getRequestURI().getPath().substring("/repo/".length());
+		if (path.startsWith("com/forbidden/")) {
+			send(exchange, 403, "forbidden".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		boolean checksum = path.endsWith(".sha1");
+		File file = new File(repositoryDir, checksum ? path.substring(0, path.length() - 5) : path);
+		byte[] content = deployed.get(checksum ? path.substring(0, path.length() - 5) : path);
+		if (content == null && !file.isFile()) {
+			// repositories send a body with a not found, the JDK only keeps the connection alive if there is one
+			send(exchange, 404, "not found".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		content = content == null ? Files.readAllBytes(file.toPath()) : content;
+		if (checksum) {
+			String hash = badChecksums ? PersistentPomCache.hash(new byte[0]) : PersistentPomCache.hash(content);
+			content = (hash + "  " + file.getName()).getBytes(StandardCharsets.UTF_8);
+		}
+		send(exchange, 200, content);
+	}
+
+	private void send(HttpExchange exchange, int status, byte[] content) throws IOException {
+		exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content);
+		}
+	}
+
+	@Test
+	public void testFetchAndDiskCache() throws IOException {
+		File cacheDir = tempDir.newFolder("cache");
+		HttpRepositoryPomSource source = createSource(cacheDir);
+		ShareMetrics metrics = new ShareMetrics();
+		source.setMetrics(metrics);
+		byte[] expected = Files.readAllBytes(new File(repositoryDir, "com/foo/external-parent/1.0/external-parent-1.0.pom").toPath());
+
+		assertArrayEquals(expected, read(source.getPom("com.foo", "external-parent", "1.0")));
+		assertEquals(2, requests.get());
+		assertEquals(2L, source.getRequestCount());
+		assertEquals((long) expected.length + 40 + 2 + "external-parent-1.0.pom".length(), source.getBytesFetched());
+		assertTrue(source.getThroughputBytesPerSecond() > 0);
+		assertEquals(2L, metrics.getCounters().get("http.requests").longValue());
+
+		// a new source with the same cache directory doesn't make any requests
+		HttpRepositoryPomSource cachedSource = createSource(cacheDir);
+		assertArrayEquals(expected, read(cachedSource.getPom("com.foo", "external-parent", "1.0")));
+		assertEquals(2, requests.get());
+		assertEquals(1L, cachedSource.getCacheHitCount());
+
+		// a corrupt cache entry is fetched again
+		File cachedFile = new File(cacheDir, "com/foo/external-parent/1.0/external-parent-1.0.pom");
+		Files.write(cachedFile.toPath(), "<project/>".getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals(expected, read(createSource(cacheDir).getPom("com.foo", "external-parent", "1.0")));
+		assertEquals(4, requests.get());
+		assertArrayEquals(expected, Files.readAllBytes(cachedFile.toPath()));
+	}
+
+	@Test
+	public void testSnapshotIsNotCached() throws IOException {
+		File cacheDir = tempDir.newFolder("cache");
+		String path = "com/foo/lib/1.0-SNAPSHOT/lib-1.0-SNAPSHOT.pom";
+		deployed.put(path, "<project><version>1</version></project>".getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals(deployed.get(path), read(createSource(cacheDir).getPom("com.foo", "lib", "1.0-SNAPSHOT")));
+
+		// the redeployed pom is fetched by the next build
+		deployed.put(path, "<project><version>2</version></project>".getBytes(StandardCharsets.UTF_8));
+		HttpRepositoryPomSource source = createSource(cacheDir);
+		assertArrayEquals(deployed.get(path), read(source.getPom("com.foo", "lib", "1.0-SNAPSHOT")));
+		assertEquals(0L, source.getCacheHitCount());
+		assertEquals(4, requests.get());
+		assertFalse(new File(cacheDir, path).exists());
+	}
+
+	@Test
+	public void testRetry() throws IOException {
+		failuresRemaining = 2;
+		HttpRepositoryPomSource source = createSource(tempDir.newFolder("cache"));
+		assertNotNull(read(source.getPom("com.foo", "bom-a", "1.0")));
+		assertEquals(2L, source.getRetryCount());
+		assertEquals(4, requests.get());
+
+		failuresRemaining = 10;
+		try {
+			source.getPom("com.foo", "bom-b", "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Error fetching pom for com.foo:bom-b:1.0 after 4 attempts", e.getMessage());
+			assertEquals(1L, source.getFailureCount());
+		}
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		HttpRepositoryPomSource source = createSource(tempDir.newFolder("cache"));
+		for (int i = 0; i < 2; ++i) {
+			try {
+				source.getPom("com.foo", "missing", "1.0");
+				fail();
+			} catch (RuntimeException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Pom not found for com.foo:missing:1.0"));
+			}
+		}
+		// not found isn't retried and is remembered
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	public void testClientErrorIsAFailure() throws IOException {
+		HttpRepositoryPomSource source = createSource(tempDir.newFolder("cache"));
+		try {
+			source.getPom("com.forbidden", "bom-a", "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Error fetching pom for com.forbidden:bom-a:1.0 after 1 attempts", e.getMessage());
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("HTTP 403 from "));
+		}
+		// client errors other than not found are not retried
+		assertEquals(1, requests.get());
+		assertEquals(1L, source.getFailureCount());
+	}
+
+	@Test
+	public void testConnectionIsReused() throws IOException {
+		HttpRepositoryPomSource source = createSource(tempDir.newFolder("cache"));
+		for (String artifactId : new String[] { "external-parent", "bom-a", "bom-b" }) {
+			assertNotNull(read(source.getPom("com.foo", artifactId, "1.0")));
+		}
+		try {
+			source.getPom("com.foo", "missing", "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Pom not found"));
+		}
+		assertNotNull(read(source.getPom("com.foo", "bom-cyclic-a", "1.0")));
+
+		// the sequential requests, including those after the not found response, share one keep-alive connection
+		assertEquals(9, requests.get());
+		assertEquals(connections.toString(), 1, connections.size());
+	}
+
+	@Test
+	public void testChecksumMismatch() throws IOException {
+		badChecksums = true;
+		HttpRepositoryPomSource source = createSource(tempDir.newFolder("cache"));
+		source.setMaxRetries(1);
+		try {
+			source.getPom("com.foo", "bom-a", "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("Checksum mismatch"));
+		}
+		assertEquals(4, requests.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsAreLimited() throws Exception {
+		delayMillis = 50;
+		final HttpRepositoryPomSource source = new HttpRepositoryPomSource(getRepositoryUrl(), tempDir.newFolder("cache"), 2);
+		final String[] artifactIds = { "external-parent", "external-grandparent", "bom-a", "bom-b", "bom-cyclic-a", "bom-cyclic-b" };
+		ExecutorService executor = Executors.newFixedThreadPool(artifactIds.length);
+		try {
+			List<Future<byte[]>> futures = new ArrayList<>();
+			for (final String artifactId : artifactIds) {
+				futures.add(executor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException {
+						return read(source.getPom("com.foo", artifactId, "1.0"));
+					}
+				}));
+			}
+			for (Future<byte[]> future : futures) {
+				assertNotNull(future.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(12, requests.get());
+		assertEquals(2, source.getPeakConcurrentRequests());
+		assertTrue(String.valueOf(peak.get()), peak.get() <= 2);
+		assertTrue(source.getAverageLatencyMillis() >= 50);
+	}
+
+	private HttpRepositoryPomSource createSource(File cacheDir) {
+		HttpRepositoryPomSource source = new HttpRepositoryPomSource(getRepositoryUrl(), cacheDir);
+		source.setRetryDelayMillis(1);
+		return source;
+	}
+
+	private String getRepositoryUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/repo";
+	}
+
+	private byte[] read(InputStream in) throws IOException {
+		try (InputStream closing = in) {
+			byte[] buffer = new byte[65536];
+			int length = 0;
+			int count;
+			while ((count = closing.read(buffer, length, buffer.length - length)) > 0) {
+				length += count;
+			}
+			byte[] result = new byte[length];
+			System.arraycopy(buffer, 0, result, 0, length);
+			return result;
+		}
+	}
+
+	private File getFile(String path) {
+		URL url = getClass().getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
@@ -0,0 +1,95 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalPomCacheTest {
+	@Rule public final SamplePoms samplePoms = new SamplePoms("maven-sample-1", "parent", "impl", "interface", "override");
+	@Rule public final SamplePoms bomPoms = new SamplePoms("maven-sample-2", "bom-module", "bom-module-user");
+
+	private final PomResolver resolver = new PomResolver();
+	private final IncrementalPomCache incremental = new IncrementalPomCache(null);
+
+	@Test
+	public void testChangedPomIsResolvedAgain() throws IOException {
+		List<ResolvedPom> poms = build();
+		assertTrue(incremental.refresh().isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList(samplePoms.pomFile("impl"), samplePoms.pomFile("interface"), samplePoms.pomFile("override"))),
+				incremental.getChildren(samplePoms.pomFile("parent")));
+
+		samplePoms.replace("interface", "</project>", "<packaging>jar</packaging></project>");
+		assertEquals(new HashSet<>(Arrays.asList(samplePoms.pomFile("interface"))), incremental.refresh());
+		assertTrue(incremental.isResolved(samplePoms.pomFile("impl")));
+		assertFalse(incremental.isResolved(samplePoms.pomFile("interface")));
+
+		List<ResolvedPom> rebuilt = build();
+		assertSame(poms.get(0), rebuilt.get(0));
+		assertNotSame(poms.get(1), rebuilt.get(1));
+		assertSame(poms.get(0).getParent(), rebuilt.get(1).getParent());
+	}
+
+	@Test
+	public void testTouchedPomIsReused() throws IOException {
+		List<ResolvedPom> poms = build();
+		File implFile = samplePoms.pomFile("impl");
+		assertTrue(implFile.setLastModified(implFile.lastModified() + 10000));
+		assertTrue(incremental.refresh().isEmpty());
+		assertSame(poms.get(0), build().get(0));
+	}
+
+	@Test
+	public void testChangedParentInvalidatesDescendants() throws IOException {
+		List<ResolvedPom> poms = build();
+		assertEquals("4.12", poms.get(0).getDependencies().get(0).getVersion());
+
+		samplePoms.replace("parent", "<junit.version>4.12</junit.version>", "<junit.version>4.13</junit.version>");
+		assertEquals(new HashSet<>(Arrays.asList(samplePoms.pomFile("parent"), samplePoms.pomFile("impl"), samplePoms.pomFile("interface"), samplePoms.pomFile("override"))),
+				incremental.refresh());
+		assertEquals("4.13", build().get(0).getDependencies().get(0).getVersion());
+	}
+
+	@Test
+	public void testChangedBomInvalidatesImporters() throws IOException {
+		File bomFile = bomPoms.pomFile("bom-module");
+		File userFile = bomPoms.pomFile("bom-module-user");
+		resolver.setModulePoms(Arrays.asList(bomFile, userFile));
+		ResolvedPom user = buildBomUser();
+		assertEquals("4.0", user.getDependencies().get(0).getVersion());
+		assertEquals(new HashSet<>(Arrays.asList(userFile)), incremental.getChildren(bomFile));
+
+		bomPoms.replace("bom-module", "<lib.version>4.0</lib.version>", "<lib.version>4.1</lib.version>");
+		assertEquals(new HashSet<>(Arrays.asList(bomFile, userFile)), incremental.refresh());
+		assertEquals("4.1", buildBomUser().getDependencies().get(0).getVersion());
+	}
+
+	private ResolvedPom buildBomUser() throws IOException {
+		List<ResolvedPom> poms = new ArrayList<>();
+		for (String module : Arrays.asList("bom-module", "bom-module-user")) {
+			poms.add(resolver.resolvePom(bomPoms.pomFile(module), incremental.getCache()));
+		}
+		incremental.update(poms);
+		return poms.get(1);
+	}
+
+	private List<ResolvedPom> build() throws IOException {
+		List<ResolvedPom> poms = new ArrayList<>();
+		for (String module : Arrays.asList("impl", "interface", "override")) {
+			poms.add(resolver.resolvePom(samplePoms.pomFile(module), incremental.getCache()));
+		}
+		incremental.update(poms);
+		return poms;
+	}
+}
@@ -0,0 +1,104 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.model.Dependency;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalRepositoryPomSourceTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	@Test
+	public void testResolveExternalParent() {
+		LocalRepositoryPomSource pomSource = new LocalRepositoryPomSource(getFile("local-repo-1"));
+		ResolvedPom pom = new PomResolver().resolvePom(getFile("maven-sample-2/module/pom.xml"), new PomResolveCache(), pomSource);
+		assertEquals("com.foo", pom.getGroupId());
+		assertEquals("external-parent", pom.getParent().getArtifactId());
+		assertEquals(1, pom.getDependencies().size());
+		Dependency dep = pom.getDependencies().get(0);
+		assertEquals("4.12", dep.getVersion());
+		assertEquals("test", dep.getScope());
+	}
+
+	@Test
+	public void testMissingPomIsRemembered() throws IOException {
+		File repoDir = tempDir.newFolder("repo");
+		LocalRepositoryPomSource pomSource = new LocalRepositoryPomSource(repoDir);
+		assertNotFound(pomSource, "com.bar", "missing", "1.0");
+
+		writePom(pomSource.getPomFile("com.bar", "missing", "1.0"), "<project/>");
+		assertNotFound(pomSource, "com.bar", "missing", "1.0");
+		assertEquals("<project/>", read(new LocalRepositoryPomSource(repoDir).getPom("com.bar", "missing", "1.0")));
+	}
+
+	@Test
+	public void testCacheIsBounded() throws IOException {
+		File repoDir = tempDir.newFolder("repo");
+		LocalRepositoryPomSource cached = new LocalRepositoryPomSource(repoDir, 1024);
+		LocalRepositoryPomSource uncached = new LocalRepositoryPomSource(repoDir, 4);
+		File pomFile = cached.getPomFile("com.bar", "bar", "1.0");
+		writePom(pomFile, "<project>one</project>");
+		assertEquals("<project>one</project>", read(cached.getPom("com.bar", "bar", "1.0")));
+		assertEquals("<project>one</project>", read(uncached.getPom("com.bar", "bar", "1.0")));
+
+		writePom(pomFile, "<project>two</project>");
+		assertEquals("<project>one</project>", read(cached.getPom("com.bar", "bar", "1.0")));
+		assertEquals("<project>two</project>", read(uncached.getPom("com.bar", "bar", "1.0")));
+	}
+
+	@Test
+	public void testLargePom() throws IOException {
+		File repoDir = tempDir.newFolder("repo");
+		LocalRepositoryPomSource pomSource = new LocalRepositoryPomSource(repoDir);
+		StringBuilder xml = new StringBuilder("<project>");
+		while (xml.length() < 200 * 1024) {
+			xml.append("<!-- padding -->");
+		}
+		xml.append("</project>");
+		writePom(pomSource.getPomFile("com.bar", "large", "1.0"), xml.toString());
+		assertEquals(xml.toString(), read(pomSource.getPom("com.bar", "large", "1.0")));
+	}
+
+	private void assertNotFound(PomSource pomSource, String group, String artifact, String version) {
+		try {
+			pomSource.getPom(group, artifact, version);
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Pom not found for com.bar:missing:1.0"));
+		}
+	}
+
+	private void writePom(File pomFile, String xml) throws IOException {
+		pomFile.getParentFile().mkdirs();
+		Files.write(pomFile.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private File getFile(String path) {
+		URL url = getClass().getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
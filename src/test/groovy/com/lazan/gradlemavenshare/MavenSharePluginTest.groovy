@@ -138,6 +138,163 @@ class MavenSharePluginTest extends Specification {
 		result.output.contains("commons-logging")
 	}
 
+	def "Overridden dependencyMatches is used for excludes and resolvers"() {
+		given:
+		writePom("pom.xml", "project1", """
+			<dependency>
+				<groupId>net.sourceforge.saxon</groupId>
+				<artifactId>saxon</artifactId>
+				<version>9.1.0.8</version>
+				<classifier>dom</classifier>
+			</dependency>
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		writeGradleSingle("build.gradle", """
+			import com.lazan.gradlemavenshare.*
+			import org.apache.maven.model.Dependency
+
+			class PrefixShareAction extends DependencyShareAction {
+				@Override
+				protected boolean dependencyMatches(Dependency dep, Map<String, String> attributes) {
+					return dep.artifactId.startsWith(attributes.artifactId)
+				}
+			}
+
+			def resolver1 = { proj, dep, resolver ->
+				return 'org.springframework:spring-context:4.3.1.RELEASE'
+			} as DependencyResolver
+
+			mavenShare {
+				shareActions = [new PrefixShareAction()]
+				exclude([artifactId: 'sax'])
+				resolve([artifactId: 'spring'], resolver1)
+			}
+			gradle.projectsEvaluated {
+				println "compile " + configurations.compile.dependencies.collect { "\${it.name}:\${it.version}" }.sort()
+			}"""
+		)
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('help', '--stacktrace')
+			.build()
+
+		then:
+		result.output.contains("compile [spring-context:4.3.1.RELEASE]")
+	}
+
+	def "Exclusions are skipped for file dependencies"() {
+		given:
+		writePom("pom.xml", "project1", """
+			<dependency>
+				<groupId>net.sourceforge.saxon</groupId>
+				<artifactId>saxon</artifactId>
+				<version>9.1.0.8</version>
+				<exclusions>
+					<exclusion>
+						<groupId>xml-apis</groupId>
+					</exclusion>
+				</exclusions>
+			</dependency>
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+				<exclusions>
+					<exclusion>
+						<groupId>commons-logging</groupId>
+						<artifactId>commons-logging</artifactId>
+					</exclusion>
+				</exclusions>
+			</dependency>"""
+		)
+		writeGradleSingle("build.gradle", """
+			def fileResolver = { proj, dep, resolver ->
+				return proj.files('libs/saxon.jar')
+			} as com.lazan.gradlemavenshare.DependencyResolver
+
+			mavenShare {
+				resolve([artifactId: 'saxon'], fileResolver)
+			}
+			gradle.projectsEvaluated {
+				println "excludes " + configurations.compile.dependencies.findAll { it instanceof ModuleDependency }.collect { it.excludeRules.collect { it.group } }
+				println "files " + configurations.compile.dependencies.findAll { it instanceof FileCollectionDependency }.size()
+			}"""
+		)
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('help', '--stacktrace')
+			.build()
+
+		then:
+		result.output.contains("excludes [[commons-logging]]")
+		result.output.contains("files 1")
+	}
+
+	def "Overridden createExclusionClosure configures the dependencies"() {
+		given:
+		writePom("pom.xml", "project1", """
+			<dependency>
+				<groupId>net.sourceforge.saxon</groupId>
+				<artifactId>saxon</artifactId>
+				<version>9.1.0.8</version>
+				<exclusions>
+					<exclusion>
+						<groupId>xml-apis</groupId>
+					</exclusion>
+				</exclusions>
+			</dependency>
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+				<exclusions>
+					<exclusion>
+						<groupId>commons-logging</groupId>
+						<artifactId>commons-logging</artifactId>
+					</exclusion>
+				</exclusions>
+			</dependency>"""
+		)
+		writeGradleSingle("build.gradle", """
+			import com.lazan.gradlemavenshare.*
+			import org.apache.maven.model.Dependency
+
+			class LoggingShareAction extends DependencyShareAction {
+				@Override
+				protected Closure createExclusionClosure(Dependency mavenDep) {
+					println "exclusions for \${mavenDep.artifactId}"
+					return super.createExclusionClosure(mavenDep)
+				}
+			}
+
+			mavenShare {
+				shareActions = [new LoggingShareAction()]
+			}
+			gradle.projectsEvaluated {
+				println "excludes " + configurations.compile.dependencies.collect { it.excludeRules.collect { it.group } }
+			}"""
+		)
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('help', '--stacktrace')
+			.build()
+
+		then:
+		result.output.contains("exclusions for saxon")
+		result.output.contains("exclusions for spring-context")
+		result.output.contains("excludes [[xml-apis], [commons-logging]]")
+	}
+
 	def "Maven exclude is shared with gradle"() {
 		given:
 		writeFile("settings.gradle", "include ':project1'")
@@ -288,6 +445,370 @@ class MavenSharePluginTest extends Specification {
 		result.output.contains("Test result com.foo.ClientTest = SUCCESS")
 	}
 
+	def "Lazy dependencies are added when configurations are resolved"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2'")
+		writeGradleMulti("build.gradle", "", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				lazyDependencies = true
+			}"""
+		)
+		
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		writePom("project2/pom.xml", "project2", """
+			<dependency>
+				<groupId>com.foo</groupId>
+				<artifactId>project1</artifactId>
+				<version>1.0-SNAPSHOT</version>
+			</dependency>"""
+		)
+		writeFile("project2/build.gradle", """
+			println "before resolve " + project(':project1').configurations.compile.dependencies.collect { it.name }
+			task printClasspath {
+				doLast {
+					println "classpath " + configurations.runtime.files.collect { it.name }.sort()
+				}
+			}"""
+		)
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project2:printClasspath', '--stacktrace')
+			.build()
+
+		then:
+		result.task(":project2:printClasspath").outcome == TaskOutcome.SUCCESS
+		result.output.contains("before resolve []")
+		result.output.contains("project1.jar")
+		result.output.contains("spring-context-4.3.2.RELEASE.jar")
+	}
+
+	def "On demand resolve works with configure on demand"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2', ':project3'")
+		writeGradleMulti("build.gradle", "", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				onDemandResolve = true
+			}"""
+		)
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		writePom("project2/pom.xml", "project2", """
+			<dependency>
+				<groupId>com.foo</groupId>
+				<artifactId>project1</artifactId>
+				<version>1.0-SNAPSHOT</version>
+			</dependency>"""
+		)
+		writePom("project3/pom.xml", "project3", """
+			<dependency>
+				<groupId>junit</groupId>
+				<artifactId>junit</artifactId>
+				<version>4.12</version>
+			</dependency>"""
+		)
+		// project1 is only configured once project2 asks for it
+		writeFile("project2/build.gradle", """
+			evaluationDependsOn(':project1')
+			def project1Deps = project(':project1').configurations.compile.dependencies.collect { it.name }
+			def project2Deps
+			afterEvaluate {
+				project2Deps = configurations.compile.dependencies.collect { it.name }
+			}
+			task printDeps {
+				doLast {
+					println "project1 deps " + project1Deps
+					println "project2 deps " + project2Deps
+				}
+			}"""
+		)
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project2:printDeps', '--configure-on-demand', '--info', '--stacktrace')
+			.build()
+
+		then:
+		result.task(":project2:printDeps").outcome == TaskOutcome.SUCCESS
+		result.output.contains("project1 deps [spring-context]")
+		result.output.contains("project2 deps [project1]")
+		!result.output.contains("Evaluating project ':project3'")
+	}
+
+	def "Share lock is used while the poms are unchanged"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2'")
+		writeGradleMulti("build.gradle", "", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				useShareLock = true
+			}"""
+		)
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+				<exclusions>
+					<exclusion>
+						<groupId>commons-logging</groupId>
+						<artifactId>commons-logging</artifactId>
+					</exclusion>
+				</exclusions>
+			</dependency>"""
+		)
+		writePom("project2/pom.xml", "project2", """
+			<dependency>
+				<groupId>com.foo</groupId>
+				<artifactId>project1</artifactId>
+				<version>1.0-SNAPSHOT</version>
+			</dependency>"""
+		)
+		GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('mavenShareLock', '--stacktrace')
+			.build()
+
+		when:
+		def locked = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project2:dependencies', '--info', '--stacktrace')
+			.build()
+		writePom("project1/pom.xml", "project1", "")
+		def changed = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project2:dependencies', '--info', '--stacktrace')
+			.build()
+
+		then:
+		new File(testProjectDir.root, "maven-share.lock").isFile()
+		!locked.output.contains("is not used since")
+		locked.output.contains("project :project1")
+		locked.output.contains("spring-context")
+		!locked.output.contains("commons-logging")
+		changed.output.contains("is not used since project1/pom.xml has changed")
+		!changed.output.contains("spring-context")
+	}
+
+	def "Share lock adds dependencies through the ConfigurationResolver"() {
+		given:
+		writeFile("settings.gradle", "include ':project1'")
+		writeGradleMulti("build.gradle", """
+			apply from: rootProject.file('shared.gradle')
+			mavenShare {
+				configurationResolver = { Project project, org.apache.maven.model.Dependency dependency ->
+					return project.configurations.maybeCreate("foo" + (dependency.scope ?: 'compile'))
+				} as com.lazan.gradlemavenshare.ConfigurationResolver
+			}
+			task printFoo {
+				doLast {
+					println "foocompile " + configurations.foocompile.dependencies.collect { it.name }
+				}
+			}""", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				useShareLock = true
+			}"""
+		)
+		writeFile("shared.gradle", "ext.shared = 1")
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('mavenShareLock', '--stacktrace')
+			.build()
+
+		when:
+		def locked = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project1:printFoo', '--info', '--stacktrace')
+			.build()
+		writeFile("shared.gradle", "ext.shared = 2")
+		def scriptChanged = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project1:printFoo', '--info', '--stacktrace')
+			.build()
+		writeFile("project1/gradle.properties", "foo=bar")
+		def propertiesAdded = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments(':project1:printFoo', '--info', '--stacktrace')
+			.build()
+
+		then:
+		!locked.output.contains("is not used since")
+		locked.output.contains("foocompile [spring-context]")
+		scriptChanged.output.contains("is not used since shared.gradle has changed")
+		scriptChanged.output.contains("foocompile [spring-context]")
+		propertiesAdded.output.contains("is not used since project1/gradle.properties has been added")
+	}
+
+	def "Only changed poms are resolved again in the same daemon"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2'")
+		writeGradleMulti("build.gradle", "", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				incrementalResolve = true
+			}
+			task printRecomputed {
+				doLast {
+					println "recomputed " + plugins.getPlugin(com.lazan.gradlemavenshare.MavenShareRootPlugin).recomputedModules
+				}
+			}"""
+		)
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		writePom("project2/pom.xml", "project2", """
+			<dependency>
+				<groupId>com.foo</groupId>
+				<artifactId>project1</artifactId>
+				<version>1.0-SNAPSHOT</version>
+			</dependency>"""
+		)
+
+		when:
+		def first = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('printRecomputed', '--stacktrace')
+			.build()
+		def unchanged = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('printRecomputed', '--stacktrace')
+			.build()
+		writePom("project1/pom.xml", "project1", "")
+		def changed = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('printRecomputed', '--stacktrace')
+			.build()
+
+		then:
+		first.output.contains("recomputed [:project1, :project2]")
+		unchanged.output.contains("recomputed []")
+		changed.output.contains("recomputed [:project1]")
+	}
+
+	def "Parallel share actions add the dependencies of every module"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2', ':project3'")
+		writeGradleMulti("build.gradle", "", """
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				parallelShareActions = true
+				resolveThreads = 4
+			}
+			gradle.projectsEvaluated {
+				subprojects.each { p ->
+					println "\${p.path} compile " + p.configurations.compile.dependencies.collect { it.name }.sort()
+				}
+			}"""
+		)
+		writePom("project1/pom.xml", "project1", """
+			<dependency>
+				<groupId>org.springframework</groupId>
+				<artifactId>spring-context</artifactId>
+				<version>4.3.2.RELEASE</version>
+			</dependency>"""
+		)
+		for (String artifactId : ["project2", "project3"]) {
+			writePom("${artifactId}/pom.xml", artifactId, """
+				<dependency>
+					<groupId>com.foo</groupId>
+					<artifactId>project1</artifactId>
+					<version>1.0-SNAPSHOT</version>
+				</dependency>
+				<dependency>
+					<groupId>commons-lang</groupId>
+					<artifactId>commons-lang</artifactId>
+					<version>2.6</version>
+				</dependency>"""
+			)
+		}
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('help', '--stacktrace')
+			.build()
+
+		then:
+		result.output.contains(":project1 compile [spring-context]")
+		result.output.contains(":project2 compile [commons-lang, project1]")
+		result.output.contains(":project3 compile [commons-lang, project1]")
+	}
+
+	def "Parallel share actions call an overridden execute"() {
+		given:
+		writeFile("settings.gradle", "include ':project1', ':project2'")
+		writeGradleMulti("build.gradle", """
+			mavenShare {
+				shareActions = [new LoggingShareAction()]
+			}""", """
+			class LoggingShareAction extends com.lazan.gradlemavenshare.DependencyShareAction {
+				@Override
+				public void execute(com.lazan.gradlemavenshare.ResolvedPom pom, Project project, com.lazan.gradlemavenshare.ProjectResolver resolver) {
+					println "execute \${project.path}"
+					super.execute(pom, project, resolver)
+				}
+			}
+
+			apply plugin: 'com.lazan.gradlemavenshareroot'
+			mavenShareRoot {
+				parallelShareActions = true
+			}
+			gradle.projectsEvaluated {
+				subprojects.each { p ->
+					println "\${p.path} compile " + p.configurations.compile.dependencies.collect { it.name }.sort()
+				}
+			}"""
+		)
+		for (String artifactId : ["project1", "project2"]) {
+			writePom("${artifactId}/pom.xml", artifactId, """
+				<dependency>
+					<groupId>commons-lang</groupId>
+					<artifactId>commons-lang</artifactId>
+					<version>2.6</version>
+				</dependency>"""
+			)
+		}
+
+		when:
+		def result = GradleRunner.create()
+			.withProjectDir(testProjectDir.root)
+			.withArguments('help', '--stacktrace')
+			.build()
+
+		then:
+		result.output.contains("execute :project1")
+		result.output.contains("execute :project2")
+		result.output.contains(":project1 compile [commons-lang]")
+		result.output.contains(":project2 compile [commons-lang]")
+	}
+
 	def "Unsupported test-jar type throws exception"() {
 		given:
 		writeFile("settings.gradle", "include ':project1'")
@@ -358,13 +879,14 @@ class MavenSharePluginTest extends Specification {
 		writeFile(path, script)
 	}
 
-	String writeGradleMulti(String path, String additional="") {
+	String writeGradleMulti(String path, String additional="", String root="") {
 		String script = """
 			buildscript {
 				dependencies {
 					classpath files($classpathString)
 				}
 			}
+			$root
 			subprojects {
 				repositories {
 					mavenCentral()
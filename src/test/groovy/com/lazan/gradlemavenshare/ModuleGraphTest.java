@@ -0,0 +1,51 @@
+package com.lazan.gradlemavenshare;
+
+import static com.lazan.gradlemavenshare.SampleModules.dep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+public class ModuleGraphTest {
+	private final SampleModules modules = new SampleModules();
+
+	@Test
+	public void testWaves() {
+		ResolvedPom parent = modules.addModule("parent", null);
+		modules.addModule("api", parent);
+		modules.addModule("impl", parent, dep("api:1.0"), dep("commons-lang:1.0"));
+		modules.addModule("web", null, dep("impl:1.0"), dep("api:1.0"));
+		modules.addModule("tools", null);
+
+		ModuleGraph graph = modules.createGraph();
+		assertEquals(Arrays.asList(modules.projects("parent", "tools"), modules.projects("api"), modules.projects("impl"), modules.projects("web")), graph.getWaves());
+		assertEquals(new LinkedHashSet<>(modules.projects("parent", "api")), graph.getUpstream(modules.project("impl")));
+		assertEquals(new LinkedHashSet<>(modules.projects("impl", "web")), graph.getDownstream(modules.project("api")));
+		assertTrue(graph.getUpstream(modules.project("tools")).isEmpty());
+	}
+
+	@Test
+	public void testCycle() {
+		modules.addModule("a", null, dep("b:1.0"));
+		modules.addModule("b", null, dep("a:1.0"));
+		modules.addModule("c", null);
+
+		ModuleGraph graph = modules.createGraph();
+		assertEquals(Arrays.asList(modules.projects("c"), modules.projects("a"), modules.projects("b")), graph.getWaves());
+	}
+
+	@Test
+	public void testDownstreamOfCycle() {
+		modules.addModule("e", null, dep("d:1.0"));
+		modules.addModule("d", null, dep("a:1.0"));
+		modules.addModule("a", null, dep("b:1.0"));
+		modules.addModule("b", null, dep("a:1.0"));
+		modules.addModule("c", null, dep("b:1.0"));
+
+		ModuleGraph graph = modules.createGraph();
+		assertEquals(Arrays.asList(modules.projects("a"), modules.projects("b"), modules.projects("d", "c"), modules.projects("e")), graph.getWaves());
+	}
+}
@@ -0,0 +1,111 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.gradle.api.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OnDemandPomsTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	private final Map<Project, File> pomFiles = new LinkedHashMap<>();
+	private final Map<String, Project> projects = new LinkedHashMap<>();
+
+	@Test
+	public void testResolveUpstreamModulesOnly() throws IOException {
+		addModule("parent", "<groupId>com.foo</groupId><version>1.0</version>");
+		addModule("api", "");
+		addModule("impl", "", "api");
+		addModule("web", "", "impl");
+		addModule("tool", "", "api");
+
+		OnDemandPoms onDemand = create();
+		ResolvedPom web = onDemand.resolve(projects.get("web"));
+		assertEquals("web", web.getArtifactId());
+		assertEquals(Arrays.asList("web", "impl", "api"), getResolved(onDemand));
+		assertSame(web, onDemand.resolve(projects.get("web")));
+
+		Dependency dep = new Dependency();
+		dep.setGroupId("com.foo");
+		dep.setArtifactId("tool");
+		dep.setVersion("1.0");
+		assertTrue(onDemand.getProjectResolver().isProject(dep));
+		assertSame(projects.get("tool"), onDemand.getProjectResolver().getProject(dep));
+		assertEquals(3, getResolved(onDemand).size());
+
+		onDemand.resolve(projects.get("tool"));
+		assertEquals(Arrays.asList("web", "impl", "api", "tool"), getResolved(onDemand));
+		assertEquals(Arrays.asList("parent", "api", "impl", "web", "tool"), getNames(onDemand.resolveAll().keySet()));
+	}
+
+	@Test
+	public void testPropertyGavIsResolved() throws IOException {
+		addModule("parent", "<groupId>com.foo</groupId><version>1.0</version>");
+		addModule("api", "<version>${revision}</version><properties><revision>2.0</revision></properties>");
+		addModule("web", "");
+
+		// only the module whose GAV can't be read from its header is resolved up front
+		OnDemandPoms onDemand = create();
+		Dependency dep = new Dependency();
+		dep.setGroupId("com.foo");
+		dep.setArtifactId("web");
+		dep.setVersion("1.0");
+		assertTrue(onDemand.getProjectResolver().isProject(dep));
+		assertEquals(Arrays.asList("api"), getResolved(onDemand));
+	}
+
+	private OnDemandPoms create() {
+		return new OnDemandPoms(new PomResolver(), new PomResolveCache(), null, null, ShareMetrics.DISABLED, pomFiles);
+	}
+
+	/**
+	 * Modules other than the parent inherit from the parent and depend on the listed modules
+	 */
+	private void addModule(String artifactId, String content, String... dependencies) throws IOException {
+		StringBuilder pom = new StringBuilder("<project><modelVersion>4.0.0</modelVersion>");
+		if (!"parent".equals(artifactId)) {
+			pom.append("<parent><groupId>com.foo</groupId><artifactId>parent</artifactId><version>1.0</version><relativePath>../parent</relativePath></parent>");
+		}
+		pom.append("<artifactId>").append(artifactId).append("</artifactId>").append(content);
+		pom.append("<dependencies>");
+		for (String dependency : dependencies) {
+			pom.append("<dependency><groupId>com.foo</groupId><artifactId>").append(dependency).append("</artifactId><version>1.0</version></dependency>");
+		}
+		pom.append("</dependencies></project>");
+		File pomFile = new File(tempDir.newFolder(artifactId), "pom.xml");
+		Files.write(pomFile.toPath(), pom.toString().getBytes(StandardCharsets.UTF_8));
+		Project project = mock(Project.class);
+		when(project.getPath()).thenReturn(":" + artifactId);
+		projects.put(artifactId, project);
+		pomFiles.put(project, pomFile);
+	}
+
+	private List<String> getResolved(OnDemandPoms onDemand) {
+		return getNames(onDemand.getResolvedPoms().keySet());
+	}
+
+	private List<String> getNames(Iterable<Project> resolved) {
+		List<String> names = new ArrayList<>();
+		for (Project project : resolved) {
+			names.add(project.getPath().substring(1));
+		}
+		return names;
+	}
+}
@@ -0,0 +1,114 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentPomCacheTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	@Test
+	public void testWarmBuildUsesCache() throws Exception {
+		File root = copySample();
+		File cacheFile = new File(tempDir.getRoot(), "pom-cache.bin");
+
+		ResolvedPom cold = resolveImpl(root, cacheFile);
+		ShareMetrics metrics = new ShareMetrics();
+		ResolvedPom warm = resolveImpl(root, cacheFile, metrics);
+
+		// impl and parent are created from the cache without parsing the XML
+		assertFalse(metrics.getPhaseDurations().containsKey("parse"));
+		assertEquals(2L, (long) metrics.getCounters().get("persistentCache.hits"));
+		assertNull(metrics.getCounters().get("persistentCache.misses"));
+
+		assertEquals(cold.getProperties(), warm.getProperties());
+		assertEquals(cold.getParent().getProperties(), warm.getParent().getProperties());
+		assertEquals("com.foo:impl:1.0-SNAPSHOT", warm.getProperty("gav"));
+		assertEquals(1, warm.getDependencies().size());
+		assertEquals("4.12", warm.getDependencies().get(0).getVersion());
+		assertEquals("test", warm.getDependencies().get(0).getScope());
+		assertEquals("4.0.0", warm.getModel().getModelVersion());
+	}
+
+	@Test
+	public void testParentChangeInvalidatesChild() throws Exception {
+		File root = copySample();
+		File cacheFile = new File(tempDir.getRoot(), "pom-cache.bin");
+		resolveImpl(root, cacheFile);
+
+		File parentPom = new File(root, "parent/pom.xml");
+		String parentXml = new String(Files.readAllBytes(parentPom.toPath()), StandardCharsets.UTF_8);
+		Files.write(parentPom.toPath(), parentXml.replace("4.12", "4.11").getBytes(StandardCharsets.UTF_8));
+
+		ResolvedPom pom = resolveImpl(root, cacheFile);
+		assertEquals("4.11", pom.getDependencies().get(0).getVersion());
+	}
+
+	@Test
+	public void testCorruptCacheIgnored() throws Exception {
+		File cacheFile = tempDir.newFile("corrupt.bin");
+		Files.write(cacheFile.toPath(), new byte[] { 1, 2, 3 });
+		File root = copySample();
+		ResolvedPom pom = resolveImpl(root, cacheFile);
+		assertEquals("com.foo:impl:1.0-SNAPSHOT", pom.getProperty("gav"));
+		assertTrue(cacheFile.length() > 3);
+		assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testCorruptLengthIgnored() throws Exception {
+		File root = copySample();
+		File cacheFile = new File(tempDir.getRoot(), "pom-cache.bin");
+		resolveImpl(root, cacheFile);
+
+		// the first string length follows the magic, version, entry count and string marker
+		byte[] content = Files.readAllBytes(cacheFile.toPath());
+		ByteBuffer.wrap(content).putInt(16, -5);
+		Files.write(cacheFile.toPath(), content);
+		assertEquals("com.foo:impl:1.0-SNAPSHOT", resolveImpl(root, cacheFile).getProperty("gav"));
+
+		ByteBuffer.wrap(content).putInt(16, Integer.MAX_VALUE);
+		Files.write(cacheFile.toPath(), content);
+		assertEquals("com.foo:impl:1.0-SNAPSHOT", resolveImpl(root, cacheFile).getProperty("gav"));
+	}
+
+	private ResolvedPom resolveImpl(File root, File cacheFile) {
+		return resolveImpl(root, cacheFile, ShareMetrics.DISABLED);
+	}
+
+	private ResolvedPom resolveImpl(File root, File cacheFile, ShareMetrics metrics) {
+		PersistentPomCache persistentCache = PersistentPomCache.load(cacheFile);
+		PomResolver resolver = new PomResolver();
+		resolver.setPersistentCache(persistentCache);
+		resolver.setMetrics(metrics);
+		ResolvedPom pom = resolver.resolvePom(new File(root, "impl/pom.xml"), new PomResolveCache());
+		persistentCache.save(cacheFile);
+		return pom;
+	}
+
+	private File copySample() throws IOException {
+		URL url = getClass().getClassLoader().getResource("maven-sample-1");
+		assertNotNull(url);
+		File source = new File(url.getFile());
+		File target = tempDir.newFolder("maven-sample-1");
+		for (String path : new String[] { "pom.xml", "impl/pom.xml", "interface/pom.xml", "parent/pom.xml" }) {
+			File targetFile = new File(target, path);
+			targetFile.getParentFile().mkdirs();
+			Files.copy(new File(source, path).toPath(), targetFile.toPath());
+		}
+		return target;
+	}
+}
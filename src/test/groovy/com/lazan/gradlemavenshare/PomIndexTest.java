@@ -0,0 +1,131 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PomIndexTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	private File rootDir;
+
+	@Before
+	public void before() throws IOException {
+		rootDir = tempDir.newFolder("maven-sample-1");
+		Files.copy(getFile("maven-sample-1/pom.xml").toPath(), new File(rootDir, "pom.xml").toPath());
+		for (String module : Arrays.asList("parent", "impl", "interface", "override")) {
+			File moduleDir = new File(rootDir, module);
+			moduleDir.mkdirs();
+			Files.copy(getFile("maven-sample-1/" + module + "/pom.xml").toPath(), new File(moduleDir, "pom.xml").toPath());
+		}
+		new File(rootDir, "impl/src").mkdirs();
+		// maven copies the pom into the build output
+		File outputDir = new File(rootDir, "impl/target/classes/META-INF/maven/com.foo/impl");
+		outputDir.mkdirs();
+		Files.copy(getFile("maven-sample-1/impl/pom.xml").toPath(), new File(outputDir, "pom.xml").toPath());
+	}
+
+	@Test
+	public void testScan() throws IOException {
+		PomIndex index = PomIndex.scan(rootDir);
+		assertEquals(5, index.size());
+		File implFile = new File(rootDir, "impl/pom.xml").getCanonicalFile();
+		assertEquals(implFile, index.getPomFile(Gav.of("com.foo", "impl", "1.0-SNAPSHOT")));
+		assertEquals("../parent", index.getEntry(implFile).getParent().getRelativePath());
+		assertEquals(Gav.of("com.foo", "root", "1.0-SNAPSHOT"), index.getEntry(new File(rootDir, "pom.xml")).getGav());
+
+		// relative paths are resolved without the filesystem
+		File parentFile = new File(rootDir, "parent/pom.xml").getCanonicalFile();
+		assertEquals(parentFile, index.getCanonicalFile(new File(rootDir, "impl/../parent/pom.xml")));
+		assertEquals(parentFile, index.getPomFile(new File(rootDir, "impl/../parent")));
+		assertTrue(index.isIndexed(new File(rootDir, "impl/src/pom.xml")));
+		assertNull(index.getPomFile(new File(rootDir, "impl/src")));
+
+		// paths outside the walked directories are checked on disk
+		assertFalse(index.isIndexed(new File(rootDir, "../other/pom.xml")));
+		assertFalse(index.isIndexed(new File(rootDir, "impl/target/pom.xml")));
+		assertFalse(index.isIndexed(new File(rootDir, "parent/parent.xml")));
+	}
+
+	@Test
+	public void testResolveWithIndex() throws IOException {
+		PomIndex index = PomIndex.scan(rootDir);
+		ShareMetrics metrics = new ShareMetrics();
+		PomResolver resolver = new PomResolver();
+		resolver.setPomIndex(index);
+		resolver.setMetrics(metrics);
+		PomResolveCache cache = new PomResolveCache();
+		cache.setPomIndex(index);
+
+		ResolvedPom impl = resolver.resolvePom(new File(rootDir, "impl/pom.xml"), cache);
+		ResolvedPom override = resolver.resolvePom(new File(rootDir, "override/pom.xml"), cache);
+		assertEquals("parent", impl.getParent().getArtifactId());
+		assertSame(impl.getParent(), override.getParent());
+		assertSame(impl, cache.getResolvedPom(new File(rootDir, "impl/../impl/pom.xml")));
+		assertFalse(metrics.getCounters().containsKey("pomIndex.diskProbes"));
+	}
+
+	@Test
+	public void testParentResolvedFromModule() throws IOException {
+		File implFile = new File(rootDir, "impl/pom.xml");
+		File parentFile = new File(rootDir, "parent/pom.xml");
+		replace(implFile, "<relativePath>../parent</relativePath>", "<relativePath>../missing</relativePath>");
+
+		// a pom under the root which isn't a module is never used for a parent
+		PomResolver resolver = new PomResolver();
+		resolver.setPomIndex(PomIndex.scan(rootDir));
+		assertEquals(Arrays.asList(Gav.of("com.foo", "parent", "1.0-SNAPSHOT")), Arrays.asList(resolver.findExternalParents(Arrays.asList(implFile)).toArray()));
+
+		// the parent is a module so the pom source isn't needed
+		resolver.setModulePoms(Arrays.asList(parentFile, implFile));
+		assertTrue(resolver.findExternalParents(Arrays.asList(implFile)).isEmpty());
+		ResolvedPom impl = resolver.resolvePom(implFile, new PomResolveCache());
+		assertEquals(parentFile.getCanonicalFile(), impl.getParent().getPomFile().getCanonicalFile());
+	}
+
+	@Test
+	public void testEmptyRelativePathIsExternal() throws IOException {
+		File implFile = new File(rootDir, "impl/pom.xml");
+		replace(implFile, "<relativePath>../parent</relativePath>", "<relativePath/>");
+
+		PomResolver resolver = new PomResolver();
+		resolver.setPomIndex(PomIndex.scan(rootDir));
+		resolver.setModulePoms(Arrays.asList(new File(rootDir, "parent/pom.xml"), implFile));
+		assertEquals(Arrays.asList(Gav.of("com.foo", "parent", "1.0-SNAPSHOT")), Arrays.asList(resolver.findExternalParents(Arrays.asList(implFile)).toArray()));
+		PomSource pomSource = mock(PomSource.class);
+		when(pomSource.getPom("com.foo", "parent", "1.0-SNAPSHOT")).thenReturn(new ByteArrayInputStream(
+				"<project><groupId>com.foo</groupId><artifactId>parent</artifactId><version>1.0-SNAPSHOT</version></project>".getBytes(StandardCharsets.UTF_8)));
+		ResolvedPom impl = resolver.resolvePom(implFile, new PomResolveCache(), pomSource);
+		assertNull(impl.getParent().getPomFile());
+	}
+
+	private void replace(File file, String target, String replacement) throws IOException {
+		String pom = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertTrue(pom.contains(target));
+		Files.write(file.toPath(), pom.replace(target, replacement).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private File getFile(String path) {
+		URL url = getClass().getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
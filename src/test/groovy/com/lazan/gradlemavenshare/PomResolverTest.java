@@ -1,16 +1,31 @@
 package com.lazan.gradlemavenshare;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
@@ -21,6 +36,7 @@ public class PomResolverTest {
 	private PomResolver resolver = new PomResolver();
 
 	@Mock private PomSource pomSource;
+	@Rule public final SamplePoms samplePoms = new SamplePoms("maven-sample-1", "parent", "override");
 	
 	@Test
 	public void testResolvePom() {
@@ -52,6 +68,289 @@ public class PomResolverTest {
 		assertDependencies(implPom.getDependencies(), "junit:junit:4.12:test");
 	}
 
+	@Test
+	public void testDependencyManagementInheritance() {
+		PomResolveCache cache = new PomResolveCache();
+		ResolvedPom implPom = resolver.resolvePom(getFile("maven-sample-1/impl/pom.xml"), cache);
+		ResolvedPom interfacePom = resolver.resolvePom(getFile("maven-sample-1/interface/pom.xml"), cache);
+		ResolvedPom overridePom = resolver.resolvePom(getFile("maven-sample-1/override/pom.xml"), cache);
+
+		assertSame(implPom.getParent().getDependencyManagement(), interfacePom.getDependencyManagement());
+		assertSame(implPom.getDependencies(), implPom.getDependencies());
+		assertDependencies(implPom.getDependencies(), "junit:junit:4.12:test");
+		assertDependencies(overridePom.getDependencies(), "junit:junit:4.11:test");
+	}
+
+	@Test
+	public void testStreamingReader() {
+		PomResolver streamingResolver = new PomResolver();
+		streamingResolver.setStreaming(true);
+		PomResolveCache streamingCache = new PomResolveCache();
+		PomResolveCache cache = new PomResolveCache();
+		for (String path : Arrays.asList("maven-sample-1/impl/pom.xml", "maven-sample-1/override/pom.xml")) {
+			ResolvedPom expected = resolver.resolvePom(getFile(path), cache);
+			ResolvedPom actual = streamingResolver.resolvePom(getFile(path), streamingCache);
+			assertEquals(expected.getProperties(), actual.getProperties());
+			assertEquals(expected.getDependencies().toString(), actual.getDependencies().toString());
+			assertEquals(expected.getModel().getProfiles().size(), actual.getModel().getProfiles().size());
+			assertEquals("4.0.0", actual.getModel().getModelVersion());
+		}
+		ResolvedPom overridePom = streamingResolver.resolvePom(getFile("maven-sample-1/override/pom.xml"), streamingCache);
+		assertDependencies(overridePom.getDependencies(), "junit:junit:4.11:test");
+		assertNull(overridePom.getResolutionModel().getBuild());
+		assertEquals(1, overridePom.getModel().getProfiles().size());
+	}
+
+	@Test
+	public void testCompact() {
+		resolver.setCompact(true);
+		PomResolveCache cache = new PomResolveCache();
+		ResolvedPom overridePom = resolver.resolvePom(getFile("maven-sample-1/override/pom.xml"), cache);
+		Model model = overridePom.getModel();
+		assertSame(model, overridePom.getModel());
+		assertTrue(overridePom.compact());
+		assertTrue(overridePom.getParent().compact());
+		assertTrue(overridePom.isCompacted());
+		assertTrue(overridePom.getResolutionModel().getProfiles().isEmpty());
+
+		// the full model is loaded again and children resolved after compaction still inherit from the parent
+		assertEquals(1, overridePom.getModel().getProfiles().size());
+		assertDependencies(overridePom.getDependencies(), "junit:junit:4.11:test");
+		ResolvedPom implPom = resolver.resolvePom(getFile("maven-sample-1/impl/pom.xml"), cache);
+		assertSame(overridePom.getParent(), implPom.getParent());
+		assertDependencies(implPom.getDependencies(), "junit:junit:4.12:test");
+		assertFalse(new ResolvedPom(null, null, model).compact());
+	}
+
+	@Test
+	public void testCompactReloadMatchesResolvedPom() throws Exception {
+		resolver.setCompact(true);
+		ResolvedPom overridePom = resolver.resolvePom(samplePoms.pomFile("override"), new PomResolveCache());
+		assertTrue(overridePom.compact());
+		samplePoms.replace("override", "<junit.version>4.11</junit.version>", "<junit.version>4.10</junit.version>");
+		samplePoms.replace("override", "<id>extra</id>", "<id>changed</id>");
+
+		// the reloaded model has the current build config but the properties and dependencies that were resolved
+		Model model = overridePom.getModel();
+		assertEquals("changed", model.getProfiles().get(0).getId());
+		assertEquals("4.11", model.getProperties().getProperty("junit.version"));
+		assertSame(overridePom.getResolutionModel().getDependencies(), model.getDependencies());
+		assertDependencies(overridePom.getDependencies(), "junit:junit:4.11:test");
+	}
+
+	@Test
+	public void testResolvePomsConcurrently() throws Exception {
+		final PomResolveCache cache = new PomResolveCache();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<ResolvedPom>> futures = new ArrayList<>();
+			for (final String path : Arrays.asList("maven-sample-1/impl/pom.xml", "maven-sample-1/interface/pom.xml")) {
+				futures.add(executor.submit(new Callable<ResolvedPom>() {
+					@Override
+					public ResolvedPom call() {
+						return resolver.resolvePom(getFile(path), cache);
+					}
+				}));
+			}
+			ResolvedPom implPom = futures.get(0).get();
+			ResolvedPom interfacePom = futures.get(1).get();
+			assertSame(implPom.getParent(), interfacePom.getParent());
+			assertSame(implPom.getParent(), cache.getResolvedPom("com.foo", "parent", "1.0-SNAPSHOT"));
+			assertEquals("parentOne-parentTwo-implTwo", implPom.getProperty("impl1"));
+			assertDependencies(implPom.getDependencies(), "junit:junit:4.12:test");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCyclicParent() {
+		try {
+			resolver.resolvePom(getFile("maven-sample-cyclic/a/pom.xml"), new PomResolveCache());
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Cyclic pom hierarchy"));
+		}
+	}
+
+	@Test
+	public void testCyclicProperties() {
+		Model model = new Model();
+		model.setGroupId("com.foo");
+		model.setArtifactId("cyclic");
+		model.setVersion("1.0");
+		model.addProperty("a", "x-${b}");
+		model.addProperty("b", "${c}");
+		model.addProperty("c", "${a}");
+		try {
+			new ResolvedPom(null, null, model);
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Cyclic property reference"));
+			assertTrue(e.getMessage(), e.getMessage().endsWith("in com.foo:cyclic:1.0"));
+		}
+	}
+
+	@Test
+	public void testLayeredProperties() {
+		Model parentModel = new Model();
+		parentModel.setGroupId("com.foo");
+		parentModel.setArtifactId("parent");
+		parentModel.setVersion("1.0");
+		parentModel.addProperty("a", "A");
+		parentModel.addProperty("b", "${a}-b");
+		parentModel.addProperty("c", "${b}-c");
+		parentModel.addProperty("d", "${project.artifactId}-d");
+		parentModel.addProperty("e", "plain");
+		parentModel.addProperty("f", "${unknown}");
+		ResolvedPom parent = new ResolvedPom(null, null, parentModel);
+
+		Model childModel = new Model();
+		childModel.setArtifactId("child");
+		childModel.addProperty("a", "X");
+		childModel.addProperty("e", "plain");
+		ResolvedPom child = new ResolvedPom(null, parent, childModel);
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put("project.groupId", "com.foo");
+		expected.put("project.artifactId", "child");
+		expected.put("project.version", "1.0");
+		expected.put("a", "X");
+		expected.put("b", "X-b");
+		expected.put("c", "X-b-c");
+		expected.put("d", "child-d");
+		expected.put("e", "plain");
+		expected.put("f", "${unknown}");
+		assertEquals(expected, child.getProperties());
+		assertEquals(expected.size(), child.getProperties().size());
+		assertEquals("parent-d", parent.getProperty("d"));
+		assertEquals("A-b-c", parent.getProperty("c"));
+		// the child only holds the properties whose values differ from the parent's
+		assertEquals(5, ((LayeredProperties) child.getProperties()).getLayerSize());
+		try {
+			child.getProperties().put("a", "Y");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertEquals("X", child.getProperty("a"));
+		}
+	}
+
+	@Test
+	public void testImportBom() {
+		ShareMetrics metrics = new ShareMetrics();
+		resolver.setMetrics(metrics);
+		PomSource localRepo = new LocalRepositoryPomSource(getFile("local-repo-1"));
+		PomResolveCache cache = new PomResolveCache();
+		ResolvedPom pom1 = resolver.resolvePom(getFile("maven-sample-2/bom-user/pom.xml"), cache, localRepo);
+		ResolvedPom pom2 = resolver.resolvePom(getFile("maven-sample-2/bom-user-2/pom.xml"), cache, localRepo);
+
+		assertDependencies(pom1.getDependencies(), "com.foo:lib-x:3.0:null", "com.foo:lib-y:1.0:null", "com.foo:lib-z:2.0:null", "junit:junit:4.12:test");
+		assertDependencies(pom2.getDependencies(), "com.foo:lib-x:1.0:null");
+		assertTrue(pom1.hasImports());
+		assertSame(cache.getResolvedPom("com.foo", "bom-a", "1.0").getDependencyManagement(),
+				pom2.getDependencyManagement().getImports().get(0));
+		// external-parent, external-grandparent, bom-a and bom-b
+		assertEquals(4L, metrics.getCounters().get("pomSource.fetches").longValue());
+	}
+
+	@Test
+	public void testBomResolverBoundPerBuild() {
+		PomSource localRepo = new LocalRepositoryPomSource(getFile("local-repo-1"));
+		PomResolveCache cache = new PomResolveCache();
+		cache.setBomResolver(resolver.createBomResolver(cache, pomSource));
+		ResolvedPom pom = resolver.resolvePom(getFile("maven-sample-2/bom-user-2/pom.xml"), cache, localRepo);
+
+		// the build finished before the BOM was imported
+		cache.setBomResolver(null);
+		try {
+			pom.getDependencies();
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().endsWith("no BomResolver"));
+		}
+
+		// the next build rebinds the cached pom to its own pom source
+		cache.setBomResolver(resolver.createBomResolver(cache, localRepo));
+		assertDependencies(pom.getDependencies(), "com.foo:lib-x:1.0:null");
+		verifyZeroInteractions(pomSource);
+	}
+
+	@Test
+	public void testImportModuleBom() {
+		ShareMetrics metrics = new ShareMetrics();
+		resolver.setMetrics(metrics);
+		File bomFile = getFile("maven-sample-2/bom-module/pom.xml");
+		File userFile = getFile("maven-sample-2/bom-module-user/pom.xml");
+		resolver.setModulePoms(Arrays.asList(userFile, bomFile));
+		PomResolveCache cache = new PomResolveCache();
+
+		// the BOM module hasn't been resolved, it's found by the GAV in its header rather than fetched
+		ResolvedPom pom = resolver.resolvePom(userFile, cache, pomSource);
+		assertDependencies(pom.getDependencies(), "com.foo:lib-x:4.0:null");
+		assertSame(cache.getResolvedPom("com.foo", "bom-module", "2.0-SNAPSHOT"), resolver.resolvePom(bomFile, cache, pomSource));
+		assertEquals(1L, metrics.getCounters().get("modulePoms.lookups").longValue());
+		verifyZeroInteractions(pomSource);
+	}
+
+	@Test
+	public void testImportRequiresPomType() {
+		Model model = new Model();
+		model.setGroupId("com.foo");
+		model.setArtifactId("import-jar");
+		model.setVersion("1.0");
+		model.setDependencyManagement(new DependencyManagement());
+		Dependency managed = new Dependency();
+		managed.setGroupId("com.foo");
+		managed.setArtifactId("lib-x");
+		managed.setVersion("1.0");
+		managed.setScope("import");
+		model.getDependencyManagement().addDependency(managed);
+		ResolvedPom pom = new ResolvedPom(null, null, model, null, null, null, resolver.createBomResolver(new PomResolveCache(), pomSource));
+		assertFalse(pom.hasImports());
+
+		managed.setType("pom");
+		assertTrue(pom.hasImports());
+	}
+
+	@Test
+	public void testCyclicBomImport() {
+		Model model = new Model();
+		model.setGroupId("com.foo");
+		model.setArtifactId("cyclic-import");
+		model.setVersion("1.0");
+		model.setDependencyManagement(new DependencyManagement());
+		Dependency bom = new Dependency();
+		bom.setGroupId("com.foo");
+		bom.setArtifactId("bom-cyclic-a");
+		bom.setVersion("1.0");
+		bom.setType("pom");
+		bom.setScope("import");
+		model.getDependencyManagement().addDependency(bom);
+		Dependency dep = new Dependency();
+		dep.setGroupId("com.foo");
+		dep.setArtifactId("lib-x");
+		model.addDependency(dep);
+		PomResolveCache cache = new PomResolveCache();
+		PomSource localRepo = new LocalRepositoryPomSource(getFile("local-repo-1"));
+		ResolvedPom pom = new ResolvedPom(null, null, model, null, null, null, resolver.createBomResolver(cache, localRepo));
+		try {
+			pom.getDependencies();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Cyclic BOM import [com.foo:bom-cyclic-a:1.0, com.foo:bom-cyclic-b:1.0, com.foo:bom-cyclic-a:1.0]", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSubstituteProperties() {
+		ResolvedPom implPom = resolver.resolvePom(getFile("maven-sample-1/impl/pom.xml"), new PomResolveCache());
+		String constant = new String("constant");
+		assertSame(constant, implPom.substituteProperties(constant));
+		assertEquals("4.12", implPom.substituteProperties("${junit.version}"));
+		assertEquals("a-4.12-b-${unknown}-implTwo", implPom.substituteProperties("a-${junit.version}-b-${unknown}-${impl2}"));
+		assertEquals("${unclosed", implPom.substituteProperties("${unclosed"));
+	}
+
 	private void assertDependencies(List<Dependency> dependencies, String... expected) {
 		List<String> actuals = new ArrayList<String>();
 		for (Dependency dep : dependencies) {
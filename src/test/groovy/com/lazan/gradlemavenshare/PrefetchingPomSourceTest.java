@@ -0,0 +1,112 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PrefetchingPomSourceTest {
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private static class CountingPomSource implements AsyncPomSource {
+		private final AsyncPomSource delegate;
+		private final List<Gav> requested = Collections.synchronizedList(new ArrayList<Gav>());
+
+		public CountingPomSource(AsyncPomSource delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public InputStream getPom(String group, String artifact, String version) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<Gav, CompletableFuture<byte[]>> getPomsAsync(Collection<Gav> gavs) {
+			requested.addAll(gavs);
+			return delegate.getPomsAsync(gavs);
+		}
+	}
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testFindExternalParents() {
+		PomResolver pomResolver = new PomResolver();
+		assertEquals(Collections.singleton(Gav.parse("com.foo:external-parent:1.0")),
+				pomResolver.findExternalParents(Arrays.asList(getFile("maven-sample-2/module/pom.xml"))));
+		assertTrue(pomResolver.findExternalParents(Arrays.asList(getFile("maven-sample-1/impl/pom.xml"))).isEmpty());
+	}
+
+	@Test
+	public void testPrefetchParentChain() {
+		CountingPomSource counting = createSource();
+		PrefetchingPomSource pomSource = new PrefetchingPomSource(counting);
+		pomSource.prefetch(Arrays.asList(Gav.parse("com.foo:external-parent:1.0"), Gav.of("com.foo", "external-parent", "1.0")));
+
+		ResolvedPom pom = new PomResolver().resolvePom(getFile("maven-sample-2/module/pom.xml"), new PomResolveCache(), pomSource);
+		assertEquals("external-grandparent", pom.getParent().getParent().getArtifactId());
+		assertEquals("test", pom.getDependencies().get(0).getScope());
+		assertEquals(Arrays.asList(Gav.parse("com.foo:external-parent:1.0"), Gav.parse("com.foo:external-grandparent:1.0")), counting.requested);
+	}
+
+	@Test
+	public void testConcurrentRequestsShareFetch() throws Exception {
+		CountingPomSource counting = createSource();
+		final PrefetchingPomSource pomSource = new PrefetchingPomSource(counting);
+		List<CompletableFuture<InputStream>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; ++i) {
+			futures.add(CompletableFuture.supplyAsync(new Supplier<InputStream>() {
+				@Override
+				public InputStream get() {
+					return pomSource.getPom("com.foo", "external-grandparent", "1.0");
+				}
+			}, executor));
+		}
+		for (CompletableFuture<InputStream> future : futures) {
+			assertNotNull(future.get());
+		}
+		assertEquals(Arrays.asList(Gav.parse("com.foo:external-grandparent:1.0")), counting.requested);
+	}
+
+	@Test
+	public void testMissingPom() {
+		PrefetchingPomSource pomSource = new PrefetchingPomSource(createSource());
+		try {
+			pomSource.getPom("com.bar", "missing", "1.0");
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Pom not found for com.bar:missing:1.0"));
+		}
+	}
+
+	private CountingPomSource createSource() {
+		return new CountingPomSource(new ExecutorPomSource(new LocalRepositoryPomSource(getFile("local-repo-1")), executor));
+	}
+
+	private File getFile(String path) {
+		URL url = getClass().getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
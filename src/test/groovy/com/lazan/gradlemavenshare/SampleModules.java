@@ -0,0 +1,92 @@
+package com.lazan.gradlemavenshare;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.gradle.api.Project;
+
+/**
+ * In memory modules of group com.foo and version 1.0, each with a mock project, for tests of the module graph
+ */
+public class SampleModules {
+	private final Map<String, Project> projects = new HashMap<>();
+	private final Map<Project, ResolvedPom> poms = new LinkedHashMap<>();
+	private final ProjectResolver resolver = new ProjectResolver() {
+		@Override
+		public boolean isProject(Dependency dependency) {
+			return projects.containsKey(dependency.getArtifactId());
+		}
+
+		@Override
+		public Project getProject(Dependency dependency) {
+			return projects.get(dependency.getArtifactId());
+		}
+	};
+
+	public ResolvedPom addModule(String artifactId, ResolvedPom parent, Dependency... dependencies) {
+		return addModule(createModel(artifactId, dependencies), parent);
+	}
+
+	public ResolvedPom addModule(Model model, ResolvedPom parent) {
+		ResolvedPom pom = new ResolvedPom(null, parent, model);
+		Project project = mock(Project.class, model.getArtifactId());
+		projects.put(model.getArtifactId(), project);
+		poms.put(project, pom);
+		return pom;
+	}
+
+	public Model createModel(String artifactId, Dependency... dependencies) {
+		Model model = new Model();
+		model.setGroupId("com.foo");
+		model.setArtifactId(artifactId);
+		model.setVersion("1.0");
+		model.setDependencies(new ArrayList<>(Arrays.asList(dependencies)));
+		return model;
+	}
+
+	/**
+	 * @param spec artifactId:version[:scope[:optional]]
+	 */
+	public static Dependency dep(String spec) {
+		String[] parts = spec.split(":");
+		Dependency dep = new Dependency();
+		dep.setGroupId("com.foo");
+		dep.setArtifactId(parts[0]);
+		dep.setVersion(parts[1]);
+		if (parts.length > 2) {
+			dep.setScope(parts[2]);
+		}
+		if (parts.length > 3) {
+			dep.setOptional(parts[3]);
+		}
+		return dep;
+	}
+
+	public Project project(String artifactId) {
+		return projects.get(artifactId);
+	}
+
+	public List<Project> projects(String... artifactIds) {
+		Project[] result = new Project[artifactIds.length];
+		for (int i = 0; i < artifactIds.length; ++i) {
+			result[i] = projects.get(artifactIds[i]);
+		}
+		return Arrays.asList(result);
+	}
+
+	public ProjectResolver getResolver() {
+		return resolver;
+	}
+
+	public ModuleGraph createGraph() {
+		return new ModuleGraph(poms, resolver);
+	}
+}
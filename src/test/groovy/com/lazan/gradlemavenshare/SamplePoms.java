@@ -0,0 +1,63 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Copies the poms of a sample project from the test resources to a temporary folder so that tests can edit them
+ */
+public class SamplePoms extends TemporaryFolder {
+	private final String sample;
+	private final String[] modules;
+	private File rootDir;
+
+	public SamplePoms(String sample, String... modules) {
+		this.sample = sample;
+		this.modules = modules;
+	}
+
+	@Override
+	protected void before() throws Throwable {
+		super.before();
+		rootDir = newFolder(sample);
+		for (String module : modules) {
+			File moduleDir = new File(rootDir, module);
+			moduleDir.mkdirs();
+			Files.copy(getResource(sample + "/" + module + "/pom.xml").toPath(), new File(moduleDir, "pom.xml").toPath());
+		}
+	}
+
+	/**
+	 * @return The canonical file of the copied pom
+	 */
+	public File pomFile(String module) throws IOException {
+		return new File(rootDir, module + "/pom.xml").getCanonicalFile();
+	}
+
+	/**
+	 * Edits the copied pom and moves its modification time forward
+	 */
+	public void replace(String module, String target, String replacement) throws IOException {
+		File pomFile = pomFile(module);
+		String content = new String(Files.readAllBytes(pomFile.toPath()), StandardCharsets.UTF_8);
+		assertTrue(content.contains(target));
+		long lastModified = pomFile.lastModified();
+		Files.write(pomFile.toPath(), content.replace(target, replacement).getBytes(StandardCharsets.UTF_8));
+		// the edit may happen within the file system's timestamp resolution
+		assertTrue(pomFile.setLastModified(lastModified + 2000));
+	}
+
+	public static File getResource(String path) {
+		URL url = SamplePoms.class.getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
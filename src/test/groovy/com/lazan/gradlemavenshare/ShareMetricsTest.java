@@ -0,0 +1,65 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+
+import org.junit.Test;
+
+public class ShareMetricsTest {
+	@Test
+	public void testResolverMetrics() {
+		ShareMetrics metrics = new ShareMetrics();
+		PomResolver resolver = new PomResolver();
+		resolver.setMetrics(metrics);
+		PomResolveCache cache = new PomResolveCache();
+		resolver.resolvePom(getFile("maven-sample-1/impl/pom.xml"), cache);
+		resolver.resolvePom(getFile("maven-sample-1/interface/pom.xml"), cache);
+		resolver.resolvePom(getFile("maven-sample-1/impl/pom.xml"), cache);
+
+		// impl, interface and the shared parent are each resolved once
+		assertEquals(3, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+		assertTrue(metrics.getPhaseDurations().containsKey("parse"));
+		assertTrue(metrics.getPhaseDurations().containsKey("properties"));
+		assertTrue(metrics.getModuleDurations().isEmpty());
+	}
+
+	@Test
+	public void testModuleMetrics() {
+		ShareMetrics metrics = new ShareMetrics();
+		metrics.record(":fast", "resolve", System.nanoTime());
+		metrics.record(":slow", "resolve", System.nanoTime() - 5000000);
+		metrics.record(":slow", "action:DependencyShareAction", System.nanoTime() - 2000000);
+		metrics.increment("dependencies.added");
+		metrics.add("dependencies.added", 2);
+
+		assertEquals(3L, (long) metrics.getCounters().get("dependencies.added"));
+		assertEquals(2, metrics.getModuleDurations().get(":slow").size());
+		assertTrue(metrics.getPhaseDurations().get("resolve") >= 5.0);
+		String summary = metrics.getSummary(1);
+		assertTrue(summary, summary.contains(":slow"));
+		assertFalse(summary, summary.contains(":fast"));
+		assertTrue(metrics.toJson().contains("\"dependencies.added\": 3"));
+	}
+
+	@Test
+	public void testDisabled() {
+		ShareMetrics metrics = ShareMetrics.DISABLED;
+		metrics.record(":module", "resolve", metrics.start());
+		metrics.increment("dependencies.added");
+		assertTrue(metrics.getModuleDurations().isEmpty());
+		assertTrue(metrics.getPhaseDurations().isEmpty());
+		assertTrue(metrics.getCounters().isEmpty());
+	}
+
+	private File getFile(String path) {
+		URL url = getClass().getClassLoader().getResource(path);
+		assertNotNull(url);
+		return new File(url.getFile());
+	}
+}
@@ -0,0 +1,133 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.lazan.gradlemavenshare.ShareSnapshot.SnapshotDependency;
+
+public class ShareSnapshotTest {
+	@Rule public final TemporaryFolder tempDir = new TemporaryFolder();
+
+	@Test
+	public void testReadWrite() throws Exception {
+		File lockFile = new File(tempDir.getRoot(), "maven-share.lock");
+		createSnapshot().write(lockFile);
+
+		ShareSnapshot snapshot = ShareSnapshot.read(lockFile);
+		List<SnapshotDependency> deps = snapshot.getDependencies().get(":project1");
+		assertEquals(1, deps.size());
+		assertEquals("org.springframework:spring-context:4.3.2.RELEASE", deps.get(0).getNotation());
+		assertEquals(Arrays.asList(Collections.singletonMap("group", "commons-logging")), deps.get(0).getExclusions());
+		Dependency mavenDep = deps.get(0).getMavenDependency();
+		assertEquals("spring-context", mavenDep.getArtifactId());
+		assertEquals("provided", mavenDep.getScope());
+		assertEquals("true", mavenDep.getOptional());
+	}
+
+	@Test
+	public void testCorruptLength() throws Exception {
+		File lockFile = new File(tempDir.getRoot(), "maven-share.lock");
+		createSnapshot().write(lockFile);
+		// length of the rules hash which follows the magic, version and new string marker
+		try (RandomAccessFile file = new RandomAccessFile(lockFile, "rw")) {
+			file.seek(12);
+			file.writeInt(Integer.MAX_VALUE);
+		}
+		assertNull(ShareSnapshot.read(lockFile));
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		File lockFile = new File(tempDir.getRoot(), "maven-share.lock");
+		createSnapshot().write(lockFile);
+		try (RandomAccessFile file = new RandomAccessFile(lockFile, "rw")) {
+			file.setLength(file.length() - 10);
+		}
+		assertNull(ShareSnapshot.read(lockFile));
+	}
+
+	@Test
+	public void testNegativeCount() throws Exception {
+		File lockFile = new File(tempDir.getRoot(), "maven-share.lock");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(lockFile))) {
+			out.writeInt(0x6D76_6C6B);
+			out.writeInt(2);
+			out.writeInt(-1);
+			out.writeInt(-5);
+		}
+		assertNull(ShareSnapshot.read(lockFile));
+	}
+
+	@Test
+	public void testPomFilesIncludeImportedBoms() throws IOException {
+		File bomFile = SamplePoms.getResource("maven-sample-2/bom-module/pom.xml");
+		File userFile = SamplePoms.getResource("maven-sample-2/bom-module-user/pom.xml");
+		PomResolver resolver = new PomResolver();
+		resolver.setModulePoms(Arrays.asList(bomFile, userFile));
+		ResolvedPom pom = resolver.resolvePom(userFile, new PomResolveCache());
+		pom.getDependencies();
+		assertEquals(new LinkedHashSet<>(Arrays.asList(userFile, bomFile)), ShareSnapshot.getPomFiles(Arrays.asList(pom)));
+	}
+
+	@Test
+	public void testSnapshotBomFromPomSourceIsNotLocked() throws IOException {
+		File pomFile = tempDir.newFile("pom.xml");
+		String pom = "<project><modelVersion>4.0.0</modelVersion><groupId>com.foo</groupId><artifactId>module</artifactId><version>1.0</version>"
+				+ "<dependencyManagement><dependencies><dependency><groupId>com.foo</groupId><artifactId>snapshot-bom</artifactId>"
+				+ "<version>1.0-SNAPSHOT</version><type>pom</type><scope>import</scope></dependency></dependencies></dependencyManagement>"
+				+ "<dependencies><dependency><groupId>com.foo</groupId><artifactId>lib-x</artifactId></dependency></dependencies></project>";
+		Files.write(pomFile.toPath(), pom.getBytes(StandardCharsets.UTF_8));
+		String bom = "<project><modelVersion>4.0.0</modelVersion><groupId>com.foo</groupId><artifactId>snapshot-bom</artifactId>"
+				+ "<version>1.0-SNAPSHOT</version><packaging>pom</packaging></project>";
+		PomSource pomSource = mock(PomSource.class);
+		when(pomSource.getPom("com.foo", "snapshot-bom", "1.0-SNAPSHOT")).thenReturn(new ByteArrayInputStream(bom.getBytes(StandardCharsets.UTF_8)));
+		ResolvedPom resolved = new PomResolver().resolvePom(pomFile, new PomResolveCache(), pomSource);
+		resolved.getDependencies();
+		try {
+			ShareSnapshot.getPomFiles(Arrays.asList(resolved));
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("com.foo:snapshot-bom:1.0-SNAPSHOT"));
+		}
+	}
+
+	private ShareSnapshot createSnapshot() throws IOException {
+		Map<String, String> mavenDep = new LinkedHashMap<>();
+		mavenDep.put("groupId", "org.springframework");
+		mavenDep.put("artifactId", "spring-context");
+		mavenDep.put("version", "4.3.2.RELEASE");
+		mavenDep.put("scope", "provided");
+		mavenDep.put("optional", "true");
+		Map<String, String> notation = Collections.singletonMap("notation", "org.springframework:spring-context:4.3.2.RELEASE");
+		List<Map<String, String>> exclusions = Arrays.asList(Collections.singletonMap("group", "commons-logging"));
+		SnapshotDependency dep = new SnapshotDependency(mavenDep, (byte) 2, notation, exclusions);
+
+		File pomFile = tempDir.newFile("pom.xml");
+		Map<String, PomFingerprint> inputs = Collections.singletonMap("pom.xml", PomFingerprint.of(pomFile));
+		return new ShareSnapshot("rules", inputs, Collections.singletonMap(":project1", Arrays.asList(dep)));
+	}
+}
@@ -0,0 +1,154 @@
+package com.lazan.gradlemavenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SharedPomCacheTest {
+	@Rule public final SamplePoms samplePoms = new SamplePoms("maven-sample-1", "parent", "impl");
+
+	private final PomResolver resolver = new PomResolver();
+
+	@Test
+	public void testExternalParentsAreSharedBetweenBuilds() {
+		SharedPomCache sharedCache = new SharedPomCache(100);
+		ShareMetrics metrics = new ShareMetrics();
+		resolver.setMetrics(metrics);
+		PomSource pomSource = new LocalRepositoryPomSource(SamplePoms.getResource("local-repo-1"));
+		File pomFile = SamplePoms.getResource("maven-sample-2/module/pom.xml");
+
+		ResolvedPom pom1 = resolver.resolvePom(pomFile, createCache(sharedCache), pomSource);
+		PomResolveCache cache2 = createCache(sharedCache);
+		ResolvedPom pom2 = resolver.resolvePom(pomFile, cache2, pomSource);
+
+		assertSame(pom1, pom2);
+		assertSame(pom1.getParent(), cache2.getResolvedPom("com.foo", "external-parent", "1.0"));
+		assertEquals(2L, metrics.getCounters().get("pomSource.fetches").longValue());
+		assertEquals(1L, sharedCache.getHitCount());
+	}
+
+	@Test
+	public void testChangedParentIsResolvedAgain() throws IOException {
+		File implFile = samplePoms.pomFile("impl");
+		SharedPomCache sharedCache = new SharedPomCache(100);
+		ResolvedPom pom1 = resolver.resolvePom(implFile, createCache(sharedCache));
+
+		samplePoms.replace("parent", "4.12", "4.13");
+
+		ResolvedPom pom2 = resolver.resolvePom(implFile, createCache(sharedCache));
+		assertNotSame(pom1, pom2);
+		assertEquals("4.13", pom2.getDependencies().get(0).getVersion());
+		assertSame(pom2, resolver.resolvePom(implFile, createCache(sharedCache)));
+	}
+
+	@Test
+	public void testSnapshotParentIsFetchedAgain() throws IOException {
+		File pomFile = samplePoms.newFile("pom.xml");
+		write(pomFile, "<project><modelVersion>4.0.0</modelVersion>"
+				+ "<parent><groupId>com.foo</groupId><artifactId>snapshot-parent</artifactId><version>1.0-SNAPSHOT</version><relativePath/></parent>"
+				+ "<artifactId>module</artifactId></project>");
+		PomSource pomSource = mock(PomSource.class);
+		when(pomSource.getPom("com.foo", "snapshot-parent", "1.0-SNAPSHOT")).thenReturn(snapshotParent("1"), snapshotParent("2"));
+		SharedPomCache sharedCache = new SharedPomCache(100);
+
+		assertEquals("1", resolver.resolvePom(pomFile, createCache(sharedCache), pomSource).getProperty("build"));
+		assertEquals("2", resolver.resolvePom(pomFile, createCache(sharedCache), pomSource).getProperty("build"));
+		assertEquals(0L, sharedCache.getHitCount());
+	}
+
+	@Test
+	public void testSnapshotBomImporterIsResolvedAgain() throws IOException {
+		File pomFile = samplePoms.newFile("pom.xml");
+		write(pomFile, "<project><modelVersion>4.0.0</modelVersion><groupId>com.foo</groupId><artifactId>module</artifactId><version>1.0</version>"
+				+ "<dependencyManagement><dependencies><dependency><groupId>com.foo</groupId><artifactId>snapshot-bom</artifactId>"
+				+ "<version>1.0-SNAPSHOT</version><type>pom</type><scope>import</scope></dependency></dependencies></dependencyManagement>"
+				+ "<dependencies><dependency><groupId>com.foo</groupId><artifactId>lib-x</artifactId></dependency></dependencies></project>");
+		PomSource pomSource = mock(PomSource.class);
+		when(pomSource.getPom("com.foo", "snapshot-bom", "1.0-SNAPSHOT")).thenReturn(snapshotBom("1.0"), snapshotBom("2.0"));
+		SharedPomCache sharedCache = new SharedPomCache(100);
+
+		ResolvedPom pom1 = resolver.resolvePom(pomFile, createCache(sharedCache), pomSource);
+		assertEquals("1.0", pom1.getDependencies().get(0).getVersion());
+		ResolvedPom pom2 = resolver.resolvePom(pomFile, createCache(sharedCache), pomSource);
+		assertNotSame(pom1, pom2);
+		assertEquals("2.0", pom2.getDependencies().get(0).getVersion());
+	}
+
+	@Test
+	public void testSharedPomsArePersisted() throws IOException {
+		File implFile = samplePoms.pomFile("impl");
+		File cacheFile1 = new File(samplePoms.getRoot(), "pom-cache-1.bin");
+		File cacheFile2 = new File(samplePoms.getRoot(), "pom-cache-2.bin");
+		SharedPomCache sharedCache = new SharedPomCache(100);
+		resolveAndSave(implFile, createCache(sharedCache), cacheFile1, new ShareMetrics());
+
+		// the second build reuses the poms from the shared cache and still writes their entries
+		resolveAndSave(implFile, createCache(sharedCache), cacheFile2, new ShareMetrics());
+		assertEquals(1L, sharedCache.getHitCount());
+
+		ShareMetrics metrics = new ShareMetrics();
+		resolveAndSave(implFile, new PomResolveCache(), cacheFile2, metrics);
+		assertEquals(2L, metrics.getCounters().get("persistentCache.hits").longValue());
+		assertNull(metrics.getCounters().get("persistentCache.misses"));
+	}
+
+	@Test
+	public void testEviction() {
+		SharedPomCache sharedCache = new SharedPomCache(100);
+		resolver.resolvePom(SamplePoms.getResource("maven-sample-1/impl/pom.xml"), createCache(sharedCache));
+		assertEquals(2, sharedCache.size());
+		sharedCache.setMaxSize(1);
+		assertEquals(1, sharedCache.size());
+		assertEquals(1L, sharedCache.getEvictionCount());
+
+		// the parent was evicted so the pom is resolved again
+		resolver.resolvePom(SamplePoms.getResource("maven-sample-1/impl/pom.xml"), createCache(sharedCache));
+		assertEquals(0L, sharedCache.getHitCount());
+	}
+
+	private PomResolveCache createCache(SharedPomCache sharedCache) {
+		PomResolveCache cache = new PomResolveCache();
+		cache.setSharedCache(sharedCache);
+		return cache;
+	}
+
+	private void resolveAndSave(File pomFile, PomResolveCache cache, File cacheFile, ShareMetrics metrics) {
+		PersistentPomCache persistentCache = PersistentPomCache.load(cacheFile);
+		PomResolver persistentResolver = new PomResolver();
+		persistentResolver.setPersistentCache(persistentCache);
+		persistentResolver.setMetrics(metrics);
+		persistentCache.retainResolvedPom(persistentResolver.resolvePom(pomFile, cache));
+		persistentCache.save(cacheFile);
+	}
+
+	private InputStream snapshotParent(String build) {
+		String pom = "<project><modelVersion>4.0.0</modelVersion><groupId>com.foo</groupId><artifactId>snapshot-parent</artifactId>"
+				+ "<version>1.0-SNAPSHOT</version><packaging>pom</packaging><properties><build>" + build + "</build></properties></project>";
+		return new ByteArrayInputStream(pom.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private InputStream snapshotBom(String libVersion) {
+		String pom = "<project><modelVersion>4.0.0</modelVersion><groupId>com.foo</groupId><artifactId>snapshot-bom</artifactId>"
+				+ "<version>1.0-SNAPSHOT</version><packaging>pom</packaging><dependencyManagement><dependencies><dependency>"
+				+ "<groupId>com.foo</groupId><artifactId>lib-x</artifactId><version>" + libVersion + "</version></dependency>"
+				+ "</dependencies></dependencyManagement></project>";
+		return new ByteArrayInputStream(pom.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,106 @@
+package com.lazan.gradlemavenshare;
+
+import static com.lazan.gradlemavenshare.SampleModules.dep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Model;
+import org.junit.Test;
+
+public class TransitiveDependenciesTest {
+	private final SampleModules modules = new SampleModules();
+
+	@Test
+	public void testScopesAndOptional() {
+		modules.addModule("api", null, dep("commons-lang:2.6"), dep("servlet-api:3.0:provided"), dep("junit:4.12:test"), dep("jsr305:3.0:compile:true"));
+		modules.addModule("impl", null, dep("api:1.0"), dep("slf4j:1.7:runtime"));
+		modules.addModule("web", null, dep("impl:1.0"));
+		modules.addModule("web-test", null, dep("impl:1.0:test"));
+
+		TransitiveDependencies transitive = create();
+		assertDependencies(transitive.getDependencies(modules.project("api")), "commons-lang:2.6:compile", "servlet-api:3.0:provided", "junit:4.12:test", "jsr305:3.0:compile");
+		assertDependencies(transitive.getDependencies(modules.project("web")), "impl:1.0:compile", "api:1.0:compile", "slf4j:1.7:runtime", "commons-lang:2.6:compile");
+		assertDependencies(transitive.getDependencies(modules.project("web-test")), "impl:1.0:test", "api:1.0:test", "slf4j:1.7:test", "commons-lang:2.6:test");
+		assertSame(transitive.getDependencies(modules.project("web")), transitive.getDependencies(modules.project("web")));
+	}
+
+	@Test
+	public void testNearestWins() {
+		modules.addModule("api", null, dep("guava:20.0"), dep("commons-lang:2.6"));
+		modules.addModule("util", null, dep("api:1.0"));
+		modules.addModule("impl", null, dep("guava:19.0"));
+		modules.addModule("web", null, dep("util:1.0"), dep("impl:1.0"), dep("commons-lang:2.5"));
+
+		assertDependencies(create().getDependencies(modules.project("web")), "util:1.0:compile", "impl:1.0:compile", "commons-lang:2.5:compile", "api:1.0:compile", "guava:19.0:compile");
+	}
+
+	@Test
+	public void testExclusionsAndManagement() {
+		modules.addModule("api", null, dep("commons-lang:2.6"));
+		modules.addModule("impl", null, dep("api:1.0"), dep("guava:19.0"));
+		Dependency impl = dep("impl:1.0");
+		Exclusion exclusion = new Exclusion();
+		exclusion.setGroupId("com.foo");
+		exclusion.setArtifactId("api");
+		impl.addExclusion(exclusion);
+		Model web = modules.createModel("web", impl);
+		DependencyManagement management = new DependencyManagement();
+		management.addDependency(dep("guava:20.0:runtime"));
+		web.setDependencyManagement(management);
+		modules.addModule(web, null);
+
+		// commons-lang is only reachable through the excluded module
+		assertDependencies(create().getDependencies(modules.project("web")), "impl:1.0:compile", "guava:20.0:runtime");
+	}
+
+	@Test
+	public void testExclusionRevealsMediatedVersion() {
+		modules.addModule("api", null, dep("guava:20.0"));
+		modules.addModule("lib", null, dep("guava:19.0"));
+		modules.addModule("impl", null, dep("api:1.0"), dep("lib:1.0"));
+		Dependency impl = dep("impl:1.0");
+		Exclusion exclusion = new Exclusion();
+		exclusion.setGroupId("com.foo");
+		exclusion.setArtifactId("api");
+		impl.addExclusion(exclusion);
+		modules.addModule("web", null, impl);
+
+		// guava 19.0 loses to 20.0 in impl's closure but wins once api is excluded
+		TransitiveDependencies transitive = create();
+		assertDependencies(transitive.getDependencies(modules.project("impl")), "api:1.0:compile", "lib:1.0:compile", "guava:20.0:compile");
+		assertDependencies(transitive.getDependencies(modules.project("web")), "impl:1.0:compile", "lib:1.0:compile", "guava:19.0:compile");
+	}
+
+	@Test
+	public void testCycle() {
+		modules.addModule("a", null, dep("b:1.0"));
+		modules.addModule("b", null, dep("a:1.0"));
+		try {
+			create().getDependencies(modules.project("a"));
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Cyclic module dependency"));
+		}
+	}
+
+	private TransitiveDependencies create() {
+		return new TransitiveDependencies(modules.createGraph(), modules.getResolver());
+	}
+
+	private void assertDependencies(List<Dependency> dependencies, String... expected) {
+		List<String> actual = new ArrayList<>();
+		for (Dependency dep : dependencies) {
+			actual.add(dep.getArtifactId() + ":" + dep.getVersion() + ":" + dep.getScope());
+		}
+		assertEquals(Arrays.asList(expected), actual);
+	}
+}